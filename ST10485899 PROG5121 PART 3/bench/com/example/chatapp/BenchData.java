@@ -0,0 +1,68 @@
+package com.example.chatapp;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * BenchData - deterministic messages for the benchmarks, so every run and every store size
+ * measures the same data. Each recipient gets about ten messages.
+ */
+final class BenchData {
+
+    private static final String[] WORDS = {"Hi", "Mike,", "can", "you", "join", "us", "for", "dinner", "tonight?",
+            "Thanks!", "see", "you", "at", "the", "meeting", "on", "Friday."};
+
+    private BenchData() {
+    }
+
+    private static int recipients(int storeSize) {
+        return Math.max(1, storeSize / 10);
+    }
+
+    static String recipient(int r) {
+        return String.format("+2783%07d", r);
+    }
+
+    private static String messageID(int i) {
+        return String.format("%010d", i);
+    }
+
+    private static String text(int i) {
+        Random rnd = new Random(i);
+        StringBuilder sb = new StringBuilder();
+        int count = 1 + rnd.nextInt(30);
+        for (int w = 0; w < count; w++) sb.append(WORDS[rnd.nextInt(WORDS.length)]).append(' ');
+        return sb.toString().trim();
+    }
+
+    static ChatApp1.Message message(int i, int storeSize) {
+        return new ChatApp1.Message(messageID(i), "bench", recipient(i % recipients(storeSize)), text(i), i);
+    }
+
+    static List<ChatApp1.Message> messages(int storeSize) {
+        List<ChatApp1.Message> out = new ArrayList<>(storeSize);
+        for (int i = 0; i < storeSize; i++) out.add(message(i, storeSize));
+        return out;
+    }
+
+    static List<Map<String,String>> records(List<ChatApp1.Message> messages) {
+        List<Map<String,String>> out = new ArrayList<>(messages.size());
+        for (ChatApp1.Message m : messages) out.add(ChatApp1.toRecord(m));
+        return out;
+    }
+
+    /** Empties ChatApp1's sent messages and fills them with messages, without touching any file. */
+    static void resetStore(List<ChatApp1.Message> messages) {
+        ChatApp1.contents.clear();
+        ChatApp1.contents.addAll(messages);
+        ChatApp1.mailboxes.clear();
+    }
+
+    /** Drops the drafts stored by earlier invocations (file and memory). */
+    static void resetDrafts() throws IOException {
+        ChatApp1.writer.flush();
+        Files.deleteIfExists(Paths.get(ChatApp1.STORED_FILE));
+        ChatApp1.loadStoredMessagesIntoArray();
+    }
+}
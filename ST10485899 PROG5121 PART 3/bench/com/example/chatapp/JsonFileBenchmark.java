@@ -0,0 +1,43 @@
+package com.example.chatapp;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JsonFileBenchmark - reading and writing a whole JSON file of storeSize records
+ * (readJsonListFromFile / writeJsonListToFile), in the working directory.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonFileBenchmark {
+
+    private static final String READ_FILE = "bench-read.json";
+    private static final String WRITE_FILE = "bench-write.json";
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    public int storeSize;
+
+    private List<Map<String,String>> records;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        records = BenchData.records(BenchData.messages(storeSize));
+        ChatApp1.writeJsonListToFile(READ_FILE, records);
+    }
+
+    @Benchmark
+    public List<Map<String,String>> readJsonListFromFile() {
+        return ChatApp1.readJsonListFromFile(READ_FILE);
+    }
+
+    @Benchmark
+    public void writeJsonListToFile() {
+        ChatApp1.writeJsonListToFile(WRITE_FILE, records);
+    }
+}
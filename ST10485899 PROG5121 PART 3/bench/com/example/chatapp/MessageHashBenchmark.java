@@ -0,0 +1,84 @@
+package com.example.chatapp;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MessageHashBenchmark - per-message cost of createMessageHash, before and after the scanner.
+ *
+ * regexHash is the old implementation (trim / split / replaceAll / toUpperCase), kept here only
+ * for comparison. loadRecomputing / loadPersisted are the two ways the startup loader can turn a
+ * record into a Message. Runs through the bench target of build.xml (it has no storeSize
+ * parameter, so bench.sizes does not multiply it); add "-prof gc" for the bytes per message:
+ *   ant bench -Dbench.args="MessageHashBenchmark -prof gc"
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MessageHashBenchmark {
+
+    private static final int SAMPLES = 1024;
+
+    private String[] texts;
+    private List<Map<String,String>> records;
+    private int i;
+
+    @Setup
+    public void setup() {
+        Random rnd = new Random(5121);
+        String[] words = {"Hi", "Mike,", "can", "you", "join", "us", "for", "dinner", "tonight?", "Thanks!"};
+        texts = new String[SAMPLES];
+        records = new ArrayList<>(SAMPLES);
+        for (int n = 0; n < SAMPLES; n++) {
+            StringBuilder sb = new StringBuilder();
+            int count = 1 + rnd.nextInt(30);
+            for (int w = 0; w < count; w++) sb.append(words[rnd.nextInt(words.length)]).append(' ');
+            texts[n] = sb.toString();
+            records.add(ChatApp1.toRecord(new ChatApp1.Message("0012345678", "S", "+27831234567", texts[n], n)));
+        }
+    }
+
+    private int next() {
+        return i = (i + 1) & (SAMPLES - 1);
+    }
+
+    @Benchmark
+    public String regexHash() {
+        int n = next();
+        return regexHash("0012345678", texts[n], n);
+    }
+
+    @Benchmark
+    public String scanningHash() {
+        int n = next();
+        return new ChatApp1.Message("0012345678", "S", "+27831234567", texts[n], n).getMessageHash();
+    }
+
+    @Benchmark
+    public ChatApp1.Message loadRecomputing() {
+        Map<String,String> r = records.get(next());
+        return new ChatApp1.Message(r.get("MessageID"), r.get("Sender"), r.get("Recipient"), r.get("Message"), 0);
+    }
+
+    @Benchmark
+    public ChatApp1.Message loadPersisted() {
+        Map<String,String> r = records.get(next());
+        return new ChatApp1.Message(r.get("MessageID"), r.get("Sender"), r.get("Recipient"), r.get("Message"), 0,
+                r.get("MessageHash"));
+    }
+
+    static String regexHash(String messageID, String messageText, int messageNumber) {
+        String idPart = messageID != null && messageID.length() >= 2 ? messageID.substring(0, 2) : "00";
+        String text = messageText.trim();
+        String[] words = text.split("\\s+");
+        String first = words.length >= 1 ? words[0].replaceAll("[^a-zA-Z0-9]", "") : "";
+        String last = words.length >= 2 ? words[words.length - 1].replaceAll("[^a-zA-Z0-9]", "") : first;
+        String combined = (first + last).toUpperCase();
+        return (idPart + ":" + messageNumber + ":" + combined).toUpperCase();
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.chatapp;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * StartupBenchmark - the startup load of storeSize sent messages (ChatApp1.loadSentMessages),
+ * once by replaying messages.json and once from a current messages.seg snapshot.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StartupBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    public int storeSize;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        Files.deleteIfExists(Paths.get(ChatApp1.SEGMENT_FILE));
+        ChatApp1.writeJsonListToFile(ChatApp1.MESSAGES_FILE, BenchData.records(BenchData.messages(storeSize)));
+    }
+
+    /** Starts each load from an empty store and no snapshot. */
+    @State(Scope.Thread)
+    public static class FromLog {
+        @Setup(Level.Invocation)
+        public void prepare() throws IOException {
+            ChatApp1.contents.clear();
+            Files.deleteIfExists(Paths.get(ChatApp1.SEGMENT_FILE));
+        }
+    }
+
+    /** Starts each load from an empty store and a current snapshot. */
+    @State(Scope.Thread)
+    public static class FromSegment {
+        @Setup(Level.Invocation)
+        public void prepare() throws IOException {
+            if (!Files.exists(Paths.get(ChatApp1.SEGMENT_FILE))) {
+                MessageSegment.convert(ChatApp1.MESSAGES_FILE, ChatApp1.SEGMENT_FILE);
+            }
+            ChatApp1.contents.clear();
+        }
+    }
+
+    @Benchmark
+    public int loadFromLog(FromLog prepared) {
+        ChatApp1.loadSentMessages();
+        return ChatApp1.contents.size();
+    }
+
+    @Benchmark
+    public int loadFromSegment(FromSegment prepared) {
+        ChatApp1.loadSentMessages();
+        return ChatApp1.contents.size();
+    }
+}
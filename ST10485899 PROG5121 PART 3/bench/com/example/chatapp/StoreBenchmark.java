@@ -0,0 +1,109 @@
+package com.example.chatapp;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * StoreBenchmark - the menu operations against a store already holding storeSize messages.
+ *
+ * Sends and drafts go through the real write path (writer thread, messages.json and
+ * stored_messages.json in the working directory), so run it from a scratch directory; the
+ * "bench" Ant target does. The store is put back to storeSize messages after every iteration.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StoreBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    public int storeSize;
+
+    private List<ChatApp1.Message> base;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        base = BenchData.messages(storeSize);
+        BenchData.resetStore(base);
+        BenchData.resetDrafts();
+        // log and compactor counts as the app has them after startup, so deletes do not
+        // trigger a compaction of a log that is mostly tombstones
+        ChatApp1.persistAllSentMessages();
+    }
+
+    @TearDown(Level.Iteration)
+    public void reset() throws IOException {
+        if (ChatApp1.contents.size() != storeSize) BenchData.resetStore(base);
+        BenchData.resetDrafts();
+    }
+
+    @TearDown(Level.Trial)
+    public void flush() throws IOException {
+        ChatApp1.writer.flush();
+    }
+
+    private int pick() {
+        next = (next + 7919) % storeSize; // walks the whole store in a scattered order
+        return next;
+    }
+
+    // inputs are taken from the prebuilt messages, so no benchmark pays for building strings
+    private ChatApp1.Message sample() {
+        return base.get(pick());
+    }
+
+    @Benchmark
+    public ChatApp1.Message newMessage() {
+        ChatApp1.Message s = sample();
+        return new ChatApp1.Message(s.getMessageID(), s.getSender(), s.getRecipient(), s.getMessageText(), storeSize);
+    }
+
+    @Benchmark
+    public String sendMessage() {
+        ChatApp1.Message s = sample();
+        return new ChatApp1.Message(s.getMessageID(), s.getSender(), s.getRecipient(), s.getMessageText(),
+                ChatApp1.contents.size()).sentMessage(1);
+    }
+
+    @Benchmark
+    public String storeDraft() {
+        ChatApp1.Message s = sample();
+        return new ChatApp1.Message(s.getMessageID(), s.getSender(), s.getRecipient(), s.getMessageText(), 0)
+                .sentMessage(2);
+    }
+
+    @Benchmark
+    public String searchByMessageID() {
+        return ChatApp1.searchByMessageID(sample().getMessageID());
+    }
+
+    @Benchmark
+    public String searchByRecipient() {
+        return ChatApp1.searchByRecipient(sample().getRecipient());
+    }
+
+    /** A message of its own (unique hash) is added before each delete, outside the measurement. */
+    @State(Scope.Thread)
+    public static class Victim {
+        private int n;
+        String hash;
+
+        @Setup(Level.Invocation)
+        public void add() {
+            ChatApp1.Message m = new ChatApp1.Message("99" + n, "bench", BenchData.recipient(0), "victim " + n, ++n);
+            ChatApp1.contents.add(m);
+            hash = m.getMessageHash();
+        }
+    }
+
+    @Benchmark
+    public boolean deleteByMessageHash(Victim victim) {
+        return ChatApp1.deleteByMessageHash(victim.hash);
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.chatapp;
+
+import javax.swing.SwingUtilities;
+import java.io.Closeable;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+/**
+ * AsyncStore - the message, draft and user operations of ChatApp1 as CompletableFutures, so the
+ * Swing event thread never waits for the disk.
+ *
+ * Sending, storing a draft, deleting, registering and logging in all touch files (a send waits
+ * for its write ack, the first login reads the user index). Called from a button listener they
+ * froze the window until the disk answered. Here each call is queued on one dedicated I/O thread
+ * and returns at once; the GUI hands the future to onEdt, which runs its callback back on the
+ * event thread once the work is done, like SwingWorker.done().
+ *
+ * One thread keeps the operations in the order they were asked for (a send followed by a delete
+ * of the same message never runs the other way round) and keeps the writer fed one request at a
+ * time; the writer's group commit still batches across the GUI, the server and imports.
+ */
+public class AsyncStore implements Closeable {
+
+    private final ExecutorService io;
+
+    public AsyncStore() {
+        this.io = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "quickchat-io");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** Runs task on the I/O thread, after everything submitted before it. */
+    public <T> CompletableFuture<T> submit(Callable<T> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            io.execute(() -> {
+                try {
+                    result.complete(task.call());
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    // ---------- messages ----------
+
+    /** Message.sentMessage(action): 1 sends, 2 stores as a draft, 3 disregards. */
+    public CompletableFuture<String> sentMessage(ChatApp1.Message m, int action) {
+        return submit(() -> m.sentMessage(action));
+    }
+
+    /** ChatApp1.sendMessage; fails with IllegalArgumentException if the message is invalid. */
+    public CompletableFuture<ChatApp1.Message> sendMessage(String sender, String recipient, String text) {
+        return submit(() -> ChatApp1.sendMessage(sender, recipient, text));
+    }
+
+    public CompletableFuture<Boolean> deleteByMessageHash(String hash) {
+        return submit(() -> ChatApp1.deleteByMessageHash(hash));
+    }
+
+    public CompletableFuture<Void> persistAllSentMessages() {
+        return submit(() -> {
+            ChatApp1.persistAllSentMessages();
+            return null;
+        });
+    }
+
+    public CompletableFuture<List<Map<String,String>>> readJsonListFromFile(String filename) {
+        return submit(() -> ChatApp1.readJsonListFromFile(filename));
+    }
+
+    public CompletableFuture<Void> writeJsonListToFile(String filename, List<Map<String,String>> list) {
+        List<Map<String,String>> copy = new ArrayList<>(list);
+        return submit(() -> {
+            ChatApp1.writeJsonListToFile(filename, copy);
+            return null;
+        });
+    }
+
+    // ---------- drafts ----------
+
+    /** Reloads the drafts from stored_messages.json, then returns them. */
+    public CompletableFuture<List<ChatApp1.Message>> loadStoredMessages() {
+        return submit(() -> {
+            ChatApp1.loadStoredMessagesIntoArray();
+            return ChatApp1.drafts.getDrafts();
+        });
+    }
+
+    // ---------- users ----------
+
+    /** Login.registerUser: the message to show, "Registration successful!" if it worked. */
+    public CompletableFuture<String> registerUser(String fullname, String gender, String username, String password,
+                                                  String confirmPassword, String phone, String imagePath) {
+        return submit(() -> new ChatApp1.Login().registerUser(fullname, gender, username, password,
+                confirmPassword, phone, imagePath));
+    }
+
+    /** Checks the password and opens a session; the token, or null if the login failed. */
+    public CompletableFuture<String> login(String username, String password) {
+        return submit(() -> new ChatApp1.Login().loginUser(username, password) ? ChatApp1.sessions.open(username) : null);
+    }
+
+    // ---------- Swing ----------
+
+    /**
+     * Runs done with the result, or failed with the cause, on the event thread once future
+     * completes. Either may touch Swing components.
+     */
+    public static <T> void onEdt(CompletableFuture<T> future, Consumer<? super T> done, Consumer<Throwable> failed) {
+        future.whenComplete((value, error) -> SwingUtilities.invokeLater(() -> {
+            if (error == null) {
+                done.accept(value);
+            } else {
+                failed.accept(error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+            }
+        }));
+    }
+
+    @Override
+    public void close() {
+        io.shutdown();
+    }
+}
@@ -0,0 +1,374 @@
+package com.example.chatapp;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * BulkImporter - loads large message dumps (a JSON array in the messages.json layout, or CSV)
+ * into a MessageStore and its log, or into a ShardedStore, using every core.
+ *
+ * The file is cut into chunks of CHUNK_SIZE rows, and each chunk goes through five stages:
+ *   1. parse    - the calling thread reads raw rows (JSON records, or CSV lines) into a chunk;
+ *                 CSV rows are split into fields on the pool
+ *   2. validate - required fields present and Validator rules met; a bad row is rejected with
+ *                 its line number and the rest of the chunk carries on
+ *   3. hash     - the Message is built, which computes its hash (a persisted MessageHash is kept)
+ *   4. index    - the chunk is appended to the store (and so to every MessageIndex) in one go
+ *   5. persist  - the chunk's records are appended to the log by the writer as one batch
+ *                 (one batch per shard of a ShardedStore)
+ * Stages 1-3 of a chunk run as one ForkJoinTask while the calling thread reads the next chunks;
+ * stages 4-5 take the chunks back in file order, so imported messages keep the dump's order.
+ * At most 2 x parallelism chunks are in flight, so memory does not grow with the file size.
+ *
+ * Message numbers (part of the hash) are the store size at the start plus the row's position
+ * in the dump, so a rejected row leaves a gap instead of making every later hash wait for it.
+ *
+ * CSV: first line is a header naming the columns (MessageID, Sender, MessageHash, Recipient,
+ * Message; any order, MessageHash optional), fields are comma-separated and may be quoted with
+ * "" for a quote, as in RFC 4180. A quoted field may span lines, up to MAX_ROW_LINES lines and
+ * MAX_ROW_CHARS characters per row. A quote still open past that, or at the end of the file, is
+ * taken to be stray: only the line it is on is rejected, and reading goes on with the next line.
+ */
+public class BulkImporter {
+
+    public static final int CHUNK_SIZE = 4096;
+    public static final int MAX_REJECTIONS = 1000;
+    public static final int MAX_ROW_LINES = 100;
+    public static final int MAX_ROW_CHARS = 64 * 1024;
+
+    /** Called on the importing thread after each chunk is indexed. */
+    public interface Progress {
+        void update(long rows, long imported, long rejected);
+    }
+
+    /** A row that was not imported. */
+    public static final class Rejection {
+        private final int line;
+        private final String reason;
+
+        Rejection(int line, String reason) {
+            this.line = line;
+            this.reason = reason;
+        }
+
+        public int getLine() { return line; }
+        public String getReason() { return reason; }
+
+        @Override
+        public String toString() {
+            return "line " + line + ": " + reason;
+        }
+    }
+
+    /** Outcome of one import. Only the first MAX_REJECTIONS rejections are kept, all are counted. */
+    public static final class Report {
+        private long rows, imported, rejected;
+        private final List<Rejection> rejections = new ArrayList<>();
+
+        public long getRows() { return rows; }
+        public long getImported() { return imported; }
+        public long getRejected() { return rejected; }
+        public List<Rejection> getRejections() { return Collections.unmodifiableList(rejections); }
+
+        private void reject(Rejection r) {
+            rejected++;
+            if (rejections.size() < MAX_REJECTIONS) rejections.add(r);
+        }
+    }
+
+    /** Where stages 4 and 5 put a chunk. */
+    public interface Sink {
+        /** Messages already stored (the first message number of an import). */
+        int size();
+
+        /** Stores the messages in order and queues their records; returns the acks to wait for. */
+        List<CompletableFuture<Void>> commit(List<ChatApp1.Message> messages);
+    }
+
+    private final Sink sink;
+    private final ForkJoinPool pool;
+
+    public BulkImporter(MessageStore store, MessageLog log, GroupCommitWriter writer) {
+        this(store, log, writer, ForkJoinPool.commonPool());
+    }
+
+    public BulkImporter(MessageStore store, MessageLog log, GroupCommitWriter writer, ForkJoinPool pool) {
+        this(new Sink() {
+            @Override
+            public int size() {
+                return store.size();
+            }
+
+            @Override
+            public List<CompletableFuture<Void>> commit(List<ChatApp1.Message> messages) {
+                store.addAll(messages);
+                List<Map<String,String>> records = new ArrayList<>(messages.size());
+                for (ChatApp1.Message m : messages) records.add(ChatApp1.toRecord(m));
+                boolean fsync = writer.getPolicy().isFsync();
+                return Collections.singletonList(writer.submitTask(log, l -> l.appendAll(records, fsync)));
+            }
+        }, pool);
+    }
+
+    public BulkImporter(ShardedStore store) {
+        this(new Sink() {
+            @Override public int size() { return store.size(); }
+            @Override public List<CompletableFuture<Void>> commit(List<ChatApp1.Message> messages) {
+                return store.importAll(messages);
+            }
+        }, ForkJoinPool.commonPool());
+    }
+
+    public BulkImporter(Sink sink, ForkJoinPool pool) {
+        this.sink = sink;
+        this.pool = pool;
+    }
+
+    // ---------- entry points ----------
+
+    /** Imports filename, as CSV if it ends in .csv and as a JSON array otherwise. */
+    public Report importFile(String filename, Progress progress) throws IOException {
+        try (Reader in = Files.newBufferedReader(Paths.get(filename), StandardCharsets.UTF_8)) {
+            return filename.toLowerCase(Locale.ROOT).endsWith(".csv") ? importCsv(in, progress) : importJson(in, progress);
+        }
+    }
+
+    /**
+     * Imports a JSON array of records. Malformed JSON cannot be resynchronised, so it ends the
+     * import with a rejection at the line where it was found; rows before it are still imported.
+     */
+    public Report importJson(Reader in, Progress progress) throws IOException {
+        JsonRecordReader reader = new JsonRecordReader(in);
+        return run(chunk -> {
+            Map<String,String> record;
+            while (chunk.size() < CHUNK_SIZE && (record = reader.nextRecord()) != null) {
+                chunk.add(reader.getRecordLine(), record);
+            }
+        }, reader::getLine, progress);
+    }
+
+    /** Imports CSV with a header line; see the class comment for the format. */
+    public Report importCsv(Reader in, Progress progress) throws IOException {
+        LineNumberReader lines = new LineNumberReader(in);
+        String header = readCsvRow(lines);
+        if (header == null) return new Report();
+        List<String> columns = splitCsv(header);
+        if (columns == null) throw new IOException("Malformed CSV header");
+        return run(chunk -> {
+            chunk.columns = columns;
+            String row;
+            while (chunk.size() < CHUNK_SIZE) {
+                int line = lines.getLineNumber() + 1;
+                if ((row = readCsvRow(lines)) == null) break;
+                if (!row.isEmpty()) chunk.add(line, row);
+            }
+        }, lines::getLineNumber, progress);
+    }
+
+    // ---------- pipeline ----------
+
+    // reads up to CHUNK_SIZE rows into chunk; fewer means the input is used up
+    private interface ChunkSource {
+        void fill(Chunk chunk) throws IOException;
+    }
+
+    private interface LineSource {
+        int line();
+    }
+
+    // rows of one chunk: raw on the way in, Messages (or rejections) once prepared
+    private static final class Chunk {
+        final List<Integer> lines = new ArrayList<>(CHUNK_SIZE);
+        final List<Object> rows = new ArrayList<>(CHUNK_SIZE); // Map<String,String> record or CSV line
+        List<String> columns;
+        long firstNumber;
+        final List<ChatApp1.Message> messages = new ArrayList<>(CHUNK_SIZE);
+        final List<Rejection> rejections = new ArrayList<>();
+
+        void add(int line, Object row) {
+            lines.add(line);
+            rows.add(row);
+        }
+
+        int size() { return rows.size(); }
+    }
+
+    private Report run(ChunkSource source, LineSource position, Progress progress) throws IOException {
+        Report report = new Report();
+        long number = sink.size();
+        Deque<ForkJoinTask<Chunk>> inFlight = new ArrayDeque<>();
+        List<CompletableFuture<Void>> persisted = new ArrayList<>();
+        int maxInFlight = 2 * Math.max(1, pool.getParallelism());
+        try {
+            boolean more = true;
+            while (more) {
+                Chunk chunk = new Chunk();
+                try {
+                    source.fill(chunk);                                     // 1. parse (read)
+                    more = chunk.size() == CHUNK_SIZE;
+                } catch (IOException e) {
+                    // the rows read before the error still go through
+                    chunk.rejections.add(new Rejection(position.line(), e.getMessage()));
+                    more = false;
+                }
+                if (chunk.size() == 0 && chunk.rejections.isEmpty()) break;
+                chunk.firstNumber = number;
+                number += chunk.size();
+                inFlight.add(pool.submit(() -> prepare(chunk)));            // 1-3 on the pool
+                if (inFlight.size() >= maxInFlight) commit(join(inFlight.poll()), report, persisted, progress);
+            }
+            while (!inFlight.isEmpty()) commit(join(inFlight.poll()), report, persisted, progress);
+        } finally {
+            for (ForkJoinTask<Chunk> t : inFlight) t.cancel(false);
+        }
+        for (CompletableFuture<Void> ack : persisted) GroupCommitWriter.await(ack);
+        return report;
+    }
+
+    // stages 2 and 3 (and CSV field splitting), on a pool thread
+    private static Chunk prepare(Chunk chunk) {
+        for (int i = 0; i < chunk.size(); i++) {
+            int line = chunk.lines.get(i);
+            Object row = chunk.rows.get(i);
+            Map<String,String> record;
+            if (row instanceof String) {
+                List<String> fields = splitCsv((String) row);
+                if (fields == null) {
+                    chunk.rejections.add(new Rejection(line, "unterminated quoted field"));
+                    continue;
+                }
+                record = toRecord(chunk.columns, fields);
+                if (record == null) {
+                    chunk.rejections.add(new Rejection(line, "malformed CSV row (expected " + chunk.columns.size() + " fields)"));
+                    continue;
+                }
+            } else {
+                @SuppressWarnings("unchecked")
+                Map<String,String> r = (Map<String,String>) row;
+                record = r;
+            }
+            String problem = validate(record);
+            if (problem != null) {
+                chunk.rejections.add(new Rejection(line, problem));
+                continue;
+            }
+            chunk.messages.add(new ChatApp1.Message(record.get("MessageID"), record.getOrDefault("Sender", "Developer"),
+                    record.get("Recipient"), record.get("Message"), (int) (chunk.firstNumber + i), record.get("MessageHash")));
+        }
+        chunk.rows.clear(); // the raw rows are not needed any more
+        return chunk;
+    }
+
+    // first problem with record, or null if it can be imported
+    private static String validate(Map<String,String> record) {
+        if (MessageLog.isTombstone(record)) return "delete record, not a message";
+        for (String field : new String[]{"MessageID", "Recipient", "Message"}) {
+            if (record.get(field) == null) return "missing " + field;
+        }
+        List<String> problems = Validator.problems(record.get("MessageID"), record.get("Recipient"), record.get("Message"));
+        return problems.isEmpty() ? null : String.join(" ", problems);
+    }
+
+    // stages 4 and 5, on the importing thread, in file order
+    private void commit(Chunk chunk, Report report, List<CompletableFuture<Void>> persisted, Progress progress) {
+        report.rows += chunk.messages.size() + chunk.rejections.size();
+        for (Rejection r : chunk.rejections) report.reject(r);
+        if (!chunk.messages.isEmpty()) {
+            persisted.addAll(sink.commit(chunk.messages));                  // 4. index, 5. persist
+            report.imported += chunk.messages.size();
+        }
+        if (progress != null) progress.update(report.rows, report.imported, report.rejected);
+    }
+
+    private static Chunk join(ForkJoinTask<Chunk> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+    }
+
+    // ---------- CSV ----------
+
+    // One logical row: physical lines are joined while a quoted field is still open, each line
+    // scanned once. If the quote is still open at the row limits or at EOF, the reader goes back
+    // to just after the first line and that line alone is returned (splitCsv then rejects it).
+    // Null at EOF.
+    private static String readCsvRow(LineNumberReader in) throws IOException {
+        String line = in.readLine();
+        if (line == null) return null;
+        boolean open = quotesOpen(line, false);
+        if (!open) return line;
+        in.mark(2 * MAX_ROW_CHARS);
+        StringBuilder row = new StringBuilder(line);
+        for (int lines = 1; open; lines++) {
+            String next = lines < MAX_ROW_LINES && row.length() <= MAX_ROW_CHARS ? in.readLine() : null;
+            if (next == null) {
+                try {
+                    in.reset();
+                } catch (IOException markLost) {
+                    // one line longer than the mark: what was read goes with the rejected row
+                }
+                return line;
+            }
+            row.append('\n').append(next);
+            open = quotesOpen(next, open);
+        }
+        return row.toString();
+    }
+
+    // whether a quote is open after s, given whether one was open before it
+    private static boolean quotesOpen(String s, boolean open) {
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) == '"') open = !open;
+        }
+        return open;
+    }
+
+    // RFC 4180 fields of one row; null if a quote is left open
+    static List<String> splitCsv(String row) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < row.length(); i++) {
+            char c = row.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < row.length() && row.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c != '\r') {
+                field.append(c);
+            }
+        }
+        if (quoted) return null;
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static Map<String,String> toRecord(List<String> columns, List<String> fields) {
+        if (fields.size() != columns.size()) return null;
+        Map<String,String> record = new LinkedHashMap<>();
+        for (int i = 0; i < columns.size(); i++) {
+            String value = fields.get(i);
+            if (!value.isEmpty() || !columns.get(i).equals("MessageHash")) record.put(columns.get(i), value);
+        }
+        return record;
+    }
+}
@@ -4,9 +4,18 @@ import javax.swing.*;
 import javax.swing.border.Border;
 import java.awt.*;
 import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.function.LongFunction;
+import java.util.function.Predicate;
 
 /**
  * ChatApp1 - Integrated final (Part1 + Part2 + Part3).
@@ -41,18 +50,19 @@ public class ChatApp1 {
     }
 
     static class Login {
-        protected static HashMap<String, User> users = new HashMap<>();
+        // persistent, indexed by username and phone (see UserDirectory)
+        static final UserDirectory users = new UserDirectory(USERS_FILE, writer.getPolicy().isFsync());
 
         public boolean checkUsername(String username) {
-            return username != null && username.contains("_") && username.length() <= 5;
+            return Validator.isUsername(username);
         }
 
         public boolean checkPasswordComplexity(String password) {
-            return password != null && password.length() > 8;
+            return Validator.isLongPassword(password);
         }
 
         public boolean checkCellphone(String phone) {
-            return phone != null && phone.startsWith("+") && phone.length() >= 10 && phone.length() <= 13;
+            return Validator.isInternationalNumber(phone);
         }
 
         public String registerUser(String fullname, String gender, String username,
@@ -77,16 +87,13 @@ public class ChatApp1 {
             if (!checkPasswordComplexity(password)) return "Password must be at least 8 characters long and include letters.";
             if (!checkCellphone(phone)) return "Phone number is incorrectly formatted. Example: +27831234567.";
             if (!password.equals(confirmPassword)) return "Passwords do not match. Please re-enter your password.";
-            if (users.containsKey(username)) return "This username is already taken. Please choose a different one.";
-
             User user = new User(fullname, gender, username, password, phone, imagePath);
-            users.put(username, user);
+            if (!users.register(user)) return "This username is already taken. Please choose a different one.";
             return "Registration successful!";
         }
 
         public boolean loginUser(String username, String password) {
-            User user = users.get(username);
-            return user != null && user.getPassword().equals(password);
+            return users.checkPassword(username, password); // against the stored salted hash
         }
 
         public String returnLoginStatus(boolean loginSuccess, String username) {
@@ -105,61 +112,117 @@ public class ChatApp1 {
         private String messageHash;
 
         public Message(String messageID, String sender, String recipient, String messageText, int messageNumber) {
+            this(messageID, sender, recipient, messageText, messageNumber, null);
+        }
+
+        // Used when loading: keeps a hash that was already persisted (computed if null).
+        Message(String messageID, String sender, String recipient, String messageText, int messageNumber,
+                String messageHash) {
             this.messageID = messageID;
             this.sender = sender;
             this.recipient = recipient;
             this.messageText = messageText == null ? "" : messageText;
             this.messageNumber = messageNumber;
-            this.messageHash = createMessageHash();
+            this.messageHash = messageHash != null ? messageHash : createMessageHash();
         }
 
         public boolean checkMessageID() {
-            return messageID != null && messageID.length() <= 10;
+            return Validator.isMessageID(messageID);
         }
 
         // returns 1 on valid, 0 on invalid (as POE specified)
         public int checkRecipientCell() {
-            if (recipient == null) return 0;
-            if (!recipient.startsWith("+")) return 0;
-            int len = recipient.length();
-            if (len < 10 || len > 13) return 0;
-            String rest = recipient.substring(1);
-            return rest.matches("\\d+") ? 1 : 0;
+            return Validator.isInternationalNumber(recipient) ? 1 : 0;
         }
 
+        // ID prefix : message number : first and last word, letters and digits only, upper case.
+        // Same result as trim / split("\\s+") / replaceAll("[^a-zA-Z0-9]", "") / toUpperCase, but
+        // found by scanning the text once: no regex, no word array, one String built at the end.
         private String createMessageHash() {
-            String idPart = messageID != null && messageID.length() >= 2 ? messageID.substring(0, 2) : "00";
-            String text = messageText.trim();
-            String[] words = text.split("\\s+");
-            String first = words.length >= 1 ? words[0].replaceAll("[^a-zA-Z0-9]", "") : "";
-            String last = words.length >= 2 ? words[words.length - 1].replaceAll("[^a-zA-Z0-9]", "") : first;
-            String combined = (first + last).toUpperCase();
-            return (idPart + ":" + messageNumber + ":" + combined).toUpperCase();
+            String text = messageText;
+            int start = 0, end = text.length();
+            while (start < end && text.charAt(start) <= ' ') start++;   // String.trim
+            while (end > start && text.charAt(end - 1) <= ' ') end--;
+            int firstEnd = start;
+            while (firstEnd < end && !isWordSeparator(text.charAt(firstEnd))) firstEnd++;
+            int lastStart = end;
+            while (lastStart > firstEnd && !isWordSeparator(text.charAt(lastStart - 1))) lastStart--;
+
+            StringBuilder sb = new StringBuilder(16 + (firstEnd - start) + (end - lastStart));
+            if (messageID != null && messageID.length() >= 2) {
+                char a = messageID.charAt(0), b = messageID.charAt(1);
+                if (a < 128 && b < 128) sb.append(asciiUpper(a)).append(asciiUpper(b));
+                else sb.append(messageID.substring(0, 2).toUpperCase(Locale.ROOT));
+            } else {
+                sb.append("00");
+            }
+            sb.append(':').append(messageNumber).append(':');
+            appendAlnumUpper(sb, text, start, firstEnd);
+            if (firstEnd == end) appendAlnumUpper(sb, text, start, firstEnd); // one word: first + first
+            else appendAlnumUpper(sb, text, lastStart, end);
+            return sb.toString();
+        }
+
+        // the characters "\\s" matches
+        private static boolean isWordSeparator(char c) {
+            return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+        }
+
+        private static char asciiUpper(char c) {
+            return c >= 'a' && c <= 'z' ? (char) (c - 32) : c;
+        }
+
+        private static void appendAlnumUpper(StringBuilder sb, String text, int from, int to) {
+            for (int i = from; i < to; i++) {
+                char c = text.charAt(i);
+                if (c >= 'a' && c <= 'z') sb.append((char) (c - 32));
+                else if ((c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')) sb.append(c);
+            }
+        }
+
+        // The words of a message text as the hash sees them: split on whitespace, with anything
+        // but letters and digits removed (so a word may come out empty). TextIndex uses them too.
+        static String[] words(String text) {
+            int start = 0, end = text.length();
+            while (start < end && text.charAt(start) <= ' ') start++;
+            while (end > start && text.charAt(end - 1) <= ' ') end--;
+            List<String> words = new ArrayList<>();
+            StringBuilder word = new StringBuilder();
+            for (int i = start; i <= end; i++) {
+                if (i == end || isWordSeparator(text.charAt(i))) {
+                    // a run of separators ends one word only (the text is trimmed, so i > start here)
+                    if (i == end || !isWordSeparator(text.charAt(i - 1))) words.add(word.toString());
+                    word.setLength(0);
+                    continue;
+                }
+                char c = text.charAt(i);
+                if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')) word.append(c);
+            }
+            return words.toArray(new String[0]);
         }
 
         // Actions: 1=Send, 2=Store, 3=Disregard
         public String sentMessage(int choice) {
             switch (choice) {
-                case 1:
-                    // add to parallel arrays and persist
+                case 1: {
+                    // add to the recipient's shard of the store (which updates its ID, hash and secondary
+                    // indexes) and append one record to that shard's log
+                    long start = System.nanoTime();
                     ChatApp1.contents.add(this);
-                    ChatApp1.messageHashes.add(this.messageHash);
-                    ChatApp1.messageIDs.add(this.messageID);
-                    ChatApp1.persistAllSentMessages();
-                    return "Message successfully sent.";
-                case 2:
-                    // store draft
-                    Map<String, String> draft = new LinkedHashMap<>();
-                    draft.put("MessageID", messageID);
-                    draft.put("Sender", sender);
-                    draft.put("MessageHash", messageHash);
-                    draft.put("Recipient", recipient);
-                    draft.put("Message", messageText);
-                    List<Map<String,String>> drafts = ChatApp1.readJsonListFromFile(ChatApp1.STORED_FILE);
-                    drafts.add(draft);
-                    ChatApp1.writeJsonListToFile(ChatApp1.STORED_FILE, drafts);
-                    ChatApp1.loadStoredMessagesIntoArray();
+                    ChatApp1.appendSentMessage(this);
+                    // only queue for INBOX while something drains the mailboxes (the server)
+                    boolean delivered = !ChatApp1.mailboxes.hasConsumer() || ChatApp1.mailboxes.deliver(this);
+                    Metrics.GLOBAL.record(Metrics.Op.SEND, start);
+                    return delivered ? "Message successfully sent." : SENT_NOT_DELIVERED;
+                }
+                case 2: {
+                    // store draft: kept in memory and appended to stored_messages.json
+                    long start = System.nanoTime();
+                    ChatApp1.drafts.add(this);
+                    ChatApp1.storedMessages.add(ChatApp1.toRecord(this));
+                    Metrics.GLOBAL.record(Metrics.Op.STORE_DRAFT, start);
                     return "Message successfully stored.";
+                }
                 case 3:
                     ChatApp1.disregardedMessages.add(this);
                     return "Message disregarded.";
@@ -178,150 +241,281 @@ public class ChatApp1 {
     }
 
     // ---------- Part 3 data structures ----------
-    public static final List<Message> contents = new ArrayList<>();            // sent messages
-    public static final List<Message> disregardedMessages = new ArrayList<>(); // disregarded
-    public static final List<Map<String,String>> storedMessages = new ArrayList<>(); // loaded from stored_messages.json
-    public static final List<String> messageHashes = new ArrayList<>();
-    public static final List<String> messageIDs = new ArrayList<>();
+    // Everything here may be touched by several threads (server connections, the writers), so the
+    // sent messages live in the concurrent ShardedStore and the plain lists are synchronized.
+    /**
+     * @deprecated never filled since sent messages moved into {@link #store}; use
+     * {@link ShardedStore#findFirstByHash} (or iterate store) instead. Kept so older code compiles.
+     */
+    @Deprecated
+    public static final List<String> messageHashes = Collections.synchronizedList(new ArrayList<>());
+    /**
+     * @deprecated never filled since sent messages moved into {@link #store}; use
+     * {@link ShardedStore#findById} (or iterate store) instead. Kept so older code compiles.
+     */
+    @Deprecated
+    public static final List<String> messageIDs = Collections.synchronizedList(new ArrayList<>());
+
+    // write-behind stage batching sends, drafts and rewrites into group commits (see GroupCommitWriter);
+    // shard 0 of the store and the drafts share it, the other shards have their own
+    public static final GroupCommitWriter writer =
+            new GroupCommitWriter(GroupCommitWriter.FlushPolicy.fromSystemProperties());
+
+    // sent messages in chatapp.shards shards by recipient, each with its own log, segment,
+    // compactor and recipient/length indexes (see ShardedStore)
+    public static final ShardedStore store =
+            ShardedStore.fromSystemProperties(ChatApp1.MESSAGES_FILE, ChatApp1.SEGMENT_FILE, writer);
+    public static final List<Message> contents = store;                        // sent messages
+    public static final TextIndex textIndex = new TextIndex();                 // words -> sent messages
+    public static final ReportEngine reports = new ReportEngine(store);
+    static {
+        store.addIndex(textIndex);
+    }
+    public static final Mailboxes mailboxes = Mailboxes.fromSystemProperties(); // per-recipient delivery queues
+    public static final SessionManager sessions = SessionManager.fromSystemProperties(); // token -> logged-in user
+    public static final ThumbnailService thumbnails = ThumbnailService.fromSystemProperties(); // profile pictures
+    public static final AsyncStore io = new AsyncStore();                       // disk work off the Swing thread
+    public static final List<Message> disregardedMessages = Collections.synchronizedList(new ArrayList<>()); // disregarded
+    public static final List<Map<String,String>> storedMessages =
+            Collections.synchronizedList(new ArrayList<>()); // loaded from stored_messages.json
 
     public static final String MESSAGES_FILE = "messages.json";
     public static final String STORED_FILE = "stored_messages.json";
+    public static final String USERS_FILE = "users.jsonl";           // registered users (see UserDirectory)
+    public static final String SEGMENT_FILE = "messages.seg";         // binary snapshot of messages.json (shard 0)
+    public static final String SENT_NOT_DELIVERED = "Message sent, but the recipient's inbox is full; it was not delivered.";
+    private static final int RESULTS_PER_PAGE = 20;
+
+    // append-only store behind stored_messages.json (see MessageLog); the sent messages have one per shard
+    public static final MessageLog storedLog = new MessageLog(STORED_FILE);
+
+    // chatapp.ack: "written" (default) waits until the record is on disk, "durable" also waits
+    // for the fsync, "async" returns straight away and leaves the write to the writer thread
+    static final String ACK_MODE = System.getProperty("chatapp.ack", "written");
+
+    // authoritative in-memory drafts; storedMessages mirrors it as maps
+    public static final DraftStore drafts = new DraftStore(storedLog);
 
     // ---------- Part 3 operations ----------
 
-    public static void persistAllSentMessages() {
-        List<Map<String,String>> list = new ArrayList<>();
-        for (Message m : contents) {
-            Map<String,String> obj = new LinkedHashMap<>();
-            obj.put("MessageID", m.getMessageID());
-            obj.put("Sender", m.getSender());
-            obj.put("MessageHash", m.getMessageHash());
-            obj.put("Recipient", m.getRecipient());
-            obj.put("Message", m.getMessageText());
-            list.add(obj);
+    static Map<String,String> toRecord(Message m) {
+        Map<String,String> obj = new LinkedHashMap<>();
+        obj.put("MessageID", m.getMessageID());
+        obj.put("Sender", m.getSender());
+        obj.put("MessageHash", m.getMessageHash());
+        obj.put("Recipient", m.getRecipient());
+        obj.put("Message", m.getMessageText());
+        return obj;
+    }
+
+    // Appends one sent message to its shard's log; cost does not grow with the number already sent.
+    public static void appendSentMessage(Message m) {
+        ShardedStore.Shard shard = store.shardOf(m);
+        persistRecord(shard.getWriter(), shard.getLog(), store.toRecord(m));
+        shard.getCompactor().recordAppend();
+    }
+
+    // Hands one record to the write-behind stage and waits as long as ACK_MODE asks.
+    static void persistRecord(MessageLog log, Map<String,String> record) {
+        persistRecord(writer, log, record);
+    }
+
+    static void persistRecord(GroupCommitWriter writer, MessageLog log, Map<String,String> record) {
+        awaitAck("durable".equals(ACK_MODE) ? writer.submitDurable(log, record) : writer.submit(log, record));
+    }
+
+    private static void awaitAck(CompletableFuture<Void> ack) {
+        if ("async".equals(ACK_MODE)) {
+            ack.exceptionally(e -> {
+                e.printStackTrace();
+                return null;
+            });
+            return;
+        }
+        try {
+            GroupCommitWriter.await(ack);
+        } catch (IOException e) {
+            e.printStackTrace();
         }
-        writeJsonListToFile(MESSAGES_FILE, list);
     }
 
+    // Full rewrite of every shard's log (still used after a delete), queued behind pending appends.
+    public static void persistAllSentMessages() {
+        for (CompletableFuture<Void> ack : store.rewrite()) awaitAck(ack);
+    }
+
+    // Bulk import of a JSON or CSV dump (see BulkImporter); imported messages are appended to the log.
+    public static BulkImporter.Report importMessages(String filename, BulkImporter.Progress progress) throws IOException {
+        long start = System.nanoTime();
+        BulkImporter.Report report = new BulkImporter(store).importFile(filename, progress);
+        Metrics.GLOBAL.record(Metrics.Op.IMPORT, start);
+        return report;
+    }
+
+    // Explicit reload from disk (startup); storing a draft keeps both in sync without it.
     public static void loadStoredMessagesIntoArray() {
-        storedMessages.clear();
-        List<Map<String,String>> read = readJsonListFromFile(STORED_FILE);
-        storedMessages.addAll(read);
+        try {
+            writer.flush(); // drafts still queued for the file
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        drafts.load();
+        synchronized (storedMessages) {
+            storedMessages.clear();
+            for (Message d : drafts.getDrafts()) storedMessages.add(toRecord(d));
+        }
     }
 
 
     public static String displayLongestSentMessage() {
-        if (contents.isEmpty()) return "No sent messages.";
-        Message best = contents.get(0);
-        for (Message m : contents) {
-            if (m.getMessageText().length() > best.getMessageText().length()) best = m;
+        long start = System.nanoTime();
+        try {
+            Message best = store.longest();
+            if (best == null) return "No sent messages.";
+            return "Longest message (ID: " + best.getMessageID() + "):\n" + best.getMessageText();
+        } finally {
+            Metrics.GLOBAL.record(Metrics.Op.LONGEST, start);
+        }
+    }
+
+    /** The k longest sent messages (only those from sender if it is not null), longest first. */
+    public static List<Message> topLongestMessages(String sender, int k) {
+        long start = System.nanoTime();
+        try {
+            return sender == null ? store.topK(k) : store.topK(sender, k);
+        } finally {
+            Metrics.GLOBAL.record(Metrics.Op.LONGEST, start);
         }
-        return "Longest message (ID: " + best.getMessageID() + "):\n" + best.getMessageText();
     }
 
     public static String searchByMessageID(String id) {
-        for (Message m : contents) {
-            if (m.getMessageID().equals(id)) {
-                return "Recipient: " + m.getRecipient() + "\nMessage: " + m.getMessageText();
-            }
+        long start = System.nanoTime();
+        try {
+            Message m = store.findById(id);
+            if (m == null) return "Message ID not found in sent messages.";
+            return "Recipient: " + m.getRecipient() + "\nMessage: " + m.getMessageText();
+        } finally {
+            Metrics.GLOBAL.record(Metrics.Op.SEARCH_ID, start);
         }
-        return "Message ID not found in sent messages.";
     }
 
     public static String searchByRecipient(String recipient) {
-        StringBuilder sb = new StringBuilder();
-        for (Message m : contents) {
-            if (recipient != null && recipient.equals(m.getRecipient())) {
-                sb.append("MessageID: ").append(m.getMessageID()).append("\n")
-                  .append("Sender: ").append(m.getSender()).append("\n")
-                  .append("Message: ").append(m.getMessageText()).append("\n\n");
-            }
+        long start = System.nanoTime();
+        try {
+            StringBuilder sb = new StringBuilder();
+            // posting list of this recipient only (in its shard), not a scan of every sent message
+            if (recipient != null) store.shardFor(recipient).getRecipients().forEach(recipient, m -> appendRecipientResult(sb, m));
+            if (sb.length() == 0) return "No sent messages to recipient: " + recipient;
+            return sb.toString();
+        } finally {
+            Metrics.GLOBAL.record(Metrics.Op.SEARCH_RECIPIENT, start);
         }
-        if (sb.length() == 0) return "No sent messages to recipient: " + recipient;
-        return sb.toString();
     }
 
-    public static boolean deleteByMessageHash(String hash) {
-        Iterator<Message> it = contents.iterator();
-        boolean removed = false;
-        while (it.hasNext()) {
-            Message m = it.next();
-            if (m.getMessageHash().equals(hash)) {
-                it.remove();
-                removed = true;
-                break;
-            }
+    /** One page of searchByRecipient; pass the page's cursor back in for the next one. */
+    public static MessagePage searchByRecipient(String recipient, long after, int limit) {
+        long start = System.nanoTime();
+        try {
+            return store.shardFor(recipient).getRecipients().page(recipient, after, limit);
+        } finally {
+            Metrics.GLOBAL.record(Metrics.Op.SEARCH_RECIPIENT, start);
         }
-        if (removed) {
-            messageHashes.clear();
-            messageIDs.clear();
-            for (Message m : contents) {
-                messageHashes.add(m.getMessageHash());
-                messageIDs.add(m.getMessageID());
+    }
+
+    private static void appendRecipientResult(StringBuilder sb, Message m) {
+        sb.append("MessageID: ").append(m.getMessageID()).append("\n")
+          .append("Sender: ").append(m.getSender()).append("\n")
+          .append("Message: ").append(m.getMessageText()).append("\n\n");
+    }
+
+    // Shows the results a page at a time so a busy recipient does not build one huge dialog.
+    private static void showRecipientResults(String recipient) {
+        showPaged("Search results", "No sent messages to recipient: " + recipient,
+                cursor -> searchByRecipient(recipient, cursor, RESULTS_PER_PAGE),
+                page -> {
+                    StringBuilder sb = new StringBuilder();
+                    for (Message m : page.getMessages()) appendRecipientResult(sb, m);
+                    return sb.toString();
+                });
+    }
+
+    // One dialog per page, asking before fetching the next one.
+    private static void showPaged(String title, String emptyText, LongFunction<MessagePage> pager,
+                                  Function<MessagePage, String> render) {
+        long cursor = MessagePage.START;
+        while (true) {
+            MessagePage page = pager.apply(cursor);
+            if (page.isEmpty()) {
+                if (cursor == MessagePage.START) JOptionPane.showMessageDialog(null, emptyText);
+                return;
             }
-            persistAllSentMessages();
+            String text = render.apply(page);
+            if (!page.hasMore()) {
+                JOptionPane.showMessageDialog(null, text);
+                return;
+            }
+            int more = JOptionPane.showConfirmDialog(null, text + "\nShow more?", title, JOptionPane.YES_NO_OPTION);
+            if (more != JOptionPane.YES_OPTION) return;
+            cursor = page.getCursor();
         }
-        return removed;
     }
 
-    public static String displayReportAllSentMessages() {
-        if (contents.isEmpty()) return "No sent messages to report.";
-        StringBuilder sb = new StringBuilder();
-        for (Message m : contents) {
-            sb.append("MessageHash: ").append(m.getMessageHash())
-              .append(" | MessageID: ").append(m.getMessageID())
-              .append(" | Sender: ").append(safe(m.getSender()))
-              .append(" | Recipient: ").append(safe(m.getRecipient()))
-              .append(" | Message: ").append(m.getMessageText())
-              .append("\n");
+    public static boolean deleteByMessageHash(String hash) {
+        return deleteByMessageHash(hash, m -> true) != null;
+    }
+
+    /**
+     * Deletes the earliest sent message with this hash if allowed accepts it (checked atomically
+     * with the removal, see ShardedStore.removeFirstByHash). Returns that message, deleted or
+     * not, or null if no message has the hash.
+     */
+    public static Message deleteByMessageHash(String hash, Predicate<Message> allowed) {
+        long start = System.nanoTime();
+        try {
+            // hash index lookup instead of a scan of every sent message
+            boolean[] accepted = new boolean[1];
+            Message m = store.removeFirstByHash(hash, found -> accepted[0] = allowed.test(found));
+            if (m == null || !accepted[0]) return m;
+            // one tombstone record in the message's shard instead of rewriting every remaining message
+            ShardedStore.Shard shard = store.shardOf(m);
+            persistRecord(shard.getWriter(), shard.getLog(), MessageLog.tombstone(hash));
+            shard.getCompactor().recordDelete();
+            return m;
+        } finally {
+            Metrics.GLOBAL.record(Metrics.Op.DELETE, start);
         }
-        return sb.toString();
     }
 
-    private static String safe(String s) { return s == null ? "" : s; }
+    public static String displayReportAllSentMessages() {
+        return reports.toString(ReportEngine.Report.ALL_SENT);
+    }
 
     // ---------- Lightweight JSON helpers ----------
     public static List<Map<String,String>> readJsonListFromFile(String filename) {
+        long start = System.nanoTime();
         try {
-            Path p = Paths.get(filename);
-            if (!Files.exists(p)) return new ArrayList<>();
-            String content = Files.readString(p);
-            if (content.trim().isEmpty()) return new ArrayList<>();
             List<Map<String,String>> out = new ArrayList<>();
-            String trimmed = content.trim();
-            if (!trimmed.startsWith("[") || !trimmed.endsWith("]")) return out;
-            String inner = trimmed.substring(1, trimmed.length() - 1).trim();
-            if (inner.isEmpty()) return out;
-            String[] items = inner.split("\\},\\s*\\{");
-            for (String item : items) {
-                String it = item;
-                if (!it.startsWith("{")) it = "{" + it;
-                if (!it.endsWith("}")) it = it + "}";
-                Map<String,String> map = new LinkedHashMap<>();
-                String body = it.substring(1, it.length() - 1).trim();
-                String[] pairs = body.split(",\\s*\"");
-                for (String pair : pairs) {
-                    String clean = pair.trim();
-                    if (!clean.startsWith("\"")) clean = "\"" + clean;
-                    int colon = clean.indexOf(':');
-                    if (colon < 0) continue;
-                    String k = clean.substring(0, colon).replaceAll("[\"\\{\\}]", "").trim();
-                    String v = clean.substring(colon + 1).trim();
-                    v = v.replaceAll("^[\\s\"]+|[\\s\"]+$", "");
-                    v = v.replaceAll("[\\},]$", "").trim();
-                    v = v.replace("\\n", "\n").replace("\\r", "\r").replace("\\\"", "\"").replace("\\\\", "\\");
-                    map.put(k, v);
-                }
-                out.add(map);
+            try {
+                forEachJsonRecord(filename, out::add);
+                return out;
+            } catch (Exception ex) {
+                return new ArrayList<>();
             }
-            return out;
-        } catch (Exception ex) {
-            return new ArrayList<>();
+        } finally {
+            Metrics.GLOBAL.record(Metrics.Op.JSON_READ, start);
         }
     }
 
+    // Streaming form: hands records over one at a time, so memory stays flat for any file size.
+    public static void forEachJsonRecord(String filename, Consumer<Map<String,String>> action) throws IOException {
+        JsonRecordReader.forEachRecord(filename, action);
+    }
+
     public static void writeJsonListToFile(String filename, List<Map<String,String>> list) {
-        try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(filename))) {
+        long start = System.nanoTime();
+        long[] bytes = {0};
+        try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+                new CountingOutputStream(Files.newOutputStream(Paths.get(filename)), bytes), StandardCharsets.UTF_8))) {
             writer.write("[\n");
             for (int i = 0; i < list.size(); i++) {
                 Map<String,String> map = list.get(i);
@@ -338,12 +532,37 @@ public class ChatApp1 {
                 writer.write("\n");
             }
             writer.write("]\n");
+            writer.flush();
+            Metrics.GLOBAL.addBytesWritten(bytes[0]); // counted only once the whole list reached the file
         } catch (IOException e) {
             e.printStackTrace();
         }
+        Metrics.GLOBAL.record(Metrics.Op.JSON_WRITE, start);
+    }
+
+    // adds every byte that reaches the underlying stream to count[0]
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private final long[] count;
+
+        CountingOutputStream(OutputStream out, long[] count) {
+            super(out);
+            this.count = count;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count[0]++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count[0] += len;
+        }
     }
 
-    private static String escapeJson(String s) {
+    static String escapeJson(String s) {
         if (s == null) return "";
         return s.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n").replace("\r", "\\r");
     }
@@ -459,10 +678,16 @@ public class ChatApp1 {
                 JFileChooser fileChooser = new JFileChooser();
                 if (fileChooser.showOpenDialog(frame) == JFileChooser.APPROVE_OPTION) {
                     File file = fileChooser.getSelectedFile();
-                    selectedImagePath = file.getAbsolutePath();
-                    ImageIcon icon = new ImageIcon(new ImageIcon(selectedImagePath).getImage()
-                            .getScaledInstance(profilePictureImage.getWidth(), profilePictureImage.getHeight(), Image.SCALE_SMOOTH));
-                    profilePictureImage.setIcon(icon);
+                    String path = file.getAbsolutePath();
+                    selectedImagePath = path;
+                    profilePictureImage.setIcon(null);
+                    profilePictureImage.setText("Loading...");
+                    // decoded and scaled on the thumbnail pool; only the result comes back to the EDT
+                    thumbnails.thumbnail(path).whenComplete((icon, error) -> SwingUtilities.invokeLater(() -> {
+                        if (!path.equals(selectedImagePath)) return; // another picture was chosen since
+                        profilePictureImage.setText(error == null ? null : "Not an image");
+                        profilePictureImage.setIcon(icon);
+                    }));
                 }
             });
 
@@ -479,7 +704,6 @@ public class ChatApp1 {
             });
             contentPanel.add(returnToLoginButton, gbc);
 
-            Login loginLogic = new Login();
             buttonRegister.addActionListener(e -> {
                 String fullname = fullnameField.getText().trim();
                 String username = usernameField.getText().trim();
@@ -488,15 +712,21 @@ public class ChatApp1 {
                 String phone = phoneField.getText().trim();
                 String gender = maleRadioButton.isSelected() ? "Male" : femaleRadioButton.isSelected() ? "Female" : "";
 
-                String registrationMessage = loginLogic.registerUser(
-                        fullname, gender, username, password, confirmPassword, phone, selectedImagePath
-                );
-
-                JOptionPane.showMessageDialog(frame, registrationMessage);
-                if (registrationMessage.equals("Registration successful!")) {
-                    frame.setVisible(false); // Close the registration form
-                    new LoginForm(); // Open login page
-                }
+                // users.jsonl is written on the I/O thread; the form stays live meanwhile
+                buttonRegister.setEnabled(false);
+                AsyncStore.onEdt(io.registerUser(fullname, gender, username, password, confirmPassword, phone, selectedImagePath),
+                        registrationMessage -> {
+                            buttonRegister.setEnabled(true);
+                            JOptionPane.showMessageDialog(frame, registrationMessage);
+                            if (registrationMessage.equals("Registration successful!")) {
+                                frame.setVisible(false); // Close the registration form
+                                new LoginForm(); // Open login page
+                            }
+                        },
+                        error -> {
+                            buttonRegister.setEnabled(true);
+                            JOptionPane.showMessageDialog(frame, "Registration failed: " + error.getMessage());
+                        });
             });
 
             frame.add(contentPanel);
@@ -565,13 +795,19 @@ public class ChatApp1 {
             loginButton.addActionListener(e -> {
                 String username = usernameField.getText().trim();
                 String password = new String(passwordField.getPassword());
-                boolean loginSuccess = loginLogic.loginUser(username, password);
-                String message = loginLogic.returnLoginStatus(loginSuccess, username);
-                JOptionPane.showMessageDialog(frame, message);
-                if (loginSuccess) {
-                    frame.setVisible(false);
-                    runQuickChatLoop(username); // launch quickchat for logged-in user
-                }
+                // the user index may have to be read from disk, so the check runs on the I/O thread
+                loginButton.setEnabled(false);
+                AsyncStore.onEdt(io.login(username, password), token -> {
+                    loginButton.setEnabled(true);
+                    JOptionPane.showMessageDialog(frame, loginLogic.returnLoginStatus(token != null, username));
+                    if (token != null) {
+                        frame.setVisible(false);
+                        runQuickChatLoop(token); // launch quickchat for logged-in user
+                    }
+                }, error -> {
+                    loginButton.setEnabled(true);
+                    JOptionPane.showMessageDialog(frame, error.getMessage());
+                });
             });
 
             registerButton.addActionListener(e -> {
@@ -585,146 +821,184 @@ public class ChatApp1 {
     }
 
     // ---------- REPLACED numeric QuickChat loop ----------
-    private static void runQuickChatLoop(String loggedInUsername) {
+    // The menu runs on the event thread, one choice at a time: a choice that touches the disk
+    // hands the work to the AsyncStore and the menu comes back from its callback, so the window
+    // is never blocked while messages are written.
+    private static void runQuickChatLoop(String sessionToken) {
         JOptionPane.showMessageDialog(null, "Welcome to QuickChat.");
 
         String numStr = JOptionPane.showInputDialog("How many messages will you enter?");
         int maxMessages;
         try {
-            if (numStr == null) return;
+            if (numStr == null) {
+                sessions.invalidate(sessionToken);
+                return;
+            }
             maxMessages = Integer.parseInt(numStr);
             if (maxMessages < 1) {
                 JOptionPane.showMessageDialog(null, "Number must be at least 1.");
+                sessions.invalidate(sessionToken);
                 return;
             }
         } catch (Exception ex) {
             JOptionPane.showMessageDialog(null, "Invalid number entered.");
+            sessions.invalidate(sessionToken);
             return;
         }
 
-        int entered = 0;
+        showQuickChatMenu(sessionToken, maxMessages, 0);
+    }
 
-        while (true) {
-            String menu =
-                    "QuickChat Menu\n\n" +
-                    "1. Send Messages\n" +
-                    "2. Display Sender & Recipient\n" +
-                    "3. Display Longest Message\n" +
-                    "4. Search Message by ID\n" +
-                    "5. Search Message by Recipient\n" +
-                    "6. Delete Message by Hash\n" +
-                    "7. Load Stored Messages\n" +
-                    "8. Display Full Report\n" +
-                    "9. Quit\n\n" +
-                    "Enter your choice (1-9):";
-
-            String choiceStr = JOptionPane.showInputDialog(menu);
-            if (choiceStr == null) return; // user cancelled
-
-            int choice;
-            try {
-                choice = Integer.parseInt(choiceStr.trim());
-            } catch (NumberFormatException nfe) {
-                JOptionPane.showMessageDialog(null, "Please enter a number between 1 and 9.");
-                continue;
-            }
+    // One menu choice. Every path either ends the session or queues the next menu exactly once.
+    private static void showQuickChatMenu(String sessionToken, int maxMessages, int entered) {
+        Runnable again = () -> SwingUtilities.invokeLater(() -> showQuickChatMenu(sessionToken, maxMessages, entered));
+
+        String menu =
+                "QuickChat Menu\n\n" +
+                "1. Send Messages\n" +
+                "2. Display Sender & Recipient\n" +
+                "3. Display Longest Message\n" +
+                "4. Search Message by ID\n" +
+                "5. Search Message by Recipient\n" +
+                "6. Delete Message by Hash\n" +
+                "7. Load Stored Messages\n" +
+                "8. Display Full Report\n" +
+                "9. Quit\n\n" +
+                "Enter your choice (1-9):";
+
+        String choiceStr = JOptionPane.showInputDialog(menu);
+        if (choiceStr == null) { // user cancelled
+            sessions.invalidate(sessionToken);
+            return;
+        }
 
-            switch (choice) {
-                case 1:
-                    if (entered >= maxMessages) {
-                        JOptionPane.showMessageDialog(null, "You reached the limit (" + maxMessages + ").");
-                        break;
-                    }
-                    // call flow that sends/stores/disregards a single message; returns 1 if a message entry was consumed
-                    int consumed = sendMessageFlow(loggedInUsername);
-                    if (consumed > 0) entered += consumed;
-                    break;
+        // the session is checked on every choice, so an idle menu logs out
+        String loggedInUsername = sessions.usernameFor(sessionToken);
+        if (loggedInUsername == null) {
+            JOptionPane.showMessageDialog(null, "Your session has expired. Please log in again.");
+            return;
+        }
 
-                case 2:
-                    JOptionPane.showMessageDialog(null, displaySenderAndRecipient());
-                    break;
+        int choice;
+        try {
+            choice = Integer.parseInt(choiceStr.trim());
+        } catch (NumberFormatException nfe) {
+            JOptionPane.showMessageDialog(null, "Please enter a number between 1 and 9.");
+            again.run();
+            return;
+        }
 
-                case 3:
-                    JOptionPane.showMessageDialog(null, displayLongestSentMessage());
+        switch (choice) {
+            case 1:
+                if (entered >= maxMessages) {
+                    JOptionPane.showMessageDialog(null, "You reached the limit (" + maxMessages + ").");
+                    again.run();
                     break;
+                }
+                // call flow that sends/stores/disregards a single message; reports 1 if a message entry was consumed
+                sendMessageFlow(loggedInUsername, consumed -> SwingUtilities.invokeLater(
+                        () -> showQuickChatMenu(sessionToken, maxMessages, entered + consumed)));
+                break;
 
-                case 4:
-                    String id = JOptionPane.showInputDialog("Enter Message ID to search:");
-                    if (id == null || id.trim().isEmpty()) {
-                        JOptionPane.showMessageDialog(null, "No ID entered.");
-                    } else {
-                        JOptionPane.showMessageDialog(null, searchByMessageID(id.trim()));
-                    }
-                    break;
+            case 2:
+                // a window over the store, paged on demand; the menu comes back when it is closed
+                MessageBrowser.sentMessages("Sender & Recipient",
+                        Arrays.asList(MessageTableModel.Column.SENDER, MessageTableModel.Column.RECIPIENT,
+                                MessageTableModel.Column.LENGTH), again);
+                break;
 
-                case 5:
-                    String rcpt = JOptionPane.showInputDialog("Enter Recipient to search (full number):");
-                    if (rcpt == null || rcpt.trim().isEmpty()) {
-                        JOptionPane.showMessageDialog(null, "No recipient entered.");
-                    } else {
-                        JOptionPane.showMessageDialog(null, searchByRecipient(rcpt.trim()));
-                    }
-                    break;
+            case 3:
+                JOptionPane.showMessageDialog(null, displayLongestSentMessage());
+                again.run();
+                break;
+
+            case 4:
+                String id = JOptionPane.showInputDialog("Enter Message ID to search:");
+                if (id == null || id.trim().isEmpty()) {
+                    JOptionPane.showMessageDialog(null, "No ID entered.");
+                } else {
+                    JOptionPane.showMessageDialog(null, searchByMessageID(id.trim()));
+                }
+                again.run();
+                break;
+
+            case 5:
+                String rcpt = JOptionPane.showInputDialog("Enter Recipient to search (full number):");
+                if (rcpt == null || rcpt.trim().isEmpty()) {
+                    JOptionPane.showMessageDialog(null, "No recipient entered.");
+                } else {
+                    showRecipientResults(rcpt.trim());
+                }
+                again.run();
+                break;
 
-                case 6:
-                    String hash = JOptionPane.showInputDialog("Enter Message Hash to delete (exact):");
-                    if (hash == null || hash.trim().isEmpty()) {
-                        JOptionPane.showMessageDialog(null, "No hash entered.");
-                    } else {
-                        boolean ok = deleteByMessageHash(hash.trim());
+            case 6:
+                String hash = JOptionPane.showInputDialog("Enter Message Hash to delete (exact):");
+                if (hash == null || hash.trim().isEmpty()) {
+                    JOptionPane.showMessageDialog(null, "No hash entered.");
+                    again.run();
+                } else {
+                    // the tombstone is written on the I/O thread
+                    AsyncStore.onEdt(io.deleteByMessageHash(hash.trim()), ok -> {
                         if (ok) JOptionPane.showMessageDialog(null, "Message deleted successfully.");
                         else JOptionPane.showMessageDialog(null, "Message hash not found.");
-                    }
-                    break;
+                        again.run();
+                    }, error -> {
+                        JOptionPane.showMessageDialog(null, "Delete failed: " + error.getMessage());
+                        again.run();
+                    });
+                }
+                break;
 
-                case 7:
-                    loadStoredMessagesIntoArray();
-                    if (storedMessages.isEmpty()) {
-                        JOptionPane.showMessageDialog(null, "No stored messages found in " + STORED_FILE);
-                    } else {
-                        StringBuilder sb = new StringBuilder("Stored messages loaded:\n\n");
-                        for (Map<String,String> m : storedMessages) {
-                            sb.append("MessageID: ").append(m.getOrDefault("MessageID","")).append("\n")
-                              .append("Sender: ").append(m.getOrDefault("Sender","")).append("\n")
-                              .append("Recipient: ").append(m.getOrDefault("Recipient","")).append("\n")
-                              .append("Message: ").append(m.getOrDefault("Message","")).append("\n\n");
-                        }
-                        JOptionPane.showMessageDialog(null, sb.toString());
-                    }
-                    break;
+            case 7:
+                // served from the in-memory DraftStore (loaded once at startup)
+                List<Message> stored = drafts.getDrafts();
+                if (stored.isEmpty()) {
+                    JOptionPane.showMessageDialog(null, "No stored messages found in " + STORED_FILE);
+                    again.run();
+                } else {
+                    MessageBrowser.open("Stored messages", MessageTableModel.Source.list(stored),
+                            Arrays.asList(MessageTableModel.Column.MESSAGE_ID, MessageTableModel.Column.SENDER,
+                                    MessageTableModel.Column.RECIPIENT, MessageTableModel.Column.MESSAGE), false, again);
+                }
+                break;
 
-                case 8:
-                    JOptionPane.showMessageDialog(null, displayReportAllSentMessages());
-                    break;
+            case 8:
+                MessageBrowser.sentMessages("Full Report", Arrays.asList(MessageTableModel.Column.values()), again);
+                break;
 
-                case 9:
-                    JOptionPane.showMessageDialog(null, "Total sent messages: " + contents.size());
-                    return;
+            case 9:
+                JOptionPane.showMessageDialog(null, "Total sent messages: " + contents.size());
+                sessions.invalidate(sessionToken);
+                return;
 
-                default:
-                    JOptionPane.showMessageDialog(null, "Invalid choice. Enter 1-9.");
-            }
+            default:
+                JOptionPane.showMessageDialog(null, "Invalid choice. Enter 1-9.");
+                again.run();
         }
     }
 
     // --------- Helper flows used by numeric menu ---------
-    private static int sendMessageFlow(String loggedInUsername) {
-        // returns 1 if a message entry was processed (sent/stored/disregarded), 0 otherwise
+    private static void sendMessageFlow(String loggedInUsername, IntConsumer done) {
+        // done gets 1 if a message entry was processed (sent/stored/disregarded), 0 otherwise
         String messageID = generateRandomDigitString(10);
         String recipient = JOptionPane.showInputDialog("Enter Recipient (include international code, e.g. +27831234567):");
         if (recipient == null) {
             JOptionPane.showMessageDialog(null, "Cancelled.");
-            return 0;
+            done.accept(0);
+            return;
         }
         recipient = recipient.trim();
         String messageText = JOptionPane.showInputDialog("Enter message (250 chars max):");
         if (messageText == null) {
             JOptionPane.showMessageDialog(null, "Cancelled.");
-            return 0;
+            done.accept(0);
+            return;
         }
-        if (messageText.length() > 250) {
+        if (!Validator.isMessageLength(messageText)) {
             JOptionPane.showMessageDialog(null, "Message exceeds 250 characters. Entry cancelled.");
-            return 0;
+            done.accept(0);
+            return;
         }
 
         String sender = (loggedInUsername == null || loggedInUsername.isEmpty()) ? "Developer" : loggedInUsername;
@@ -733,7 +1007,8 @@ public class ChatApp1 {
 
         if (m.checkRecipientCell() == 0) {
             JOptionPane.showMessageDialog(null, "Cell phone number is incorrectly formatted. Please include international code.");
-            return 0;
+            done.accept(0);
+            return;
         }
 
         String actionStr =
@@ -741,41 +1016,62 @@ public class ChatApp1 {
         String choice = JOptionPane.showInputDialog(actionStr);
         if (choice == null) {
             JOptionPane.showMessageDialog(null, "Cancelled.");
-            return 0;
+            done.accept(0);
+            return;
         }
         int act;
         try {
             act = Integer.parseInt(choice.trim());
         } catch (NumberFormatException e) {
             JOptionPane.showMessageDialog(null, "Invalid action. Use 1-3.");
-            return 0;
+            done.accept(0);
+            return;
         }
         if (act < 1 || act > 3) {
             JOptionPane.showMessageDialog(null, "Invalid action. Use 1-3.");
-            return 0;
+            done.accept(0);
+            return;
         }
 
-        String res = m.sentMessage(act);
-        String details = "Message Details:\nMessageID: " + m.getMessageID()
-                + "\nSender: " + m.getSender()
-                + "\nMessageHash: " + m.getMessageHash()
-                + "\nRecipient: " + m.getRecipient()
-                + "\nMessage: " + m.getMessageText();
-
-        JOptionPane.showMessageDialog(null, res + "\n\n" + details);
-        return 1;
+        // sending waits for the write ack, so it runs on the I/O thread
+        AsyncStore.onEdt(io.sentMessage(m, act), res -> {
+            String details = "Message Details:\nMessageID: " + m.getMessageID()
+                    + "\nSender: " + m.getSender()
+                    + "\nMessageHash: " + m.getMessageHash()
+                    + "\nRecipient: " + m.getRecipient()
+                    + "\nMessage: " + m.getMessageText();
+
+            JOptionPane.showMessageDialog(null, res + "\n\n" + details);
+            done.accept(1);
+        }, error -> {
+            JOptionPane.showMessageDialog(null, "Message could not be saved: " + error.getMessage());
+            done.accept(0);
+        });
     }
 
     public static String displaySenderAndRecipient() {
-    if (contents.isEmpty()) return "No sent messages available.";
-    StringBuilder sb = new StringBuilder();
-    for (Message m : contents) {
-        sb.append("Sender: ").append(m.getSender())
-          .append(" | Recipient: ").append(m.getRecipient())
-          .append("\n");
-    }
-    return sb.toString();
-}
+        return reports.toString(ReportEngine.Report.SENDER_RECIPIENT);
+    }
+
+    /**
+     * Sends a message without any dialogs (server mode). Applies the same checks as the menu
+     * flow and throws IllegalArgumentException with the menu's text when one fails.
+     */
+    public static Message sendMessage(String sender, String recipient, String messageText) {
+        Message m = newMessage(sender, recipient, messageText);
+        m.sentMessage(1);
+        return m;
+    }
+
+    /** The checks of sendMessage without sending: a new valid message, or IllegalArgumentException. */
+    public static Message newMessage(String sender, String recipient, String messageText) {
+        if (!Validator.isMessageLength(messageText)) throw new IllegalArgumentException("Message exceeds 250 characters.");
+        Message m = new Message(generateRandomDigitString(10), sender, recipient.trim(), messageText, contents.size());
+        if (m.checkRecipientCell() == 0) {
+            throw new IllegalArgumentException("Cell phone number is incorrectly formatted. Please include international code.");
+        }
+        return m;
+    }
 
     // ---------- Utility & startup ----------
     private static String generateRandomDigitString(int n) {
@@ -785,33 +1081,101 @@ public class ChatApp1 {
         return sb.toString();
     }
 
+    // A loaded record as a Message (ShardedStore.load has applied the tombstones already).
+    private static Message loadedMessage(Map<String,String> m) {
+        String id = m.getOrDefault("MessageID", generateRandomDigitString(6));
+        String sender = m.getOrDefault("Sender", "Developer");
+        String recipient = m.getOrDefault("Recipient", "");
+        String message = m.getOrDefault("Message", "");
+        int num = contents.size();
+        // the persisted hash is reused as is; it is only computed for records that lack one
+        return new Message(id, sender, recipient, message, num, m.get("MessageHash"));
+    }
+
     // ---------- main: loads persisted messages into arrays and starts UI ----------
     public static void main(String[] args) {
+        // JMX bean, and the periodic dump if chatapp.metrics.dumpSeconds is set
+        Metrics.GLOBAL.startFromSystemProperties();
+
         // quick test user
-        Login.users.put("test_user", new User("Test User", "Male", "test_user", "Password123", "+27831234567", ""));
-
-        // Load persisted sent messages (if any)
-        List<Map<String,String>> persisted = readJsonListFromFile(MESSAGES_FILE);
-        if (!persisted.isEmpty()) {
-            for (Map<String,String> m : persisted) {
-                String id = m.getOrDefault("MessageID", generateRandomDigitString(6));
-                String sender = m.getOrDefault("Sender", "Developer");
-                String recipient = m.getOrDefault("Recipient", "");
-                String message = m.getOrDefault("Message", "");
-                int num = contents.size();
-                Message mm = new Message(id, sender, recipient, message, num);
-                contents.add(mm);
-                messageHashes.add(mm.getMessageHash());
-                messageIDs.add(mm.getMessageID());
+        Login.users.register(new User("Test User", "Male", "test_user", "Password123", "+27831234567", "")); // no-op once stored
+
+        loadSentMessages();
+
+        // Commit whatever the writer still holds when the JVM exits
+        // and save the user index, so the next start does not rescan users.jsonl
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            store.close();
+            writer.close();
+            try {
+                Login.users.close();
+            } catch (IOException e) {
+                e.printStackTrace();
             }
-        }
+        }));
 
         // Ensure stored messages array is loaded (if present)
         loadStoredMessagesIntoArray();
 
+        // Headless: --import file... loads message dumps and exits
+        if (args.length > 0 && args[0].equals("--import")) {
+            for (int i = 1; i < args.length; i++) importFromCommandLine(args[i]);
+            return;
+        }
+
+        // Headless: --server [port] serves the menu operations over TCP instead of the Swing UI
+        if (args.length > 0 && args[0].equals("--server")) {
+            runServer(args.length > 1 ? Integer.parseInt(args[1]) : QuickChatServer.DEFAULT_PORT);
+            return;
+        }
+
         // Start login UI
         SwingUtilities.invokeLater(() -> new LoginForm());
     }
+
+    private static void importFromCommandLine(String filename) {
+        long[] lastPrint = {System.currentTimeMillis()};
+        try {
+            BulkImporter.Report report = importMessages(filename, (rows, imported, rejected) -> {
+                long now = System.currentTimeMillis();
+                if (now - lastPrint[0] < 1000) return;
+                lastPrint[0] = now;
+                System.out.println(filename + ": " + rows + " rows, " + imported + " imported, " + rejected + " rejected");
+            });
+            for (BulkImporter.Rejection r : report.getRejections()) System.out.println(filename + ": " + r);
+            System.out.println(filename + ": done, " + report.getImported() + " imported, " + report.getRejected() + " rejected");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void runServer(int port) {
+        QuickChatServer server = new QuickChatServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), port),
+                Math.max(2, Runtime.getRuntime().availableProcessors()));
+        try {
+            server.start();
+            System.out.println("QuickChat server listening on port " + server.getPort());
+            server.join();
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    static void loadSentMessages() {
+        // Load sent messages, every shard in parallel: from its binary segment when it is current
+        // (no JSON parsing), then only the log records appended after it; otherwise the whole log.
+        // Every record is still turned into a Message: the store, the secondary indexes and
+        // the mailboxes all hold the messages themselves, so there is nothing to defer.
+        long start = System.nanoTime();
+        try {
+            store.load(ChatApp1::loadedMessage);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        Metrics.GLOBAL.record(Metrics.Op.LOAD, start);
+    }
 }
 
 
@@ -0,0 +1,63 @@
+package com.example.chatapp;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * DraftStore - in-memory, authoritative list of stored (draft) messages.
+ *
+ * Drafts are kept as Message objects rather than string maps. stored_messages.json is read
+ * once by load(); after that, storing a draft appends a single record to the file through the
+ * write-behind writer, and listing drafts (menu option 7) never touches the disk.
+ */
+public class DraftStore {
+
+    private final MessageLog log;
+    private final List<ChatApp1.Message> drafts = new ArrayList<>();
+
+    public DraftStore(MessageLog log) {
+        this.log = log;
+    }
+
+    /**
+     * (Re)reads the draft file into memory, one record at a time. A draft append torn by a crash
+     * is cut off first (MessageLog.open), and if the file is damaged further up the drafts read
+     * before the damage are kept.
+     */
+    public synchronized void load() {
+        drafts.clear();
+        try {
+            log.open();
+        } catch (IOException e) {
+            e.printStackTrace(); // not a log we can repair; read what there is
+        }
+        try {
+            log.forEach(r -> drafts.add(fromRecord(r)));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /** Keeps the draft in memory and appends it to the file. */
+    public void add(ChatApp1.Message draft) {
+        synchronized (this) {
+            drafts.add(draft);
+        }
+        ChatApp1.persistRecord(log, ChatApp1.toRecord(draft));
+    }
+
+    public synchronized int size() { return drafts.size(); }
+
+    public synchronized boolean isEmpty() { return drafts.isEmpty(); }
+
+    /** Snapshot of the drafts in the order they were stored. */
+    public synchronized List<ChatApp1.Message> getDrafts() {
+        return new ArrayList<>(drafts);
+    }
+
+    // Drafts keep the hash they were stored with, so it is not recomputed here.
+    static ChatApp1.Message fromRecord(Map<String,String> r) {
+        return new ChatApp1.Message(r.getOrDefault("MessageID", ""), r.getOrDefault("Sender", ""),
+                r.getOrDefault("Recipient", ""), r.getOrDefault("Message", ""), 0, r.get("MessageHash"));
+    }
+}
@@ -0,0 +1,266 @@
+package com.example.chatapp;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * GroupCommitWriter - write-behind stage in front of the MessageLog files.
+ *
+ * Callers (sends, stored drafts, tombstones, rewrites) only enqueue work; a single background
+ * thread collects whatever is queued into one batch and commits each log's records with a
+ * single append. The returned future completes once the batch holding that record is written
+ * (and fsynced when the policy or a durable submit asks for it), so a caller can either wait for
+ * the ack or carry on.
+ *
+ * Work for the same log is always applied in submission order, including rewrites.
+ *
+ * close() queues a stop marker behind everything already submitted, so the writer thread commits
+ * and fsyncs all of it and then exits on its own; it is never interrupted, because an interrupt
+ * during a write would close the log's FileChannel under it. Anything still queued when the
+ * thread exits fails with IllegalStateException rather than waiting forever.
+ */
+public class GroupCommitWriter implements AutoCloseable {
+
+    /** When a batch is committed: maxBatch records, or maxDelayMillis after the first one; fsync each commit or not. */
+    public static class FlushPolicy {
+        private final int maxBatch;
+        private final long maxDelayMillis;
+        private final boolean fsync;
+
+        public FlushPolicy(int maxBatch, long maxDelayMillis, boolean fsync) {
+            if (maxBatch < 1) throw new IllegalArgumentException("maxBatch must be at least 1");
+            if (maxDelayMillis < 0) throw new IllegalArgumentException("maxDelayMillis must not be negative");
+            this.maxBatch = maxBatch;
+            this.maxDelayMillis = maxDelayMillis;
+            this.fsync = fsync;
+        }
+
+        /** Reads chatapp.batch.max, chatapp.batch.delayMs and chatapp.fsync, falling back to 256 / 0 / false. */
+        public static FlushPolicy fromSystemProperties() {
+            return new FlushPolicy(
+                    Integer.getInteger("chatapp.batch.max", 256),
+                    Long.getLong("chatapp.batch.delayMs", 0L),
+                    Boolean.getBoolean("chatapp.fsync"));
+        }
+
+        public int getMaxBatch() { return maxBatch; }
+        public long getMaxDelayMillis() { return maxDelayMillis; }
+        public boolean isFsync() { return fsync; }
+    }
+
+    /** Work that must run against a log in order with its queued appends (rewrites, compaction swaps). */
+    public interface LogTask {
+        void run(MessageLog log) throws IOException;
+    }
+
+    // one queued unit of work: an append (record), a task, or a flush barrier (neither);
+    // the barrier queued by close() also stops the writer thread
+    private static final class Pending {
+        final MessageLog log;
+        final Map<String,String> record;
+        final LogTask task;
+        final boolean durable;
+        final boolean stop;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        Pending(MessageLog log, Map<String,String> record, LogTask task, boolean durable) {
+            this(log, record, task, durable, false);
+        }
+
+        Pending(MessageLog log, Map<String,String> record, LogTask task, boolean durable, boolean stop) {
+            this.log = log;
+            this.record = record;
+            this.task = task;
+            this.durable = durable;
+            this.stop = stop;
+        }
+
+        boolean isBarrier() { return log == null; }
+    }
+
+    private final FlushPolicy policy;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Thread thread;
+    private final Set<MessageLog> unsynced = new LinkedHashSet<>(); // written since their last fsync (writer thread only)
+    private final Object lock = new Object(); // makes "not closed yet" and the queue.add one step
+    private boolean closed;                   // guarded by lock
+
+    public GroupCommitWriter(FlushPolicy policy) {
+        this.policy = policy;
+        this.thread = new Thread(this::run, "quickchat-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public FlushPolicy getPolicy() { return policy; }
+
+    // ---------- submitting ----------
+
+    /** Queues one record for log; completes when it is written (fsynced too if the policy says so). */
+    public CompletableFuture<Void> submit(MessageLog log, Map<String,String> record) {
+        return enqueue(new Pending(log, record, null, false));
+    }
+
+    /** Like submit, but the batch holding this record is fsynced before the future completes. */
+    public CompletableFuture<Void> submitDurable(MessageLog log, Map<String,String> record) {
+        return enqueue(new Pending(log, record, null, true));
+    }
+
+    /** Queues a full rewrite of log, applied after everything already queued for it. */
+    public CompletableFuture<Void> submitRewrite(MessageLog log, List<Map<String,String>> records) {
+        List<Map<String,String>> copy = new ArrayList<>(records);
+        return submitTask(log, l -> l.rewrite(copy, policy.fsync));
+    }
+
+    /** Runs task on the writer thread once everything already queued for log is written. */
+    public CompletableFuture<Void> submitTask(MessageLog log, LogTask task) {
+        return enqueue(new Pending(log, null, task, false));
+    }
+
+    /** Commits and fsyncs everything submitted so far, then returns. */
+    public void flush() throws IOException {
+        await(enqueue(new Pending(null, null, null, true)));
+    }
+
+    private CompletableFuture<Void> enqueue(Pending p) {
+        synchronized (lock) {
+            if (closed) throw new IllegalStateException("writer is closed");
+            queue.add(p);
+        }
+        return p.done;
+    }
+
+    /** Waits for an ack, turning a failed write back into the IOException it was. */
+    public static void await(CompletableFuture<Void> ack) throws IOException {
+        try {
+            ack.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while waiting for write", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /** Commits and fsyncs what is queued, then waits for the writer thread to stop. */
+    @Override
+    public void close() {
+        Pending stop = new Pending(null, null, null, true, true);
+        synchronized (lock) {
+            if (closed) return;
+            closed = true;
+            queue.add(stop);
+        }
+        try {
+            await(stop.done);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // ---------- writer thread ----------
+
+    private void run() {
+        List<Pending> batch = new ArrayList<>();
+        try {
+            boolean stop = false;
+            while (!stop) {
+                try {
+                    batch.add(queue.take());
+                    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(policy.maxDelayMillis);
+                    while (batch.size() < policy.maxBatch && !batch.get(batch.size() - 1).isBarrier()) {
+                        long wait = deadline - System.nanoTime();
+                        Pending next = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : queue.poll();
+                        if (next == null) break;
+                        batch.add(next);
+                    }
+                } catch (InterruptedException e) {
+                    if (batch.isEmpty()) continue;
+                }
+                stop = batch.get(batch.size() - 1).stop;
+                commit(batch);
+                batch.clear();
+            }
+        } finally {
+            failLeftovers(batch);
+        }
+    }
+
+    // Runs as the writer thread exits, normally or not: no further submit is accepted, and
+    // whatever it did not get to fails instead of leaving its caller waiting.
+    private void failLeftovers(List<Pending> batch) {
+        synchronized (lock) {
+            closed = true;
+        }
+        IllegalStateException stopped = new IllegalStateException("writer is closed");
+        for (Pending p : batch) p.done.completeExceptionally(stopped);
+        Pending p;
+        while ((p = queue.poll()) != null) p.done.completeExceptionally(stopped);
+    }
+
+    // Applies a batch in order: consecutive appends are grouped per log into one write each;
+    // a task or barrier first commits the appends gathered before it.
+    private void commit(List<Pending> batch) {
+        long start = System.nanoTime();
+        Map<MessageLog, List<Pending>> appends = new LinkedHashMap<>();
+        for (Pending p : batch) {
+            if (p.record != null) {
+                appends.computeIfAbsent(p.log, k -> new ArrayList<>()).add(p);
+                continue;
+            }
+            if (p.isBarrier()) {
+                writeAppends(appends);
+                appends.clear();
+                syncAll(p);
+                continue;
+            }
+            List<Pending> before = appends.remove(p.log);
+            if (before != null) writeAppends(Collections.singletonMap(p.log, before));
+            try {
+                p.task.run(p.log);
+                if (!policy.fsync) unsynced.add(p.log);
+                p.done.complete(null);
+            } catch (IOException | RuntimeException e) {
+                p.done.completeExceptionally(e);
+            }
+        }
+        writeAppends(appends);
+        Metrics.GLOBAL.record(Metrics.Op.PERSIST, start);
+    }
+
+    private void writeAppends(Map<MessageLog, List<Pending>> appends) {
+        for (Map.Entry<MessageLog, List<Pending>> e : appends.entrySet()) {
+            List<Map<String,String>> records = new ArrayList<>(e.getValue().size());
+            boolean durable = policy.fsync;
+            for (Pending p : e.getValue()) {
+                records.add(p.record);
+                durable |= p.durable;
+            }
+            try {
+                e.getKey().appendAll(records, durable);
+                if (durable) unsynced.remove(e.getKey());
+                else unsynced.add(e.getKey());
+                for (Pending p : e.getValue()) p.done.complete(null);
+            } catch (IOException | RuntimeException ex) {
+                for (Pending p : e.getValue()) p.done.completeExceptionally(ex);
+            }
+        }
+    }
+
+    private void syncAll(Pending barrier) {
+        try {
+            for (MessageLog log : unsynced) log.sync();
+            unsynced.clear();
+            barrier.done.complete(null);
+        } catch (IOException | RuntimeException e) {
+            barrier.done.completeExceptionally(e);
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.example.chatapp;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * JsonRecordReader - single-pass streaming reader for the JSON files used by QuickChat
+ * (messages.json, stored_messages.json): a top-level array of flat {"key": "value"} objects.
+ *
+ * Only the record currently being parsed is held in memory, so the cost of reading a file is
+ * constant in memory however many records it holds. Strings are decoded properly, so message
+ * text containing "}, {" or ", \"" is read back unchanged. Numbers, true/false/null and nested
+ * values are kept as their raw JSON text.
+ */
+public class JsonRecordReader implements Closeable {
+
+    private final Reader in;
+    private final char[] buf = new char[8192];
+    private int pos, limit;
+    private int line = 1, column = 0;
+
+    private boolean started, finished;
+    private int recordLine;
+
+    public JsonRecordReader(Reader in) {
+        this.in = in;
+    }
+
+    /** Calls action once per record, in file order. A missing or empty file has no records. */
+    public static void forEachRecord(String filename, Consumer<Map<String,String>> action) throws IOException {
+        Path p = Paths.get(filename);
+        if (!Files.exists(p)) return;
+        try (JsonRecordReader reader = new JsonRecordReader(Files.newBufferedReader(p, StandardCharsets.UTF_8))) {
+            Map<String,String> record;
+            while ((record = reader.nextRecord()) != null) action.accept(record);
+        }
+    }
+
+    /** Parses one complete object such as a line of the message log; null if it is not complete. */
+    public static Map<String,String> parseObject(String text) {
+        try {
+            JsonRecordReader reader = new JsonRecordReader(new StringReader(text));
+            int c = reader.skipWhitespace();
+            if (c != '{') return null;
+            Map<String,String> record = reader.readObject();
+            return reader.skipWhitespace() == -1 ? record : null;
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    /** Line (1-based) on which the record last returned by nextRecord() started. */
+    public int getRecordLine() { return recordLine; }
+
+    /** Line (1-based) the reader is currently on, e.g. where a malformed record stopped it. */
+    public int getLine() { return line; }
+
+    /** Returns the next record, or null once the closing ']' (or end of an empty file) is reached. */
+    public Map<String,String> nextRecord() throws IOException {
+        if (finished) return null;
+        int c = skipWhitespace();
+        if (!started) {
+            started = true;
+            if (c == -1) {
+                finished = true;
+                return null;
+            }
+            if (c != '[') throw error("expected '['");
+            c = skipWhitespace();
+            if (c == ']') {
+                finished = true;
+                return null;
+            }
+        } else {
+            if (c == ']') {
+                finished = true;
+                return null;
+            }
+            if (c != ',') throw error("expected ',' or ']'");
+            c = skipWhitespace();
+        }
+        if (c != '{') throw error("expected '{'");
+        recordLine = line;
+        Map<String,String> record = readObject();
+        Metrics.GLOBAL.addRecordsParsed(1);
+        return record;
+    }
+
+    // ---------- tokenizer ----------
+
+    // Called with the opening '{' already consumed.
+    private Map<String,String> readObject() throws IOException {
+        Map<String,String> record = new LinkedHashMap<>();
+        int c = skipWhitespace();
+        if (c == '}') return record;
+        while (true) {
+            if (c != '"') throw error("expected a string key");
+            String key = readString();
+            if (skipWhitespace() != ':') throw error("expected ':'");
+            record.put(key, readValue(skipWhitespace()));
+            c = skipWhitespace();
+            if (c == '}') return record;
+            if (c != ',') throw error("expected ',' or '}'");
+            c = skipWhitespace();
+        }
+    }
+
+    private String readValue(int c) throws IOException {
+        if (c == '"') return readString();
+        if (c == '{' || c == '[') return readRaw(c);
+        if (c == -1 || c == ',' || c == '}' || c == ']') throw error("expected a value");
+        StringBuilder sb = new StringBuilder().append((char) c);
+        while (true) {
+            int p = peek();
+            if (p == -1 || p == ',' || p == '}' || p == ']' || Character.isWhitespace(p)) return sb.toString();
+            sb.append((char) read());
+        }
+    }
+
+    // Nested object/array kept as raw text (the QuickChat files never contain them).
+    private String readRaw(int open) throws IOException {
+        StringBuilder sb = new StringBuilder().append((char) open);
+        int depth = 1;
+        while (depth > 0) {
+            int c = read();
+            if (c == -1) throw error("unterminated value");
+            if (c == '"') {
+                sb.append('"').append(escape(readString())).append('"');
+                continue;
+            }
+            if (c == '{' || c == '[') depth++;
+            if (c == '}' || c == ']') depth--;
+            sb.append((char) c);
+        }
+        return sb.toString();
+    }
+
+    private static String escape(String s) {
+        return s.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    // Called with the opening quote already consumed.
+    private String readString() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        while (true) {
+            int c = read();
+            if (c == -1) throw error("unterminated string");
+            if (c == '"') return sb.toString();
+            if (c != '\\') {
+                sb.append((char) c);
+                continue;
+            }
+            int e = read();
+            switch (e) {
+                case 'n': sb.append('\n'); break;
+                case 'r': sb.append('\r'); break;
+                case 't': sb.append('\t'); break;
+                case 'b': sb.append('\b'); break;
+                case 'f': sb.append('\f'); break;
+                case 'u':
+                    int code = 0;
+                    for (int i = 0; i < 4; i++) {
+                        int d = Character.digit(read(), 16);
+                        if (d < 0) throw error("bad \\u escape");
+                        code = code * 16 + d;
+                    }
+                    sb.append((char) code);
+                    break;
+                case -1: throw error("unterminated string");
+                default: sb.append((char) e);
+            }
+        }
+    }
+
+    private int skipWhitespace() throws IOException {
+        int c;
+        do {
+            c = read();
+        } while (c != -1 && Character.isWhitespace(c));
+        return c;
+    }
+
+    private int peek() throws IOException {
+        if (pos == limit && !fill()) return -1;
+        return buf[pos];
+    }
+
+    private int read() throws IOException {
+        if (pos == limit && !fill()) return -1;
+        char c = buf[pos++];
+        if (c == '\n') {
+            line++;
+            column = 0;
+        } else {
+            column++;
+        }
+        return c;
+    }
+
+    private boolean fill() throws IOException {
+        int n = in.read(buf, 0, buf.length);
+        if (n <= 0) return false;
+        pos = 0;
+        limit = n;
+        return true;
+    }
+
+    private IOException error(String what) {
+        return new IOException("Malformed JSON at line " + line + ", column " + column + ": " + what);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.chatapp;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LatencyHistogram - fixed-size, log-linear histogram of durations in nanoseconds, in the style
+ * of HdrHistogram.
+ *
+ * Every power of two is split into SUB_BUCKETS equal buckets, so a recorded value is off by at
+ * most 1/SUB_BUCKETS (about 6%) whatever its size, from a few nanoseconds up to hours. Recording
+ * is one bucket index computation and a few LongAdder increments: no lock, no allocation, and
+ * threads recording at once do not contend on one counter. Reads (percentiles) add the buckets
+ * up and may miss values recorded while they run.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS; // covers every positive long
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) buckets[i] = new LongAdder();
+    }
+
+    // ---------- recording ----------
+
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        buckets[index(nanos)].increment();
+        count.increment();
+        total.add(nanos);
+        max.accumulate(nanos);
+    }
+
+    static int index(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        int sub = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + sub;
+    }
+
+    // highest value that falls into bucket i
+    static long highestValue(int i) {
+        if (i < SUB_BUCKETS) return i;
+        int shift = i / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + i % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    // ---------- reading ----------
+
+    public long getCount() { return count.sum(); }
+    public long getMax() { return max.get(); }
+
+    public double getMean() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) total.sum() / n;
+    }
+
+    /** Smallest bucket value at or below which percentile % of the recorded values lie (0 if none). */
+    public long percentile(double percentile) {
+        long[] counts = new long[BUCKETS];
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++) n += counts[i] = buckets[i].sum();
+        if (n == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) return Math.min(highestValue(i), max.get());
+        }
+        return max.get();
+    }
+
+    public void reset() {
+        for (LongAdder b : buckets) b.reset();
+        count.reset();
+        total.reset();
+        max.reset();
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.chatapp;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * LengthIndex - sent messages ordered by text length, overall and per sender.
+ *
+ * Ordered longest first; equal lengths keep send order, so the earliest of several equally long
+ * messages wins, as the old linear scan did. Adding or removing a message is O(log n); longest()
+ * is O(1)-ish and topK(k) walks only the first k entries. page() reads the whole order a page
+ * at a time, for the message browser.
+ */
+public class LengthIndex implements MessageIndex {
+
+    // (length, seq) pairs; seq makes every key unique and breaks ties by send order
+    private static final class Key implements Comparable<Key> {
+        final int length;
+        final long seq;
+
+        Key(int length, long seq) {
+            this.length = length;
+            this.seq = seq;
+        }
+
+        @Override
+        public int compareTo(Key o) {
+            if (length != o.length) return Integer.compare(o.length, length);
+            return Long.compare(seq, o.seq);
+        }
+    }
+
+    // a page cursor is the last key packed into a long: length above SEQ_BITS, seq below
+    private static final int SEQ_BITS = 40;
+    private static final int MAX_CURSOR_LENGTH = (1 << (63 - SEQ_BITS)) - 1;
+
+    // updates come one at a time from the store's writer; queries take no lock
+    private final ConcurrentSkipListMap<Key, ChatApp1.Message> all = new ConcurrentSkipListMap<>();
+    private final ConcurrentHashMap<String, ConcurrentSkipListMap<Key, ChatApp1.Message>> bySender =
+            new ConcurrentHashMap<>();
+
+    private static Key keyOf(ChatApp1.Message m, long seq) {
+        String text = m.getMessageText();
+        return new Key(text == null ? 0 : text.length(), seq);
+    }
+
+    // index order of two messages, for merging the pages of several indexes (ShardedStore)
+    static int compare(ChatApp1.Message a, long seqA, ChatApp1.Message b, long seqB) {
+        return keyOf(a, seqA).compareTo(keyOf(b, seqB));
+    }
+
+    // the page() cursor that continues after m
+    static long cursorOf(ChatApp1.Message m, long seq) {
+        return cursorOf(keyOf(m, seq));
+    }
+
+    private static long cursorOf(Key key) {
+        return ((long) Math.min(key.length, MAX_CURSOR_LENGTH) << SEQ_BITS) | key.seq;
+    }
+
+    // ---------- MessageIndex ----------
+
+    @Override
+    public void added(ChatApp1.Message m, long seq) {
+        Key key = keyOf(m, seq);
+        all.put(key, m);
+        bySender.computeIfAbsent(senderKey(m.getSender()), k -> new ConcurrentSkipListMap<>()).put(key, m);
+    }
+
+    @Override
+    public void removed(ChatApp1.Message m, long seq) {
+        Key key = keyOf(m, seq);
+        all.remove(key);
+        String sender = senderKey(m.getSender());
+        ConcurrentSkipListMap<Key, ChatApp1.Message> mine = bySender.get(sender);
+        if (mine == null) return;
+        mine.remove(key);
+        if (mine.isEmpty()) bySender.remove(sender, mine);
+    }
+
+    @Override
+    public void cleared() {
+        all.clear();
+        bySender.clear();
+    }
+
+    // ---------- queries ----------
+
+    /** Longest sent message, or null if there are none. */
+    public ChatApp1.Message longest() {
+        Map.Entry<Key, ChatApp1.Message> first = all.firstEntry();
+        return first == null ? null : first.getValue();
+    }
+
+    /** Up to k longest messages, longest first. */
+    public List<ChatApp1.Message> topK(int k) {
+        return firstK(all, k);
+    }
+
+    /** Up to k longest messages from sender, longest first. */
+    public List<ChatApp1.Message> topK(String sender, int k) {
+        ConcurrentSkipListMap<Key, ChatApp1.Message> mine = bySender.get(senderKey(sender));
+        return mine == null ? new ArrayList<>() : firstK(mine, k);
+    }
+
+    /**
+     * Up to limit messages after the cursor, longest first (see MessagePage). Cursors stay exact
+     * for messages under 8M characters and the first 2^40 sequence numbers.
+     */
+    public MessagePage page(long after, int limit) {
+        Map<Key, ChatApp1.Message> from = after == MessagePage.START ? all
+                : all.tailMap(new Key((int) (after >>> SEQ_BITS), after & ((1L << SEQ_BITS) - 1)), false);
+        List<ChatApp1.Message> out = new ArrayList<>(Math.max(0, Math.min(limit, 256)));
+        long cursor = after;
+        Iterator<Map.Entry<Key, ChatApp1.Message>> it = from.entrySet().iterator();
+        while (out.size() < limit && it.hasNext()) {
+            Map.Entry<Key, ChatApp1.Message> e = it.next();
+            out.add(e.getValue());
+            cursor = cursorOf(e.getKey());
+        }
+        return new MessagePage(out, cursor, it.hasNext());
+    }
+
+    private static String senderKey(String sender) {
+        return sender == null ? "" : sender;
+    }
+
+    private static List<ChatApp1.Message> firstK(ConcurrentSkipListMap<Key, ChatApp1.Message> map, int k) {
+        List<ChatApp1.Message> out = new ArrayList<>(Math.max(0, Math.min(k, 64)));
+        for (ChatApp1.Message m : map.values()) {
+            if (out.size() >= k) break;
+            out.add(m);
+        }
+        return out;
+    }
+}
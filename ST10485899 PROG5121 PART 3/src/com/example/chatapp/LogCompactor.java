@@ -0,0 +1,166 @@
+package com.example.chatapp;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * LogCompactor - keeps messages.json bounded once deletes are tombstones.
+ *
+ * Deletes only append a tombstone, so the log keeps growing. When tombstones make up more than
+ * the configured share of the log, a background thread compacts it:
+ *   1. reads the log up to its current tail, applies the tombstones and writes the live records
+ *      to messages.json.compact, plus a MessageSegment snapshot of them;
+ *   2. on the writer thread (so no append can slip in between) copies any records appended
+ *      since step 1 onto the compacted file and moves it, then the snapshot, into place.
+ * Sends and deletes are never blocked by step 1; step 2 only touches the records that arrived
+ * while step 1 ran.
+ */
+public class LogCompactor {
+
+    private final MessageLog log;
+    private final GroupCommitWriter writer;
+    private final String segmentFile;
+    private final double threshold;
+    private final int minTombstones;
+
+    private final AtomicLong live = new AtomicLong();
+    private final AtomicLong tombstones = new AtomicLong();
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicInteger compactions = new AtomicInteger();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "quickchat-compactor");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * @param threshold     tombstones / (live records + tombstones) that triggers a compaction
+     * @param minTombstones no compaction below this many tombstones (small logs are not worth it)
+     */
+    public LogCompactor(MessageLog log, GroupCommitWriter writer, String segmentFile,
+                        double threshold, int minTombstones) {
+        this.log = log;
+        this.writer = writer;
+        this.segmentFile = segmentFile;
+        this.threshold = threshold;
+        this.minTombstones = minTombstones;
+    }
+
+    /** Reads chatapp.compact.ratio and chatapp.compact.min, falling back to 0.3 and 64. */
+    public static LogCompactor fromSystemProperties(MessageLog log, GroupCommitWriter writer, String segmentFile) {
+        double ratio = 0.3;
+        String value = System.getProperty("chatapp.compact.ratio");
+        if (value != null) {
+            try {
+                ratio = Double.parseDouble(value);
+            } catch (NumberFormatException ignored) {
+                // keep the default
+            }
+        }
+        return new LogCompactor(log, writer, segmentFile, ratio, Integer.getInteger("chatapp.compact.min", 64));
+    }
+
+    // ---------- bookkeeping (called on the hot path, O(1)) ----------
+
+    /** Sets the counters after a full replay or rewrite of the log. */
+    public void reset(long liveRecords, long tombstoneRecords) {
+        live.set(liveRecords);
+        tombstones.set(tombstoneRecords);
+    }
+
+    public void recordAppend() {
+        live.incrementAndGet();
+    }
+
+    public void recordAppends(long count) {
+        live.addAndGet(count);
+    }
+
+    /** Counts one tombstone and starts a background compaction if the log is now over the threshold. */
+    public void recordDelete() {
+        live.decrementAndGet();
+        tombstones.incrementAndGet();
+        maybeCompact();
+    }
+
+    public double tombstoneRatio() {
+        long t = tombstones.get();
+        long total = Math.max(0, live.get()) + t;
+        return total == 0 ? 0 : (double) t / total;
+    }
+
+    public long getTombstones() { return tombstones.get(); }
+    public int getCompactions() { return compactions.get(); }
+
+    public boolean maybeCompact() {
+        if (tombstones.get() < minTombstones || tombstoneRatio() < threshold) return false;
+        if (!running.compareAndSet(false, true)) return false;
+        executor.execute(() -> {
+            try {
+                compact();
+            } catch (IOException e) {
+                e.printStackTrace();
+            } finally {
+                running.set(false);
+            }
+        });
+        return true;
+    }
+
+    // ---------- compaction ----------
+
+    /** Runs one compaction on the calling thread. */
+    public void compact() throws IOException {
+        long generation = log.generation();
+        long tail = log.tailOffset();
+        if (tail < 0) return;
+
+        // step 1: snapshot of the live records up to tail, written beside the real files
+        MessageLog.LiveRecords snapshot = new MessageLog.LiveRecords();
+        log.forEachBefore(tail, snapshot::apply);
+        List<Map<String,String>> liveRecords = snapshot.toList();
+        MessageLog compacted = new MessageLog(log.getFilename() + ".compact");
+        compacted.rewrite(liveRecords, writer.getPolicy().isFsync());
+        String segmentTmp = segmentFile + ".compact";
+        try (MessageSegment.Writer seg = new MessageSegment.Writer(segmentTmp, compacted, compacted.tailOffset())) {
+            for (Map<String,String> r : liveRecords) seg.add(r);
+            seg.finish();
+        }
+
+        // step 2: on the writer thread, carry over what was appended meanwhile and swap the files in
+        int removed = snapshot.tombstoneCount();
+        GroupCommitWriter.await(writer.submitTask(log, l -> {
+            if (l.generation() != generation) {
+                // the log was rewritten meanwhile; the snapshot no longer matches it
+                Files.deleteIfExists(Paths.get(compacted.getFilename()));
+                Files.deleteIfExists(Paths.get(segmentTmp));
+                throw new IOException("log replaced during compaction");
+            }
+            List<Map<String,String>> delta = new ArrayList<>();
+            l.forEachAfter(tail, delta::add);
+            compacted.appendAll(delta, writer.getPolicy().isFsync());
+            l.replaceWith(compacted);
+            try {
+                Files.move(Paths.get(segmentTmp), Paths.get(segmentFile),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(Paths.get(segmentTmp), Paths.get(segmentFile), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }));
+        tombstones.addAndGet(-removed);
+        compactions.incrementAndGet();
+    }
+
+    /** Waits up to timeoutMillis for a running background compaction to finish. */
+    public boolean awaitIdle(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (running.get()) {
+            if (System.currentTimeMillis() > deadline) return false;
+            Thread.sleep(5);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,192 @@
+package com.example.chatapp;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Mailbox - bounded delivery queue of one recipient's messages.
+ *
+ * Sends put messages in (offer), a consumer takes them out in batches (drain). When the mailbox
+ * is full the Backpressure policy decides what happens, so a flooded recipient costs at most
+ * capacity messages of heap and only ever slows down the senders writing to it.
+ *
+ * offer never waits. Under BLOCK the waiting happens before a send is made at all: the sender
+ * checks hasRoom() and, if there is none, registers whenRoom() and comes back later (see
+ * QuickChatServer), so no thread is parked on a full mailbox.
+ */
+public class Mailbox {
+
+    /** What offer does when the mailbox is full. */
+    public enum Backpressure {
+        /** senders hold back until there is room (whenRoom), up to the block timeout; a full offer is rejected */
+        BLOCK,
+        /** make room by dropping the oldest undelivered message */
+        DROP_OLDEST,
+        /** refuse the new message straight away */
+        REJECT
+    }
+
+    private final int capacity;
+    private final Backpressure policy;
+    private final ArrayDeque<ChatApp1.Message> queue;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final List<Runnable> roomWaiters = new ArrayList<>(); // run once room frees up; guarded by lock
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private volatile long lastDrainNanos = System.nanoTime();
+    private boolean retired; // evicted by Mailboxes; guarded by lock
+
+    public Mailbox(int capacity, Backpressure policy) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be at least 1");
+        this.capacity = capacity;
+        this.policy = policy;
+        this.queue = new ArrayDeque<>(Math.min(capacity, 64));
+    }
+
+    /** Delivers m; false if it was rejected (full under REJECT or BLOCK). */
+    public boolean offer(ChatApp1.Message m) {
+        return Boolean.TRUE.equals(offerUnlessRetired(m));
+    }
+
+    // Mailboxes: like offer, but null if the mailbox was evicted meanwhile (get a new one and retry)
+    Boolean offerUnlessRetired(ChatApp1.Message m) {
+        lock.lock();
+        try {
+            if (retired) return null;
+            if (queue.size() >= capacity) {
+                switch (policy) {
+                    case DROP_OLDEST:
+                        queue.pollFirst();
+                        dropped.incrementAndGet();
+                        break;
+                    default: // REJECT, and BLOCK senders that did not wait for room
+                        rejected.incrementAndGet();
+                        return false;
+                }
+            }
+            queue.addLast(m);
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Takes up to max (at least 0) messages, oldest first; empty if there are none. */
+    public List<ChatApp1.Message> drain(int max) {
+        if (max < 0) throw new IllegalArgumentException("max must not be negative");
+        List<ChatApp1.Message> batch;
+        List<Runnable> waiters;
+        lock.lock();
+        try {
+            batch = takeLocked(max);
+            waiters = batch.isEmpty() ? Collections.emptyList() : takeWaitersLocked();
+        } finally {
+            lock.unlock();
+        }
+        for (Runnable w : waiters) w.run();
+        return batch;
+    }
+
+    /** Like drain, but waits up to timeoutMillis for at least one message. */
+    public List<ChatApp1.Message> drain(int max, long timeoutMillis) throws InterruptedException {
+        if (max < 0) throw new IllegalArgumentException("max must not be negative");
+        List<ChatApp1.Message> batch;
+        List<Runnable> waiters;
+        lock.lock();
+        try {
+            long wait = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            while (queue.isEmpty() && wait > 0) wait = notEmpty.awaitNanos(wait);
+            batch = takeLocked(max);
+            waiters = batch.isEmpty() ? Collections.emptyList() : takeWaitersLocked();
+        } finally {
+            lock.unlock();
+        }
+        for (Runnable w : waiters) w.run();
+        return batch;
+    }
+
+    private List<ChatApp1.Message> takeLocked(int max) {
+        lastDrainNanos = System.nanoTime();
+        int n = Math.min(max, queue.size());
+        List<ChatApp1.Message> batch = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) batch.add(queue.pollFirst());
+        return batch;
+    }
+
+    /** Whether an offer would be taken without dropping or rejecting anything. */
+    public boolean hasRoom() {
+        lock.lock();
+        try {
+            return retired || queue.size() < capacity;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Runs callback once there is room (at once if there is already), on the thread that makes
+     * it: a drain, or the eviction of this mailbox. It should only hand work off, not do it.
+     */
+    public void whenRoom(Runnable callback) {
+        lock.lock();
+        try {
+            if (!retired && queue.size() >= capacity) {
+                roomWaiters.add(callback);
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        callback.run();
+    }
+
+    // called with lock held after room was made; the callbacks run once it is released
+    private List<Runnable> takeWaitersLocked() {
+        if (roomWaiters.isEmpty()) return Collections.emptyList();
+        List<Runnable> waiters = new ArrayList<>(roomWaiters);
+        roomWaiters.clear();
+        return waiters;
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Mailboxes: marks the mailbox evicted if it is empty, or if force is set (its undelivered
+     * messages are dropped). Later offers see it and go to a new mailbox instead.
+     */
+    boolean retire(boolean force) {
+        List<Runnable> waiters;
+        lock.lock();
+        try {
+            if (!queue.isEmpty() && !force) return false;
+            dropped.addAndGet(queue.size());
+            queue.clear();
+            retired = true;
+            waiters = takeWaitersLocked(); // held-back senders move on to the new mailbox
+        } finally {
+            lock.unlock();
+        }
+        for (Runnable w : waiters) w.run();
+        return true;
+    }
+
+    /** System.nanoTime() of the last drain (or of creation). */
+    public long getLastDrainNanos() { return lastDrainNanos; }
+
+    public int getCapacity() { return capacity; }
+    public Backpressure getPolicy() { return policy; }
+    public long getDropped() { return dropped.get(); }
+    public long getRejected() { return rejected.get(); }
+}
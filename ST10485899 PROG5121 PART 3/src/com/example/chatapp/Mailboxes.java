@@ -0,0 +1,165 @@
+package com.example.chatapp;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Mailboxes - one bounded Mailbox per recipient, created on first delivery.
+ *
+ * Recipients are keyed by their normalized number (see RecipientIndex.normalize). Each mailbox
+ * has its own lock, so a hot recipient never holds up delivery to anyone else.
+ *
+ * Mailboxes are only worth filling while something drains them: the server attaches itself as a
+ * consumer while it runs (INBOX), and senders check hasConsumer() before delivering, so the GUI
+ * and imports never queue a second copy of every message. A mailbox nobody has drained for
+ * idleMillis is evicted (with whatever was still waiting in it), and the last consumer to detach
+ * clears them all, so memory follows the recipients that are actually being read.
+ */
+public class Mailboxes {
+
+    private final int capacity;
+    private final Mailbox.Backpressure policy;
+    private final long blockTimeoutMillis;
+    private final long idleNanos;
+    private final ConcurrentHashMap<String, Mailbox> boxes = new ConcurrentHashMap<>();
+    private final AtomicInteger consumers = new AtomicInteger();
+    private final AtomicLong lastSweep = new AtomicLong(System.nanoTime());
+
+    public Mailboxes(int capacity, Mailbox.Backpressure policy, long blockTimeoutMillis) {
+        this(capacity, policy, blockTimeoutMillis, TimeUnit.HOURS.toMillis(1));
+    }
+
+    /** @param idleMillis a mailbox not drained for this long is evicted */
+    public Mailboxes(int capacity, Mailbox.Backpressure policy, long blockTimeoutMillis, long idleMillis) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be at least 1");
+        if (idleMillis < 1) throw new IllegalArgumentException("idleMillis must be positive");
+        this.capacity = capacity;
+        this.policy = policy;
+        this.blockTimeoutMillis = blockTimeoutMillis;
+        this.idleNanos = TimeUnit.MILLISECONDS.toNanos(idleMillis);
+    }
+
+    /**
+     * Reads chatapp.mailbox.capacity, chatapp.mailbox.policy (BLOCK, DROP_OLDEST or REJECT),
+     * chatapp.mailbox.blockMs and chatapp.mailbox.idleSeconds, falling back to 1000 / DROP_OLDEST /
+     * 100 / 3600.
+     */
+    public static Mailboxes fromSystemProperties() {
+        Mailbox.Backpressure policy = Mailbox.Backpressure.DROP_OLDEST;
+        String value = System.getProperty("chatapp.mailbox.policy");
+        if (value != null) {
+            try {
+                policy = Mailbox.Backpressure.valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException ignored) {
+                // keep the default
+            }
+        }
+        return new Mailboxes(Integer.getInteger("chatapp.mailbox.capacity", 1000), policy,
+                Long.getLong("chatapp.mailbox.blockMs", 100L),
+                TimeUnit.SECONDS.toMillis(Long.getLong("chatapp.mailbox.idleSeconds", 3600L)));
+    }
+
+    // ---------- consumers ----------
+
+    /** Registers something that drains mailboxes (the server, while it runs). */
+    public void attachConsumer() {
+        consumers.incrementAndGet();
+    }
+
+    /** Undoes attachConsumer; once no consumer is left every mailbox is cleared. */
+    public void detachConsumer() {
+        if (consumers.decrementAndGet() <= 0) {
+            consumers.set(0);
+            clear();
+        }
+    }
+
+    /** Whether anything drains the mailboxes, i.e. whether delivering is worth it. */
+    public boolean hasConsumer() {
+        return consumers.get() > 0;
+    }
+
+    // ---------- delivery ----------
+
+    /** Puts m in its recipient's mailbox; false if the mailbox refused it. */
+    public boolean deliver(ChatApp1.Message m) {
+        sweepIfDue();
+        String key = RecipientIndex.normalize(m.getRecipient());
+        while (true) {
+            Mailbox box = boxes.computeIfAbsent(key, k -> new Mailbox(capacity, policy));
+            Boolean accepted = box.offerUnlessRetired(m);
+            if (accepted != null) return accepted;
+            boxes.remove(key, box); // evicted meanwhile: deliver to a fresh one
+        }
+    }
+
+    /** Takes up to max (at least 0) messages waiting for recipient, oldest first. */
+    public List<ChatApp1.Message> drain(String recipient, int max) {
+        if (max < 0) throw new IllegalArgumentException("max must not be negative");
+        long start = System.nanoTime();
+        String key = RecipientIndex.normalize(recipient);
+        Mailbox box = boxes.get(key);
+        List<ChatApp1.Message> out = box == null ? new ArrayList<>() : box.drain(max);
+        if (box != null && box.retire(false)) boxes.remove(key, box); // read to the end: nothing left to hold
+        sweepIfDue();
+        Metrics.GLOBAL.record(Metrics.Op.INBOX, start);
+        return out;
+    }
+
+    /** Whether a delivery to recipient would be taken as it is (see Mailbox.hasRoom). */
+    public boolean hasRoom(String recipient) {
+        Mailbox box = boxes.get(RecipientIndex.normalize(recipient));
+        return box == null || box.hasRoom();
+    }
+
+    /** Runs callback once recipient's mailbox has room (see Mailbox.whenRoom). */
+    public void whenRoom(String recipient, Runnable callback) {
+        Mailbox box = boxes.get(RecipientIndex.normalize(recipient));
+        if (box == null) callback.run();
+        else box.whenRoom(callback);
+    }
+
+    public Mailbox.Backpressure getPolicy() { return policy; }
+
+    /** How long a BLOCK sender holds back for room before it sends anyway (and is refused). */
+    public long getBlockTimeoutMillis() { return blockTimeoutMillis; }
+
+    public int pending(String recipient) {
+        Mailbox box = boxes.get(RecipientIndex.normalize(recipient));
+        return box == null ? 0 : box.size();
+    }
+
+    /** Mailboxes currently held. */
+    public int size() {
+        return boxes.size();
+    }
+
+    // ---------- eviction ----------
+
+    /** Evicts every mailbox not drained for idleMillis; returns how many went. */
+    public int evictIdle() {
+        long now = System.nanoTime();
+        lastSweep.set(now);
+        int evicted = 0;
+        for (Map.Entry<String, Mailbox> e : boxes.entrySet()) {
+            Mailbox box = e.getValue();
+            if (now - box.getLastDrainNanos() >= idleNanos && box.retire(true) && boxes.remove(e.getKey(), box)) evicted++;
+        }
+        return evicted;
+    }
+
+    // at most one sweep per quarter of the idle time, run by whichever call finds it due
+    private void sweepIfDue() {
+        long last = lastSweep.get();
+        long now = System.nanoTime();
+        if (now - last >= idleNanos / 4 && lastSweep.compareAndSet(last, now)) evictIdle();
+    }
+
+    public void clear() {
+        for (Mailbox box : boxes.values()) box.retire(true);
+        boxes.clear();
+    }
+}
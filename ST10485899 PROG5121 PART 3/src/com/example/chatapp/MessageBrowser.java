@@ -0,0 +1,139 @@
+package com.example.chatapp;
+
+import javax.swing.*;
+import javax.swing.table.JTableHeader;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.*;
+import java.util.List;
+
+/**
+ * MessageBrowser - a window listing messages in a JTable, for any number of them.
+ *
+ * The table sits on a MessageTableModel, so only the pages being looked at are fetched. Filters
+ * and the sort order are answered by the indexes instead of by sorting or scanning rows:
+ *   - "To recipient"     RecipientIndex posting list of that number
+ *   - "Containing words" TextIndex search (same syntax as the server's SEARCH), best first
+ *   - Length header      LengthIndex order, longest first (click another header for send order);
+ *                        a filtered view keeps the filter's order, so the header is off meanwhile
+ * Opened from menu options 2, 7 and 8 in place of one dialog holding every message.
+ */
+public class MessageBrowser {
+
+    private static final String ALL = "All messages";
+    private static final String TO_RECIPIENT = "To recipient";
+    private static final String CONTAINING = "Containing words";
+    private static final String SORT_TIP = "Click Length to sort longest first, any other column for send order";
+    private static final String FILTERED_TIP = "Sorting is off while a filter is applied: "
+            + "recipients show in send order, word searches best match first";
+
+    private final JFrame frame;
+    private final MessageTableModel model;
+    private final JLabel countLabel = new JLabel();
+    private JComboBox<String> filterBox;
+    private JTextField queryField;
+    private JTableHeader header;
+    private boolean byLength;
+    private boolean filtered;
+
+    private MessageBrowser(String title, MessageTableModel.Source source, List<MessageTableModel.Column> columns,
+                           boolean filterable, Runnable onClose) {
+        model = new MessageTableModel(source, columns);
+        model.addTableModelListener(e -> updateCount()); // the count arrives after the rows are asked for
+
+        frame = new JFrame(title);
+        frame.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+        frame.setSize(900, 600);
+        frame.setLocationRelativeTo(null);
+        frame.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                if (onClose != null) onClose.run();
+            }
+        });
+
+        JTable table = new JTable(model);
+        table.setAutoCreateRowSorter(false);     // the model's source does the ordering
+        table.setFillsViewportHeight(true);
+        table.setRowHeight(20);                  // fixed height: the viewport maps pixels to rows directly
+        table.setAutoResizeMode(JTable.AUTO_RESIZE_LAST_COLUMN);
+
+        JPanel top = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        if (filterable) {
+            filterBox = new JComboBox<>(new String[]{ALL, TO_RECIPIENT, CONTAINING});
+            queryField = new JTextField(20);
+            JButton apply = new JButton("Apply");
+            apply.addActionListener(e -> applyFilter());
+            queryField.addActionListener(e -> applyFilter());
+            top.add(new JLabel("Show"));
+            top.add(filterBox);
+            top.add(queryField);
+            top.add(apply);
+
+            header = table.getTableHeader();
+            header.setToolTipText(SORT_TIP);
+            header.addMouseListener(new MouseAdapter() {
+                @Override
+                public void mouseClicked(MouseEvent e) {
+                    if (filtered) return; // the filter's own order; see applyFilter
+                    int column = table.convertColumnIndexToModel(header.columnAtPoint(e.getPoint()));
+                    if (column < 0) return;
+                    boolean wantLength = model.getColumn(column) == MessageTableModel.Column.LENGTH;
+                    if (wantLength != byLength) {
+                        byLength = wantLength;
+                        applyFilter();
+                    }
+                }
+            });
+        }
+        JButton refresh = new JButton("Refresh");
+        refresh.addActionListener(e -> model.refresh());
+        top.add(refresh);
+        top.add(countLabel);
+
+        frame.add(top, BorderLayout.NORTH);
+        frame.add(new JScrollPane(table), BorderLayout.CENTER);
+        updateCount();
+        frame.setVisible(true);
+    }
+
+    /**
+     * Opens a browser over source. filterable adds the recipient / words filters and the length
+     * order, which only make sense over the sent messages. onClose runs when the window closes.
+     */
+    public static MessageBrowser open(String title, MessageTableModel.Source source,
+                                      List<MessageTableModel.Column> columns, boolean filterable, Runnable onClose) {
+        return new MessageBrowser(title, source, columns, filterable, onClose);
+    }
+
+    /** Every sent message with the given columns, filterable and sortable by length. */
+    public static MessageBrowser sentMessages(String title, List<MessageTableModel.Column> columns, Runnable onClose) {
+        return open(title, MessageTableModel.Source.all(ChatApp1.store), columns, true, onClose);
+    }
+
+    private void applyFilter() {
+        String mode = (String) filterBox.getSelectedItem();
+        String query = queryField.getText().trim();
+        MessageTableModel.Source source;
+        // neither index can order a filtered view by length, so the header click is ignored meanwhile
+        filtered = !query.isEmpty() && (TO_RECIPIENT.equals(mode) || CONTAINING.equals(mode));
+        header.setToolTipText(filtered ? FILTERED_TIP : SORT_TIP);
+        if (TO_RECIPIENT.equals(mode) && !query.isEmpty()) {
+            source = MessageTableModel.Source.recipient(ChatApp1.store, query);
+        } else if (CONTAINING.equals(mode) && !query.isEmpty()) {
+            source = MessageTableModel.Source.search(ChatApp1.textIndex, query);
+        } else if (byLength) {
+            source = MessageTableModel.Source.byLength(ChatApp1.store);
+        } else {
+            source = MessageTableModel.Source.all(ChatApp1.store);
+        }
+        model.setSource(source);
+    }
+
+    private void updateCount() {
+        countLabel.setText(String.format(Locale.ROOT, "%,d messages", model.getRowCount()));
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.chatapp;
+
+/**
+ * MessageIndex - a secondary index kept in step with a MessageStore (see MessageStore.addIndex).
+ *
+ * seq is the store's send-order sequence number for the message: it only grows, never changes
+ * for a message, and is what paged queries use as their cursor.
+ */
+public interface MessageIndex {
+
+    void added(ChatApp1.Message m, long seq);
+
+    void removed(ChatApp1.Message m, long seq);
+
+    void cleared();
+}
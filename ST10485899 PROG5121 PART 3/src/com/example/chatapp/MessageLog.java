@@ -0,0 +1,438 @@
+package com.example.chatapp;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+/**
+ * MessageLog - append-only record store behind messages.json.
+ *
+ * The file stays a valid JSON array (so readJsonListFromFile can still read it), but every
+ * record sits on its own line:
+ *   [
+ *   {"MessageID": "...", "Sender": "...", "MessageHash": "...", "Recipient": "...", "Message": "..."},
+ *   {"MessageID": "...", ...}
+ *   ]
+ * An append only overwrites the closing bracket with ",\n{record}\n]\n", so one send costs one
+ * record of I/O instead of a rewrite of every message.
+ *
+ * Crash safety: if the process dies partway through an append the file is left without its
+ * closing "]". open() (and the next append) detect that, drop the torn line and re-close the array.
+ * Reads go through JsonRecordReader, so an older pretty-printed messages.json replays as well.
+ *
+ * A delete is appended as a tombstone {"Op": "DELETE", "MessageHash": "..."} which, on replay,
+ * removes the first earlier live record with that hash. LogCompactor drops them again later.
+ */
+public class MessageLog {
+
+    private static final int TAIL_BLOCK = 64;
+    static final int FINGERPRINT_WINDOW = 1 << 16; // bytes fingerprint() reads at each end
+
+    public static final String OP = "Op";
+    public static final String OP_DELETE = "DELETE";
+
+    private final String filename;
+    private volatile long generation; // bumped by every rewrite() and replaceWith(); appends keep it
+
+    public MessageLog(String filename) {
+        this.filename = filename;
+    }
+
+    public String getFilename() { return filename; }
+
+    private Path path() { return Paths.get(filename); }
+
+    // ---------- write path ----------
+
+    public void append(Map<String,String> record) throws IOException {
+        appendAll(Collections.singletonList(record), false);
+    }
+
+    public void appendAll(List<Map<String,String>> records) throws IOException {
+        appendAll(records, false);
+    }
+
+    /** Appends all records with a single write at the tail of the file; force also fsyncs it. */
+    public synchronized void appendAll(List<Map<String,String>> records, boolean force) throws IOException {
+        if (records.isEmpty()) return;
+        try (FileChannel ch = FileChannel.open(path(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            Tail tail = locateTail(ch);
+            if (tail == null) {
+                recover(ch);
+                tail = locateTail(ch);
+                if (tail == null) throw new IOException(filename + " is not a message log");
+            }
+            StringBuilder sb = new StringBuilder();
+            if (tail.fresh) sb.append("[");
+            for (int i = 0; i < records.size(); i++) {
+                sb.append(i == 0 && tail.needsComma ? ",\n" : i == 0 ? "\n" : ",\n");
+                sb.append(toLine(records.get(i)));
+            }
+            sb.append("\n]\n");
+            ByteBuffer buf = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+            long pos = tail.insertAt;
+            while (buf.hasRemaining()) pos += ch.write(buf, pos);
+            ch.truncate(pos);
+            if (force) ch.force(false);
+            Metrics.GLOBAL.addBytesWritten(pos - tail.insertAt);
+        }
+    }
+
+    /** Forces everything written so far to the storage device. */
+    public synchronized void sync() throws IOException {
+        if (!Files.exists(path())) return;
+        try (FileChannel ch = FileChannel.open(path(), StandardOpenOption.WRITE)) {
+            ch.force(true);
+        }
+    }
+
+    public void rewrite(List<Map<String,String>> records) throws IOException {
+        rewrite(records, false);
+    }
+
+    /** Replaces the whole log (used after deletes); written to a temp file and moved into place. */
+    public synchronized void rewrite(List<Map<String,String>> records, boolean force) throws IOException {
+        Path target = path();
+        Path tmp = Paths.get(filename + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp.toFile());
+             Writer writer = new BufferedWriter(new OutputStreamWriter(fos, StandardCharsets.UTF_8))) {
+            writer.write("[");
+            for (int i = 0; i < records.size(); i++) {
+                writer.write(i == 0 ? "\n" : ",\n");
+                writer.write(toLine(records.get(i)));
+            }
+            writer.write("\n]\n");
+            writer.flush();
+            if (force) fos.getFD().sync();
+        }
+        Metrics.GLOBAL.addBytesWritten(Files.size(tmp));
+        try {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        generation++;
+    }
+
+    static String toLine(Map<String,String> record) {
+        StringBuilder sb = new StringBuilder("{");
+        int j = 0;
+        for (Map.Entry<String,String> e : record.entrySet()) {
+            if (j++ > 0) sb.append(", ");
+            sb.append('"').append(ChatApp1.escapeJson(e.getKey())).append("\": \"")
+              .append(ChatApp1.escapeJson(e.getValue())).append('"');
+        }
+        return sb.append('}').toString();
+    }
+
+    /** Moves other's file over this one in a single step (other must be in the same directory). */
+    public synchronized void replaceWith(MessageLog other) throws IOException {
+        try {
+            Files.move(other.path(), path(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(other.path(), path(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        generation++;
+    }
+
+    // ---------- tombstones ----------
+
+    public static Map<String,String> tombstone(String messageHash) {
+        Map<String,String> t = new LinkedHashMap<>();
+        t.put(OP, OP_DELETE);
+        t.put("MessageHash", messageHash);
+        return t;
+    }
+
+    public static boolean isTombstone(Map<String,String> record) {
+        return OP_DELETE.equals(record.get(OP));
+    }
+
+    /**
+     * Applies records in log order: a tombstone removes the first live record with its hash.
+     * Each record and tombstone costs O(1); memory holds the live records only.
+     */
+    public static class LiveRecords {
+        private final List<Map<String,String>> records = new ArrayList<>();
+        private final Map<String, ArrayDeque<Integer>> byHash = new HashMap<>();
+        private int live, tombstones;
+
+        public void apply(Map<String,String> record) {
+            if (isTombstone(record)) {
+                tombstones++;
+                ArrayDeque<Integer> slots = byHash.get(record.get("MessageHash"));
+                Integer slot = slots == null ? null : slots.pollFirst();
+                if (slot != null) {
+                    records.set(slot, null);
+                    live--;
+                }
+                return;
+            }
+            byHash.computeIfAbsent(record.get("MessageHash"), k -> new ArrayDeque<>()).addLast(records.size());
+            records.add(record);
+            live++;
+        }
+
+        public int liveCount() { return live; }
+        public int tombstoneCount() { return tombstones; }
+
+        public List<Map<String,String>> toList() {
+            List<Map<String,String>> out = new ArrayList<>(live);
+            for (Map<String,String> r : records) if (r != null) out.add(r);
+            return out;
+        }
+    }
+
+    // ---------- read path ----------
+
+    /** Startup check: repairs a torn tail left by a crash during an append. */
+    public synchronized void open() throws IOException {
+        if (!Files.exists(path())) return;
+        try (FileChannel ch = FileChannel.open(path(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (!scan(ch).closed) recover(ch);
+        }
+    }
+
+    /** Replays every record in file order, one at a time. Call open() first after a crash. */
+    public synchronized void forEach(Consumer<Map<String,String>> action) throws IOException {
+        JsonRecordReader.forEachRecord(filename, action);
+    }
+
+    public List<Map<String,String>> readAll() throws IOException {
+        List<Map<String,String>> out = new ArrayList<>();
+        forEach(out::add);
+        return out;
+    }
+
+    // ---------- positions (used by MessageSegment to skip what it already holds) ----------
+
+    /** Offset just after the last record, where the next append goes; -1 if the file is missing or torn. */
+    public synchronized long tailOffset() throws IOException {
+        if (!Files.exists(path())) return -1;
+        try (FileChannel ch = FileChannel.open(path(), StandardOpenOption.READ)) {
+            Tail tail = locateTail(ch);
+            return tail == null || tail.fresh ? -1 : tail.insertAt;
+        }
+    }
+
+    /**
+     * CRC32C of offset (a tailOffset() value) and of the first and last FINGERPRINT_WINDOW bytes
+     * before it. Appends never touch those bytes, so the value only changes when the file is
+     * rewritten or replaced; MessageSegment uses it to tell. It reads at most two windows however
+     * long the log grows. A rewrite that keeps the length, the head and the tail but changes bytes
+     * in between goes unnoticed; compaction always drops records, so it changes the length.
+     */
+    public long fingerprint(long offset) throws IOException {
+        try (FileChannel ch = FileChannel.open(path(), StandardOpenOption.READ)) {
+            if (offset < 0 || offset > ch.size()) throw new IOException("offset " + offset + " outside " + filename);
+            CRC32C crc = new CRC32C();
+            ByteBuffer buf = ByteBuffer.allocate(FINGERPRINT_WINDOW);
+            buf.putLong(offset).flip();
+            crc.update(buf);
+            long head = Math.min(FINGERPRINT_WINDOW, offset);
+            update(crc, ch, buf, 0, head);
+            update(crc, ch, buf, Math.max(head, offset - FINGERPRINT_WINDOW), offset);
+            return crc.getValue();
+        }
+    }
+
+    private void update(CRC32C crc, FileChannel ch, ByteBuffer buf, long pos, long end) throws IOException {
+        while (pos < end) {
+            buf.clear();
+            buf.limit((int) Math.min(buf.capacity(), end - pos));
+            int n = ch.read(buf, pos);
+            if (n <= 0) throw new EOFException(filename + " ended at " + pos);
+            buf.flip();
+            crc.update(buf);
+            pos += n;
+        }
+    }
+
+    /**
+     * Counts the rewrite() and replaceWith() calls made through this object; appends leave it alone.
+     * Unlike the file's identity on disk it works on every platform and cannot be reused.
+     */
+    public long generation() { return generation; }
+
+    /**
+     * Replays the records that lie before offset (a tailOffset() value), ignoring anything appended
+     * since. Appends never touch bytes before the tail, so this runs without the log's lock and
+     * does not hold up the writer.
+     */
+    public void forEachBefore(long offset, Consumer<Map<String,String>> action) throws IOException {
+        try (FileChannel ch = FileChannel.open(path(), StandardOpenOption.READ)) {
+            if (offset < 0 || offset > ch.size()) throw new IOException("offset " + offset + " outside " + filename);
+            InputStream head = new BoundedInputStream(Channels.newInputStream(ch.position(0)), offset);
+            InputStream array = new SequenceInputStream(new BufferedInputStream(head),
+                    new ByteArrayInputStream("\n]".getBytes(StandardCharsets.UTF_8)));
+            JsonRecordReader reader = new JsonRecordReader(new InputStreamReader(array, StandardCharsets.UTF_8));
+            Map<String,String> record;
+            while ((record = reader.nextRecord()) != null) action.accept(record);
+        }
+    }
+
+    private static final class BoundedInputStream extends FilterInputStream {
+        private long remaining;
+
+        BoundedInputStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) return -1;
+            int b = super.read();
+            if (b != -1) remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) return -1;
+            int n = super.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) remaining -= n;
+            return n;
+        }
+    }
+
+    /** Replays only the records appended after offset, a value returned earlier by tailOffset(). */
+    public synchronized void forEachAfter(long offset, Consumer<Map<String,String>> action) throws IOException {
+        try (FileChannel ch = FileChannel.open(path(), StandardOpenOption.READ)) {
+            if (offset < 0 || offset > ch.size()) throw new IOException("offset " + offset + " outside " + filename);
+            // what follows is ",\n{...},\n{...}\n]\n" - read it as an array by swapping the comma for '['
+            PushbackInputStream rest = new PushbackInputStream(
+                    new BufferedInputStream(Channels.newInputStream(ch.position(offset))));
+            int first = rest.read();
+            if (first != ',' && first != -1) rest.unread(first);
+            InputStream array = new SequenceInputStream(
+                    new ByteArrayInputStream("[".getBytes(StandardCharsets.UTF_8)), rest);
+            JsonRecordReader reader = new JsonRecordReader(new InputStreamReader(array, StandardCharsets.UTF_8));
+            Map<String,String> record;
+            while ((record = reader.nextRecord()) != null) action.accept(record);
+        }
+    }
+
+    // ---------- tail handling & recovery ----------
+
+    private static final class Tail {
+        final long insertAt;
+        final boolean needsComma, fresh;
+        Tail(long insertAt, boolean needsComma, boolean fresh) {
+            this.insertAt = insertAt;
+            this.needsComma = needsComma;
+            this.fresh = fresh;
+        }
+    }
+
+    // Finds where the next record goes: just after the last record's '}' or just after '['.
+    // Returns null when the file does not end in "]" (torn append).
+    private static Tail locateTail(FileChannel ch) throws IOException {
+        long size = ch.size();
+        if (size == 0) return new Tail(0, false, true);
+        long close = lastNonWhitespace(ch, size);
+        if (close < 0) return new Tail(0, false, true);
+        if (byteAt(ch, close) != ']') return null;
+        long prev = lastNonWhitespace(ch, close);
+        if (prev < 0) return null;
+        byte b = byteAt(ch, prev);
+        if (b == '[') return new Tail(prev + 1, false, false);
+        if (b == '}') return new Tail(prev + 1, true, false);
+        return null;
+    }
+
+    private static long lastNonWhitespace(FileChannel ch, long before) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(TAIL_BLOCK);
+        long end = before;
+        while (end > 0) {
+            long start = Math.max(0, end - TAIL_BLOCK);
+            buf.clear().limit((int) (end - start));
+            while (buf.hasRemaining() && ch.read(buf, start + buf.position()) > 0) { }
+            for (int i = buf.position() - 1; i >= 0; i--) {
+                byte b = buf.get(i);
+                if (b != ' ' && b != '\n' && b != '\r' && b != '\t') return start + i;
+            }
+            end = start;
+        }
+        return -1;
+    }
+
+    private static byte byteAt(FileChannel ch, long pos) throws IOException {
+        ByteBuffer one = ByteBuffer.allocate(1);
+        ch.read(one, pos);
+        return one.get(0);
+    }
+
+    private static void recover(FileChannel ch) throws IOException {
+        Scan scan = scan(ch);
+        ch.truncate(scan.lastGoodEnd);
+        ch.write(ByteBuffer.wrap("\n]\n".getBytes(StandardCharsets.UTF_8)), scan.lastGoodEnd);
+    }
+
+    private static final class Scan {
+        long lastGoodEnd;   // offset just after the last complete record (or after '[')
+        boolean closed;     // last non-blank line is "]"
+    }
+
+    // One forward pass over the lines, tracking byte offsets.
+    private static Scan scan(FileChannel ch) throws IOException {
+        Scan scan = new Scan();
+        boolean sawOpen = false;
+        InputStream in = new BufferedInputStream(Channels.newInputStream(ch.position(0)));
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        long lineStart = 0, offset = 0;
+        int b;
+        do {
+            b = in.read();
+            if (b != -1 && b != '\n') {
+                line.write(b);
+                offset++;
+                continue;
+            }
+            byte[] raw = line.toByteArray();
+            String trimmed = new String(raw, StandardCharsets.UTF_8).trim();
+            if (!trimmed.isEmpty()) {
+                scan.closed = false;
+                if (!sawOpen) {
+                    if (!trimmed.startsWith("[")) throw new IOException("not a JSON array log");
+                    sawOpen = true;
+                    scan.lastGoodEnd = lineStart + indexOf(raw, (byte) '[') + 1;
+                    trimmed = trimmed.substring(1).trim();
+                }
+                if (trimmed.equals("]")) {
+                    scan.closed = true;
+                } else if (trimmed.equals("}") || trimmed.equals("},") || parseLine(trimmed) != null) {
+                    scan.lastGoodEnd = lineStart + lastIndexOf(raw, (byte) '}') + 1;
+                }
+            }
+            offset++;
+            lineStart = offset;
+            line.reset();
+        } while (b != -1);
+        return scan;
+    }
+
+    private static int indexOf(byte[] raw, byte b) {
+        for (int i = 0; i < raw.length; i++) if (raw[i] == b) return i;
+        return -1;
+    }
+
+    private static int lastIndexOf(byte[] raw, byte b) {
+        for (int i = raw.length - 1; i >= 0; i--) if (raw[i] == b) return i;
+        return -1;
+    }
+
+    /** Parses one record line (an optional trailing comma is allowed); null if the line is incomplete. */
+    static Map<String,String> parseLine(String line) {
+        String s = line.trim();
+        if (s.endsWith(",")) s = s.substring(0, s.length() - 1);
+        return JsonRecordReader.parseObject(s);
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.chatapp;
+
+import java.util.*;
+
+/**
+ * MessagePage - one page of a cursor-paged query.
+ *
+ * Pass getCursor() back as the "after" argument to get the next page; START asks for the first.
+ * The cursor is a send-order sequence number, so pages stay stable while messages are added or
+ * deleted elsewhere.
+ */
+public class MessagePage {
+
+    public static final long START = -1;
+
+    private final List<ChatApp1.Message> messages;
+    private final long cursor;
+    private final boolean hasMore;
+
+    public MessagePage(List<ChatApp1.Message> messages, long cursor, boolean hasMore) {
+        this.messages = Collections.unmodifiableList(messages);
+        this.cursor = cursor;
+        this.hasMore = hasMore;
+    }
+
+    public List<ChatApp1.Message> getMessages() { return messages; }
+    public long getCursor() { return cursor; }
+    public boolean hasMore() { return hasMore; }
+    public boolean isEmpty() { return messages.isEmpty(); }
+}
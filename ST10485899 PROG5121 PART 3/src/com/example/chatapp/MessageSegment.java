@@ -0,0 +1,208 @@
+package com.example.chatapp;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * MessageSegment - compact binary snapshot of one shard's sent messages (messages.seg).
+ *
+ * Layout (big-endian):
+ *   header  : int MAGIC, int VERSION, long sourceTail, long sourceChecksum
+ *   records : six length-prefixed UTF-8 fields per message
+ *             (MessageID, Sender, MessageHash, Recipient, Message, Seq), each an int length + bytes;
+ *             a missing field (no Seq in records written before sharding) has length -1
+ *   index   : long offset of every record, in order
+ *   footer  : long indexStart, int count, int MAGIC
+ *
+ * The file is read through a read-only memory map: opening it only reads the footer and
+ * getRecord(i) jumps straight to record i through the index, so there is no parsing pass.
+ * sourceTail/sourceChecksum record how much of messages.json the segment was built from and
+ * MessageLog.fingerprint() of those bytes; records appended to the log after that point are
+ * replayed on top (see ShardedStore.load).
+ */
+public class MessageSegment {
+
+    public static final String[] FIELDS = {"MessageID", "Sender", "MessageHash", "Recipient", "Message", ShardedStore.SEQ};
+
+    private static final int MAGIC = 0x51435347; // "QCSG"
+    private static final int VERSION = 4;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8;
+    private static final int FOOTER_SIZE = 8 + 4 + 4;
+
+    private final MappedByteBuffer map;
+    private final int count;
+    private final long indexStart;
+    private final long sourceTail;
+    private final long sourceChecksum;
+
+    private MessageSegment(MappedByteBuffer map) throws IOException {
+        this.map = map;
+        int size = map.capacity();
+        if (size < HEADER_SIZE + FOOTER_SIZE || map.getInt(0) != MAGIC || map.getInt(size - 4) != MAGIC) {
+            throw new IOException("not a message segment");
+        }
+        if (map.getInt(4) != VERSION) throw new IOException("unsupported segment version " + map.getInt(4));
+        this.indexStart = map.getLong(size - FOOTER_SIZE);
+        this.count = map.getInt(size - 8);
+        if (count < 0 || indexStart < 0 || indexStart + 8L * count != size - FOOTER_SIZE) {
+            throw new IOException("corrupt segment index");
+        }
+        this.sourceTail = map.getLong(8);
+        this.sourceChecksum = map.getLong(16);
+    }
+
+    // ---------- reading ----------
+
+    public static MessageSegment open(String filename) throws IOException {
+        try (FileChannel ch = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            if (ch.size() > Integer.MAX_VALUE) throw new IOException(filename + " is too large to map");
+            return new MessageSegment(ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()));
+        }
+    }
+
+    /**
+     * Opens the segment only if it was built from the current messages.json: the log still holds
+     * at least sourceTail bytes and their fingerprint is the one recorded. A rewrite or compaction
+     * changes those bytes even when the new file reuses the old one's inode, so a stale segment is
+     * never trusted. Checking reads the two fingerprint windows only, not the whole log. Returns
+     * null when the caller should replay the whole log instead.
+     */
+    public static MessageSegment openIfCurrent(String filename, MessageLog log) {
+        if (!Files.exists(Paths.get(filename))) return null;
+        try {
+            MessageSegment segment = open(filename);
+            if (segment.sourceTail < 0 || log.tailOffset() < segment.sourceTail) return null;
+            if (log.fingerprint(segment.sourceTail) != segment.sourceChecksum) return null;
+            return segment;
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    public int size() { return count; }
+    public long getSourceTail() { return sourceTail; }
+    public long getSourceChecksum() { return sourceChecksum; }
+
+    /** Decodes record i only; no other record is touched. */
+    public Map<String,String> getRecord(int i) {
+        if (i < 0 || i >= count) throw new IndexOutOfBoundsException("record " + i + " of " + count);
+        int[] pos = {(int) map.getLong((int) (indexStart + 8L * i))};
+        Map<String,String> record = new LinkedHashMap<>();
+        for (String field : FIELDS) record.put(field, readField(pos));
+        return record;
+    }
+
+    /** Reads a single field of record i, e.g. getField(i, 4) for the message text. */
+    public String getField(int i, int field) {
+        if (i < 0 || i >= count) throw new IndexOutOfBoundsException("record " + i + " of " + count);
+        int[] pos = {(int) map.getLong((int) (indexStart + 8L * i))};
+        for (int f = 0; f < field; f++) pos[0] += 4 + Math.max(0, map.getInt(pos[0]));
+        return readField(pos);
+    }
+
+    private String readField(int[] pos) {
+        int len = map.getInt(pos[0]);
+        pos[0] += 4;
+        if (len < 0) return null;
+        byte[] bytes = new byte[len];
+        map.get(pos[0], bytes);
+        pos[0] += len;
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // ---------- writing ----------
+
+    /** Streams records into a new segment; the file only replaces the old one on finish(). */
+    public static class Writer implements Closeable {
+        private final Path target, tmp;
+        private final DataOutputStream out;
+        private long offset;
+        private long[] offsets = new long[1024];
+        private int count;
+        private boolean finished;
+
+        /** A segment of log up to sourceTail (a tailOffset() value). */
+        public Writer(String filename, MessageLog log, long sourceTail) throws IOException {
+            this(filename, sourceTail, sourceTail < 0 ? 0 : log.fingerprint(sourceTail));
+        }
+
+        public Writer(String filename, long sourceTail, long sourceChecksum) throws IOException {
+            this.target = Paths.get(filename);
+            this.tmp = Paths.get(filename + ".tmp");
+            this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(sourceTail);
+            out.writeLong(sourceChecksum);
+            offset = HEADER_SIZE;
+        }
+
+        public void add(Map<String,String> record) throws IOException {
+            if (count == offsets.length) offsets = Arrays.copyOf(offsets, count * 2);
+            offsets[count++] = offset;
+            for (String field : FIELDS) writeField(record.get(field));
+        }
+
+        private void writeField(String value) throws IOException {
+            if (value == null) {
+                out.writeInt(-1);
+                offset += 4;
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+            offset += 4 + bytes.length;
+        }
+
+        public int finish() throws IOException {
+            long indexStart = offset;
+            for (int i = 0; i < count; i++) out.writeLong(offsets[i]);
+            out.writeLong(indexStart);
+            out.writeInt(count);
+            out.writeInt(MAGIC);
+            out.close();
+            finished = true;
+            try {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (finished) return;
+            out.close();
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /** Writes the given records as a segment of the current state of log. */
+    public static void write(String filename, List<Map<String,String>> records, MessageLog log) throws IOException {
+        try (Writer writer = new Writer(filename, log, log.tailOffset())) {
+            for (Map<String,String> r : records) writer.add(r);
+            writer.finish();
+        }
+    }
+
+    /**
+     * Converter: builds a segment from an existing messages.json and returns the record count.
+     * Tombstones are applied first, so only the live messages end up in the segment.
+     */
+    public static int convert(String jsonFile, String segmentFile) throws IOException {
+        MessageLog log = new MessageLog(jsonFile);
+        long tail = log.tailOffset();
+        MessageLog.LiveRecords live = new MessageLog.LiveRecords();
+        if (tail >= 0) log.forEachBefore(tail, live::apply);
+        try (Writer writer = new Writer(segmentFile, log, tail)) {
+            for (Map<String,String> record : live.toList()) writer.add(record);
+            return writer.finish();
+        }
+    }
+}
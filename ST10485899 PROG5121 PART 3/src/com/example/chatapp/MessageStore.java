@@ -0,0 +1,401 @@
+package com.example.chatapp;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * MessageStore - the sent-message list (ChatApp1.contents) with hash indexes on top.
+ *
+ * It is a normal List<Message>, so existing code that adds, gets and iterates still works, but
+ * every change also updates:
+ *   - an index from MessageID to the messages with that ID (IDs are random, so they may repeat),
+ *   - an index from MessageHash to the messages with that hash (createMessageHash is not unique:
+ *     the same first/last words and message number give the same hash),
+ *   - any secondary MessageIndex registered with addIndex (e.g. RecipientIndex).
+ * Lookups by ID or hash are O(1) instead of a scan of every sent message. Where several messages
+ * share a key the earliest sent one comes first, matching the old linear scans.
+ *
+ * Every message also gets a send-order sequence number (seqOf) that never changes while it is
+ * stored; paged queries use it as their cursor.
+ *
+ * Thread safety: writers (add, remove, set, clear) take one lock, so all the indexes of one
+ * change are updated together and two changes never interleave. Readers take no lock: every
+ * index is a concurrent map and iteration is weakly consistent (no
+ * ConcurrentModificationException). The send-order map is the commit point - a message is put
+ * there last and removed from there first, and ID/hash lookups only return messages that are in
+ * it, so a reader never sees a half-added or half-removed message.
+ *
+ * Messages can only be appended: add(int, m) throws unless index == size(), and a message that is
+ * already stored is refused. Adds and deletes are O(log n) and never shift anything. get(int)
+ * reads a positional snapshot that is rebuilt (O(n)) on the first positional read after a
+ * change, so prefer iteration or page() over positional access interleaved with changes.
+ */
+public class MessageStore extends AbstractList<ChatApp1.Message> implements PagedMessages {
+
+    // a stored message together with its sequence number
+    private static final class Entry {
+        final long seq;
+        final ChatApp1.Message message;
+
+        Entry(long seq, ChatApp1.Message message) {
+            this.seq = seq;
+            this.message = message;
+        }
+    }
+
+    private static final String NULL_KEY = "\u0000null"; // concurrent maps take no null keys
+
+    private final ConcurrentSkipListMap<Long, ChatApp1.Message> bySeq = new ConcurrentSkipListMap<>();
+    private final ConcurrentHashMap<String, List<Entry>> byId = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, List<Entry>> byHash = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<ChatApp1.Message, Long> seqs = new ConcurrentHashMap<>(); // Message equality is identity
+    private final List<MessageIndex> indexes = new CopyOnWriteArrayList<>();
+    private final AtomicInteger count = new AtomicInteger();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final AtomicLong sequence; // taken from under writeLock, so seqs grow in send order
+    private final AtomicLong version = new AtomicLong(); // bumped after every change
+    private volatile Positions positions;                // get(int) snapshot, valid while version matches
+
+    // the messages in send order as of one version
+    private static final class Positions {
+        final long version;
+        final ChatApp1.Message[] messages;
+
+        Positions(long version, ChatApp1.Message[] messages) {
+            this.version = version;
+            this.messages = messages;
+        }
+    }
+
+    public MessageStore() {
+        this(new AtomicLong());
+    }
+
+    /**
+     * Draws sequence numbers from a shared counter, so the messages of several stores (the shards
+     * of a ShardedStore) merge back into one send order by seqOf.
+     */
+    MessageStore(AtomicLong sequence) {
+        this.sequence = sequence;
+    }
+
+    /** Registers a secondary index and fills it with the messages already stored. */
+    public void addIndex(MessageIndex index) {
+        writeLock.lock();
+        try {
+            indexes.add(index);
+            for (Map.Entry<Long, ChatApp1.Message> e : bySeq.entrySet()) index.added(e.getValue(), e.getKey());
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /** Send-order sequence number of a stored message, or -1. */
+    @Override
+    public long seqOf(ChatApp1.Message m) {
+        Long seq = m == null ? null : seqs.get(m);
+        return seq == null ? -1 : seq;
+    }
+
+    /** Up to limit messages sent after the cursor, in send order (see MessagePage). */
+    @Override
+    public MessagePage page(long after, int limit) {
+        List<ChatApp1.Message> out = new ArrayList<>(Math.max(0, Math.min(limit, 256)));
+        long cursor = after;
+        Iterator<Map.Entry<Long, ChatApp1.Message>> it = bySeq.tailMap(after, false).entrySet().iterator();
+        while (out.size() < limit && it.hasNext()) {
+            Map.Entry<Long, ChatApp1.Message> e = it.next();
+            out.add(e.getValue());
+            cursor = e.getKey();
+        }
+        return new MessagePage(out, cursor, it.hasNext());
+    }
+
+    // ---------- List ----------
+
+    /** O(1) while nothing changes; the first call after a change rebuilds the snapshot. */
+    @Override
+    public ChatApp1.Message get(int index) {
+        ChatApp1.Message[] messages = positions().messages;
+        if (index < 0 || index >= messages.length) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + messages.length);
+        }
+        return messages[index];
+    }
+
+    // A snapshot labelled with the version read before it was built: a change finishing during
+    // the build bumps the version, so that snapshot is never taken as current.
+    private Positions positions() {
+        Positions p = positions;
+        long v = version.get();
+        if (p != null && p.version == v) return p;
+        p = new Positions(v, bySeq.values().toArray(new ChatApp1.Message[0]));
+        positions = p;
+        return p;
+    }
+
+    @Override
+    public int size() {
+        return count.get();
+    }
+
+    @Override
+    public Iterator<ChatApp1.Message> iterator() {
+        Iterator<ChatApp1.Message> it = bySeq.values().iterator();
+        return new Iterator<ChatApp1.Message>() {
+            private ChatApp1.Message last;
+
+            @Override
+            public boolean hasNext() { return it.hasNext(); }
+
+            @Override
+            public ChatApp1.Message next() { return last = it.next(); }
+
+            @Override
+            public void remove() {
+                if (last == null) throw new IllegalStateException();
+                removeMessage(last);
+                last = null;
+            }
+        };
+    }
+
+    /** Appends m; throws IllegalArgumentException if m itself is already stored. */
+    @Override
+    public boolean add(ChatApp1.Message m) {
+        writeLock.lock();
+        try {
+            requireNew(m);
+            index(m, sequence.getAndIncrement());
+            changed();
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /** Appends all of messages under one hold of the write lock (bulk imports). */
+    @Override
+    public boolean addAll(Collection<? extends ChatApp1.Message> messages) {
+        writeLock.lock();
+        try {
+            for (ChatApp1.Message m : messages) add(m);
+            return !messages.isEmpty();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Adds messages under sequence numbers chosen by the caller (seqs[i] for messages.get(i)), in
+     * one hold of the write lock: a reload puts messages back under the numbers they were saved
+     * with, and ShardedStore.addAll keeps a batch in order across shards. A number already in use
+     * is the same message read twice (see ShardedStore.load), so that message is skipped. Later
+     * adds continue above the highest number. Returns how many were added.
+     */
+    int restoreAll(List<ChatApp1.Message> messages, long[] seqs) {
+        writeLock.lock();
+        try {
+            int added = 0;
+            for (int i = 0; i < messages.size(); i++) {
+                if (bySeq.containsKey(seqs[i])) continue;
+                requireNew(messages.get(i));
+                sequence.accumulateAndGet(seqs[i] + 1, Math::max);
+                index(messages.get(i), seqs[i]);
+                added++;
+            }
+            if (added > 0) changed();
+            return added;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void add(int index, ChatApp1.Message m) {
+        writeLock.lock();
+        try {
+            if (index != count.get()) throw new UnsupportedOperationException("messages can only be appended");
+            add(m);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /** Replaces the message at index; the new one takes over its place in send order. */
+    @Override
+    public ChatApp1.Message set(int index, ChatApp1.Message m) {
+        writeLock.lock();
+        try {
+            ChatApp1.Message old = get(index);
+            if (m != old) requireNew(m);
+            long seq = seqs.get(old);
+            unindex(old);
+            index(m, seq);
+            changed();
+            return old;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public ChatApp1.Message remove(int index) {
+        writeLock.lock();
+        try {
+            ChatApp1.Message old = get(index);
+            removeMessage(old);
+            return old;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        writeLock.lock();
+        try {
+            bySeq.clear();
+            count.set(0);
+            byId.clear();
+            byHash.clear();
+            seqs.clear();
+            for (MessageIndex index : indexes) index.cleared();
+            changed();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // ---------- indexed lookups ----------
+
+    /** Earliest sent message with this ID, or null. */
+    public ChatApp1.Message findById(String id) {
+        return firstLive(byId.get(key(id)));
+    }
+
+    /** Earliest sent message with this hash, or null. */
+    @Override
+    public ChatApp1.Message findFirstByHash(String hash) {
+        return firstLive(byHash.get(key(hash)));
+    }
+
+    /** Every message sharing this hash (hash collisions), earliest first. */
+    public List<ChatApp1.Message> findAllByHash(String hash) {
+        List<Entry> hits = byHash.get(key(hash));
+        if (hits == null) return Collections.emptyList();
+        List<ChatApp1.Message> out = new ArrayList<>(hits.size());
+        for (Entry e : hits) if (isLive(e)) out.add(e.message);
+        return Collections.unmodifiableList(out);
+    }
+
+    /** Removes the earliest sent message with this hash; returns it, or null if there is none. */
+    public ChatApp1.Message removeFirstByHash(String hash) {
+        return removeFirstByHash(hash, m -> true);
+    }
+
+    /**
+     * Removes the earliest sent message with this hash if allowed accepts it. The check and the
+     * removal happen under the write lock, so no other change can slip in between them. Returns
+     * that message (removed or not), or null if there is none.
+     */
+    public ChatApp1.Message removeFirstByHash(String hash, Predicate<ChatApp1.Message> allowed) {
+        writeLock.lock();
+        try {
+            ChatApp1.Message m = findFirstByHash(hash);
+            if (m == null) return null;
+            if (allowed.test(m)) removeMessage(m);
+            return m;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private ChatApp1.Message firstLive(List<Entry> hits) {
+        if (hits == null) return null;
+        for (Entry e : hits) if (isLive(e)) return e.message;
+        return null;
+    }
+
+    // committed = present in the send-order map
+    private boolean isLive(Entry e) {
+        return bySeq.get(e.seq) == e.message;
+    }
+
+    private static String key(String s) {
+        return s == null ? NULL_KEY : s;
+    }
+
+    // ---------- index maintenance ----------
+
+    private void removeMessage(ChatApp1.Message m) {
+        writeLock.lock();
+        try {
+            if (!seqs.containsKey(m)) return;
+            unindex(m);
+            changed();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // writeLock held. Secondary indexes first, the send-order map last: that put publishes it.
+    private void index(ChatApp1.Message m, long seq) {
+        Entry entry = new Entry(seq, m);
+        seqs.put(m, seq);
+        byId.merge(key(m.getMessageID()), Collections.singletonList(entry), MessageStore::appendEntry);
+        byHash.merge(key(m.getMessageHash()), Collections.singletonList(entry), MessageStore::appendEntry);
+        for (MessageIndex index : indexes) index.added(m, seq);
+        bySeq.put(seq, m);
+        count.incrementAndGet();
+    }
+
+    // writeLock held. The send-order map first, so lookups stop returning the message at once.
+    private void unindex(ChatApp1.Message m) {
+        Long seq = seqs.get(m);
+        if (seq == null) return;
+        bySeq.remove(seq);
+        count.decrementAndGet();
+        removeFrom(byId, key(m.getMessageID()), seq);
+        removeFrom(byHash, key(m.getMessageHash()), seq);
+        for (MessageIndex index : indexes) index.removed(m, seq);
+        seqs.remove(m);
+    }
+
+    // posting lists are immutable and replaced whole, so readers never see one mid-change
+    private static List<Entry> appendEntry(List<Entry> hits, List<Entry> added) {
+        List<Entry> out = new ArrayList<>(hits.size() + added.size());
+        out.addAll(hits);
+        out.addAll(added);
+        return Collections.unmodifiableList(out);
+    }
+
+    private static void removeFrom(ConcurrentHashMap<String, List<Entry>> index, String key, long seq) {
+        index.computeIfPresent(key, (k, hits) -> {
+            List<Entry> out = new ArrayList<>(hits.size());
+            for (Entry e : hits) if (e.seq != seq) out.add(e);
+            return out.isEmpty() ? null : Collections.unmodifiableList(out);
+        });
+    }
+
+    // writeLock held. Seqs are keyed by identity: a second copy would orphan the first one's rows.
+    private void requireNew(ChatApp1.Message m) {
+        if (m == null) throw new NullPointerException("message");
+        if (seqs.containsKey(m)) throw new IllegalArgumentException("message " + m.getMessageID() + " is already stored");
+    }
+
+    // bumped after every change; ShardedStore sums it over its shards for its own snapshot
+    long version() {
+        return version.get();
+    }
+
+    // writeLock held, after the change is complete
+    private void changed() {
+        modCount++;
+        version.incrementAndGet();
+    }
+}
@@ -0,0 +1,370 @@
+package com.example.chatapp;
+
+import javax.swing.SwingUtilities;
+import javax.swing.table.AbstractTableModel;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.IntSupplier;
+
+/**
+ * MessageTableModel - a TableModel over a message query that only ever holds the rows on screen.
+ *
+ * A JTable asks for rows by position; the indexes only page by cursor. The model bridges the
+ * two: rows are fetched PAGE_SIZE at a time through the Source's page(), and the cursor in front
+ * of every page it has passed is remembered, so a later visit to that page (or one after it)
+ * starts from there instead of the beginning. Only a jump to a page never seen walks forward,
+ * and then only from the nearest remembered cursor.
+ *
+ * Pages are loaded off the event thread: a row that is not cached yet shows "..." and the table
+ * is told to repaint its page once it arrives. At most MAX_CACHED_PAGES pages are kept (least
+ * recently used go first), so scrolling through a million messages holds a few thousand rows.
+ *
+ * Requests are served newest first, and only the newest MAX_PENDING are kept: while the user
+ * drags the scrollbar the pages flown past are dropped instead of loaded, and one the table
+ * paints again is simply asked for again. A load that starts after a refresh or a new source
+ * is skipped, and a walk to a far page hands over every still-wanted page it passes on the way,
+ * so two requests never walk the same cursors.
+ *
+ * The row count is taken when the source is set (or refresh() is called), on the loader thread
+ * like the pages, since counting may be as costly as the query itself; the table keeps its
+ * previous count until the new one arrives with a table-changed event. Messages sent after that
+ * show up on the next refresh, and rows deleted since read as empty.
+ */
+public class MessageTableModel extends AbstractTableModel {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final int PAGE_SIZE = 256;
+    public static final int MAX_CACHED_PAGES = 64;
+    public static final int MAX_PENDING = 8;
+    static final String LOADING = "...";
+
+    /** A query the model can page through. */
+    public interface Source {
+        /** Number of rows (may be O(rows); the model calls it once per refresh). */
+        int size();
+
+        /** Up to limit rows after the cursor, as MessagePage.START / getCursor() define it. */
+        MessagePage page(long after, int limit);
+
+        /** Forgets anything computed for earlier calls; the model calls it on refresh, off the event thread. */
+        default void reset() {
+        }
+
+        /** Every sent message in send order. */
+        static Source all(PagedMessages store) {
+            return of(store::size, store::page);
+        }
+
+        /** Every sent message, longest first. */
+        static Source byLength(MessageStore store, LengthIndex index) {
+            return of(store::size, index::page);
+        }
+
+        /** Every sent message over all shards, longest first. */
+        static Source byLength(ShardedStore store) {
+            return of(store::size, store::lengthPage);
+        }
+
+        /** Messages to recipient, oldest first. */
+        static Source recipient(RecipientIndex index, String recipient) {
+            return of(() -> index.count(recipient), (after, limit) -> index.page(recipient, after, limit));
+        }
+
+        /** Messages to recipient, oldest first, from the one shard that holds them. */
+        static Source recipient(ShardedStore store, String recipient) {
+            return recipient(store.shardFor(recipient).getRecipients(), recipient);
+        }
+
+        /**
+         * Full-text matches of query (see TextIndex), best first; the cursor is the row number.
+         * The query is ranked once, on first use, and every page is read from that ranking.
+         */
+        static Source search(TextIndex index, String query) {
+            return new Source() {
+                private long[] ranked; // sequence numbers of the matches, best first
+
+                private synchronized long[] ranked() {
+                    if (ranked == null) ranked = index.rank(query);
+                    return ranked;
+                }
+
+                @Override
+                public int size() {
+                    return ranked().length;
+                }
+
+                @Override
+                public MessagePage page(long after, int limit) {
+                    long[] seqs = ranked();
+                    int from = (int) Math.min(after + 1, seqs.length);
+                    int to = (int) Math.min((long) from + limit, seqs.length);
+                    List<ChatApp1.Message> hits = new ArrayList<>(to - from);
+                    for (int i = from; i < to; i++) {
+                        ChatApp1.Message m = index.message(seqs[i]);
+                        if (m != null) hits.add(m); // deleted since it was ranked
+                    }
+                    return new MessagePage(hits, to - 1, to < seqs.length);
+                }
+
+                @Override
+                public synchronized void reset() {
+                    ranked = null;
+                }
+            };
+        }
+
+        /** A plain list (the drafts); the cursor is the row number. */
+        static Source list(List<ChatApp1.Message> messages) {
+            return of(messages::size, (after, limit) -> {
+                int from = (int) Math.min(after + 1, messages.size());
+                int to = (int) Math.min((long) from + limit, messages.size());
+                return new MessagePage(new ArrayList<>(messages.subList(from, to)), to - 1, to < messages.size());
+            });
+        }
+
+        static Source of(IntSupplier size, Pager pager) {
+            return new Source() {
+                @Override public int size() { return size.getAsInt(); }
+                @Override public MessagePage page(long after, int limit) { return pager.page(after, limit); }
+            };
+        }
+    }
+
+    /** page() of a Source, on its own. */
+    public interface Pager {
+        MessagePage page(long after, int limit);
+    }
+
+    /** The columns a browser can show. */
+    public enum Column {
+        MESSAGE_ID("MessageID"), SENDER("Sender"), RECIPIENT("Recipient"), MESSAGE_HASH("MessageHash"),
+        MESSAGE("Message"), LENGTH("Length");
+
+        private final String title;
+
+        Column(String title) {
+            this.title = title;
+        }
+
+        public String getTitle() { return title; }
+
+        Object valueOf(ChatApp1.Message m) {
+            switch (this) {
+                case MESSAGE_ID: return m.getMessageID();
+                case SENDER: return m.getSender();
+                case RECIPIENT: return m.getRecipient();
+                case MESSAGE_HASH: return m.getMessageHash();
+                case MESSAGE: return m.getMessageText();
+                default: return m.getMessageText().length();
+            }
+        }
+    }
+
+    private final List<Column> columns;
+    private final Executor loader;   // runs page loads
+    private final Executor deliver;  // hands loaded pages back (the event thread)
+
+    // a page asked for, with the query and cursors of the generation it was asked in
+    private static final class Request {
+        final int page;
+        final int generation;
+        final Source source;
+        final ConcurrentSkipListMap<Integer, Long> cursors;
+
+        Request(int page, int generation, Source source, ConcurrentSkipListMap<Integer, Long> cursors) {
+            this.page = page;
+            this.generation = generation;
+            this.source = source;
+            this.cursors = cursors;
+        }
+    }
+
+    // event thread only
+    private Source source;
+    private int rows;
+    private volatile int generation; // bumped by setSource / refresh (event thread); loads check it
+    private final Map<Integer, List<ChatApp1.Message>> pages = new LinkedHashMap<Integer, List<ChatApp1.Message>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, List<ChatApp1.Message>> eldest) {
+            return size() > MAX_CACHED_PAGES;
+        }
+    };
+    private final Set<Integer> loading = new HashSet<>();
+    private final ConcurrentLinkedDeque<Request> pending = new ConcurrentLinkedDeque<>(); // newest first
+
+    // page number -> cursor in front of it; written by the loader, read by later loads
+    private volatile ConcurrentSkipListMap<Integer, Long> cursors = new ConcurrentSkipListMap<>();
+
+    // shared by every browser window; a page load is short, so one thread keeps up
+    private static final ExecutorService LOADER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "quickchat-browser");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /** A model that loads pages on a daemon thread and applies them on the Swing event thread. */
+    public MessageTableModel(Source source, List<Column> columns) {
+        this(source, columns, LOADER, SwingUtilities::invokeLater);
+    }
+
+    MessageTableModel(Source source, List<Column> columns, Executor loader, Executor deliver) {
+        this.columns = new ArrayList<>(columns);
+        this.loader = loader;
+        this.deliver = deliver;
+        setSource(source);
+    }
+
+    /** Shows another query (a new filter or order), starting again from its first page. */
+    public void setSource(Source source) {
+        this.source = source;
+        refresh();
+    }
+
+    /** Drops every cached page and takes the row count again (on the loader thread). */
+    public void refresh() {
+        int gen = ++generation;
+        pages.clear();
+        loading.clear();
+        pending.clear();
+        cursors = new ConcurrentSkipListMap<>();
+        cursors.put(0, MessagePage.START);
+        fireTableDataChanged();
+        Source src = source;
+        loader.execute(() -> {
+            int count;
+            try {
+                src.reset();
+                count = Math.max(0, src.size());
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                count = 0;
+            }
+            int result = count;
+            deliver.execute(() -> {
+                if (gen != generation) return;
+                rows = result;
+                fireTableDataChanged();
+            });
+        });
+    }
+
+    // ---------- TableModel ----------
+
+    @Override
+    public int getRowCount() {
+        return rows;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columns.size();
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return columns.get(column).getTitle();
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return Object.class; // "..." stands in for any value while its page loads
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        ChatApp1.Message m = getMessageAt(row);
+        if (m == null) return pages.containsKey(row / PAGE_SIZE) ? "" : LOADING;
+        return columns.get(column).valueOf(m);
+    }
+
+    public Column getColumn(int column) {
+        return columns.get(column);
+    }
+
+    /** The message at row, or null while its page loads (the load is started if it is not). */
+    public ChatApp1.Message getMessageAt(int row) {
+        int page = row / PAGE_SIZE;
+        List<ChatApp1.Message> messages = pages.get(page);
+        if (messages == null) {
+            load(page);
+            messages = pages.get(page); // there already if the load ran on this thread
+            if (messages == null) return null;
+        }
+        int i = row % PAGE_SIZE;
+        return i < messages.size() ? messages.get(i) : null; // short page: deleted since the count
+    }
+
+    /** Pages held in memory. */
+    public int cachedPages() {
+        return pages.size();
+    }
+
+    // ---------- loading ----------
+
+    private void load(int page) {
+        if (!loading.add(page)) return;
+        pending.addFirst(new Request(page, generation, source, cursors));
+        while (pending.size() > MAX_PENDING) {
+            Request dropped = pending.pollLast(); // scrolled past: asked for again if painted again
+            if (dropped != null) loading.remove(dropped.page);
+        }
+        loader.execute(this::loadNewest);
+    }
+
+    // loader thread: one task per request, each serving the newest request still pending
+    private void loadNewest() {
+        Request r = pending.pollFirst();
+        if (r == null || r.generation != generation) return; // served by another walk, dropped, or stale
+        Map<Integer, List<ChatApp1.Message>> loaded = new HashMap<>();
+        try {
+            fetch(r.source, r.cursors, r.page, (p, messages) -> {
+                if (p == r.page || pending.removeIf(q -> q.page == p && q.generation == r.generation)) {
+                    loaded.put(p, messages);
+                }
+                return r.generation == generation; // stop walking once the model has moved on
+            });
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            loaded.put(r.page, Collections.emptyList());
+        }
+        deliver.execute(() -> {
+            if (r.generation != generation) return;
+            for (Map.Entry<Integer, List<ChatApp1.Message>> e : loaded.entrySet()) {
+                int page = e.getKey();
+                loading.remove(page);
+                pages.put(page, e.getValue());
+                int first = page * PAGE_SIZE;
+                int last = Math.min(rows, first + PAGE_SIZE) - 1;
+                if (first <= last) fireTableRowsUpdated(first, last);
+            }
+        });
+    }
+
+    /** Receives each page a walk reads; returns false to stop the walk. */
+    interface PageVisitor {
+        boolean visit(int page, List<ChatApp1.Message> messages);
+    }
+
+    // walks from the nearest known cursor at or before page, remembering every cursor it passes
+    // and showing every page it reads (page itself last) to visitor
+    static void fetch(Source src, ConcurrentSkipListMap<Integer, Long> known, int page, PageVisitor visitor) {
+        Map.Entry<Integer, Long> from = known.floorEntry(page);
+        int p = from.getKey();
+        long cursor = from.getValue();
+        while (true) {
+            MessagePage result = src.page(cursor, PAGE_SIZE);
+            if (p == page) {
+                visitor.visit(p, result.getMessages());
+                return;
+            }
+            if (!result.hasMore()) {
+                visitor.visit(page, Collections.emptyList()); // past the end: deleted since the count
+                return;
+            }
+            if (!visitor.visit(p, result.getMessages())) return;
+            cursor = result.getCursor();
+            known.put(++p, cursor);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.chatapp;
+
+import javax.management.*;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics - call counts and latency histograms of the QuickChat operations, plus bytes written
+ * to the JSON files and records parsed from them.
+ *
+ * Instrumented code takes System.nanoTime() before the operation and calls
+ * record(op, start) after it. That costs a LatencyHistogram update, so it stays on all the time.
+ * The numbers are visible over JMX (MetricsMXBean) and, if chatapp.metrics.dumpSeconds is set,
+ * printed as a table to standard output that often.
+ */
+public class Metrics implements MetricsMXBean {
+
+    /** The timed operations. */
+    public enum Op {
+        SEND, STORE_DRAFT, SEARCH_ID, SEARCH_RECIPIENT, SEARCH_TEXT, DELETE, LONGEST, REPORT, INBOX,
+        PERSIST, JSON_READ, JSON_WRITE, LOAD, IMPORT
+    }
+
+    public static final String OBJECT_NAME = "com.example.chatapp:type=Metrics";
+
+    /** The process-wide instance everything records into. */
+    public static final Metrics GLOBAL = new Metrics();
+
+    private final LatencyHistogram[] latencies = new LatencyHistogram[Op.values().length];
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder recordsParsed = new LongAdder();
+    private ScheduledExecutorService dumper;
+
+    public Metrics() {
+        for (int i = 0; i < latencies.length; i++) latencies[i] = new LatencyHistogram();
+    }
+
+    // ---------- recording ----------
+
+    /** Records one op that started at startNanos (a System.nanoTime() value) and ends now. */
+    public void record(Op op, long startNanos) {
+        latencies[op.ordinal()].record(System.nanoTime() - startNanos);
+    }
+
+    public void addBytesWritten(long bytes) {
+        bytesWritten.add(bytes);
+    }
+
+    public void addRecordsParsed(long records) {
+        recordsParsed.add(records);
+    }
+
+    public LatencyHistogram latency(Op op) {
+        return latencies[op.ordinal()];
+    }
+
+    // ---------- MetricsMXBean ----------
+
+    private interface Stat {
+        long of(LatencyHistogram h);
+    }
+
+    // ops that have been called at least once, in Op order
+    private Map<String, Long> perOp(Stat stat) {
+        Map<String, Long> out = new LinkedHashMap<>();
+        for (Op op : Op.values()) {
+            LatencyHistogram h = latency(op);
+            if (h.getCount() > 0) out.put(op.name(), stat.of(h));
+        }
+        return out;
+    }
+
+    @Override
+    public Map<String, Long> getCounts() { return perOp(LatencyHistogram::getCount); }
+
+    @Override
+    public Map<String, Long> getMeanMicros() { return perOp(h -> Math.round(h.getMean() / 1000)); }
+
+    @Override
+    public Map<String, Long> getP50Micros() { return perOp(h -> h.percentile(50) / 1000); }
+
+    @Override
+    public Map<String, Long> getP99Micros() { return perOp(h -> h.percentile(99) / 1000); }
+
+    @Override
+    public Map<String, Long> getP999Micros() { return perOp(h -> h.percentile(99.9) / 1000); }
+
+    @Override
+    public Map<String, Long> getMaxMicros() { return perOp(h -> h.getMax() / 1000); }
+
+    @Override
+    public long getBytesWritten() { return bytesWritten.sum(); }
+
+    @Override
+    public long getRecordsParsed() { return recordsParsed.sum(); }
+
+    @Override
+    public String dump() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-16s %10s %10s %10s %10s %10s %10s%n", "op", "count", "mean us", "p50 us", "p99 us",
+                "p99.9 us", "max us"));
+        for (Op op : Op.values()) {
+            LatencyHistogram h = latency(op);
+            if (h.getCount() == 0) continue;
+            sb.append(String.format("%-16s %10d %10.1f %10d %10d %10d %10d%n", op, h.getCount(), h.getMean() / 1000,
+                    h.percentile(50) / 1000, h.percentile(99) / 1000, h.percentile(99.9) / 1000, h.getMax() / 1000));
+        }
+        sb.append("bytes written: ").append(getBytesWritten()).append(", records parsed: ").append(getRecordsParsed())
+          .append(System.lineSeparator());
+        return sb.toString();
+    }
+
+    @Override
+    public void reset() {
+        for (LatencyHistogram h : latencies) h.reset();
+        bytesWritten.reset();
+        recordsParsed.reset();
+    }
+
+    // ---------- publishing ----------
+
+    /** Registers this instance with the platform MBean server (replacing an earlier one). */
+    public void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) server.unregisterMBean(name);
+            server.registerMBean(this, name);
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /** Prints dump() to out every periodSeconds on a daemon thread, until stopDump(). */
+    public synchronized void startDump(long periodSeconds, PrintStream out) {
+        stopDump();
+        dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "quickchat-metrics");
+            t.setDaemon(true);
+            return t;
+        });
+        dumper.scheduleAtFixedRate(() -> out.print(dump()), periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    public synchronized void stopDump() {
+        if (dumper != null) dumper.shutdownNow();
+        dumper = null;
+    }
+
+    /** Registers the MBean and, if chatapp.metrics.dumpSeconds is above 0, starts the dump to stdout. */
+    public void startFromSystemProperties() {
+        registerMBean();
+        long seconds = Long.getLong("chatapp.metrics.dumpSeconds", 0);
+        if (seconds > 0) startDump(seconds, System.out);
+    }
+}
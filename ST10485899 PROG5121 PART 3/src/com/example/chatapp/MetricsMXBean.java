@@ -0,0 +1,31 @@
+package com.example.chatapp;
+
+import java.util.Map;
+
+/**
+ * MetricsMXBean - what Metrics shows over JMX (as com.example.chatapp:type=Metrics).
+ * The maps are keyed by operation name (see Metrics.Op); times are in microseconds.
+ */
+public interface MetricsMXBean {
+
+    Map<String, Long> getCounts();
+
+    Map<String, Long> getMeanMicros();
+
+    Map<String, Long> getP50Micros();
+
+    Map<String, Long> getP99Micros();
+
+    Map<String, Long> getP999Micros();
+
+    Map<String, Long> getMaxMicros();
+
+    long getBytesWritten();
+
+    long getRecordsParsed();
+
+    /** The same text as the periodic dump. */
+    String dump();
+
+    void reset();
+}
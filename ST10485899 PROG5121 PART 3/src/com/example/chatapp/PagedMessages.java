@@ -0,0 +1,22 @@
+package com.example.chatapp;
+
+/**
+ * PagedMessages - sent messages read in send order, a page at a time.
+ *
+ * Implemented by MessageStore, and by ShardedStore, which merges the pages of its shards. The
+ * reports (ReportEngine) and the message browser read through this, so they work the same over
+ * one store or several.
+ */
+public interface PagedMessages {
+
+    int size();
+
+    /** Up to limit messages sent after the cursor, in send order (see MessagePage). */
+    MessagePage page(long after, int limit);
+
+    /** Earliest sent message with this hash, or null. */
+    ChatApp1.Message findFirstByHash(String hash);
+
+    /** Send-order sequence number of a stored message, or -1. */
+    long seqOf(ChatApp1.Message m);
+}
@@ -0,0 +1,692 @@
+package com.example.chatapp;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * QuickChatServer - headless mode: the QuickChat menu operations over a line-based TCP protocol.
+ *
+ * Started with "ChatApp1 --server [port]" (port 5121 by default, loopback only). One selector
+ * thread does all socket I/O for every connection, so thousands of idle clients cost a
+ * SelectionKey each, not a thread each. Commands run on a small worker pool, because a send
+ * waits for its write ack; each connection's commands still run one at a time, in order.
+ *
+ * Protocol (UTF-8, one command per line, arguments separated by single spaces, the last one
+ * taking the rest of the line):
+ *   LOGIN username password         check the password and open a session (see SessionManager)
+ *   SESSION token                   use a session opened on another connection
+ *   WHOAMI / LOGOUT                 the session's user / end the session
+ *   SEND sender recipient text...   send a message as the session's user
+ *   ID messageID                    search by message ID
+ *   RECIPIENT number                search by recipient
+ *   DELETE hash                     delete by message hash (a message the session's user sent)
+ *   LONGEST                         longest sent message
+ *   REPORT                          full report of sent messages
+ *   SEARCH query                    full-text search (see TextIndex), best 20 matches
+ *   INBOX number [max]              take up to max (default 100) messages waiting for number (the
+ *                                   session's user's own)
+ *                                   (queued only while a server runs; a full inbox is reported by SEND)
+ *   PING / QUIT
+ * Every reply is a status line ("OK" or "ERR reason"), then the result lines, then a line
+ * holding a single "."; result lines starting with "." get an extra "." in front (as in SMTP).
+ * A line longer than 64 KB is answered "ERR line too long", after the replies to the commands
+ * before it, and the connection is closed.
+ *
+ * Replies are written to the socket as they are produced, but at most maxQueuedBytes of them
+ * wait in memory per connection: a command producing more (REPORT) waits for the client to read
+ * before it goes on, and a client that reads nothing for stallMillis is disconnected.
+ * Input is bounded the same way: at most maxCommands commands wait per connection. While a
+ * connection is at that limit, or over maxQueuedBytes, the selector stops reading from it, so
+ * a client pipelining faster than it is served is held back by TCP flow control instead of by
+ * server memory; reading resumes once its worker has caught up.
+ *
+ * With chatapp.mailbox.policy=BLOCK, a SEND to a recipient whose inbox is full is held back
+ * before anything is persisted: the connection is not read and runs nothing else, but no worker
+ * waits for it either. The SEND runs once an INBOX makes room, or after chatapp.mailbox.blockMs
+ * when it is sent and reported "Inbox: full, not delivered" (another sender may also take the
+ * room first).
+ *
+ * SEND, DELETE and INBOX need a session (LOGIN, or SESSION with a token from another
+ * connection) and answer "ERR login required" without one; the lookups stay open. Setting
+ * chatapp.server.allowAnonymous=true lets clients without a session use them as anyone, as
+ * before sessions existed. A connection that has logged in is checked against its session on
+ * every command: one token lookup, never the password again, and once the session expires
+ * every command gets "ERR session expired" until the next LOGIN.
+ */
+public class QuickChatServer implements Closeable {
+
+    public static final int DEFAULT_PORT = 5121;
+
+    private static final int MAX_LINE = 64 * 1024;
+    private static final int CHUNK = 8 * 1024;
+    private static final int MAX_QUEUED = 256 * 1024;
+    private static final int MAX_COMMANDS = 64;
+    private static final long STALL_MILLIS = 30_000;
+
+    private final InetSocketAddress address;
+    private final ExecutorService workers;
+    private final int maxQueuedBytes;
+    private final int maxCommands;
+    private final long stallMillis;
+    private final boolean allowAnonymous;
+    private final Queue<Connection> wantWrite = new ConcurrentLinkedQueue<>();
+    private final Queue<Connection> wantRead = new ConcurrentLinkedQueue<>();  // paused, may resume
+    private final ScheduledExecutorService timer; // ends the wait of a held-back SEND
+    private Selector selector;
+    private ServerSocketChannel server;
+    private Thread thread;
+    private volatile boolean closed;
+    private final AtomicBoolean consuming = new AtomicBoolean(); // attached to ChatApp1.mailboxes
+
+    /** A server requiring a session for SEND, DELETE and INBOX unless chatapp.server.allowAnonymous is set. */
+    public QuickChatServer(InetSocketAddress address, int workerThreads) {
+        this(address, workerThreads, MAX_QUEUED, STALL_MILLIS, Boolean.getBoolean("chatapp.server.allowAnonymous"));
+    }
+
+    /**
+     * @param maxQueuedBytes reply bytes a connection may have waiting before its command waits
+     * @param stallMillis    how long a command waits for the client to read before it is dropped
+     * @param allowAnonymous whether SEND, DELETE and INBOX work without a session
+     */
+    QuickChatServer(InetSocketAddress address, int workerThreads, int maxQueuedBytes, long stallMillis,
+                    boolean allowAnonymous) {
+        this(address, workerThreads, maxQueuedBytes, MAX_COMMANDS, stallMillis, allowAnonymous);
+    }
+
+    /** @param maxCommands commands a connection may have waiting before the server stops reading it */
+    QuickChatServer(InetSocketAddress address, int workerThreads, int maxQueuedBytes, int maxCommands,
+                    long stallMillis, boolean allowAnonymous) {
+        if (maxCommands < 1) throw new IllegalArgumentException("maxCommands must be at least 1");
+        this.address = address;
+        this.maxQueuedBytes = maxQueuedBytes;
+        this.maxCommands = maxCommands;
+        this.stallMillis = stallMillis;
+        this.allowAnonymous = allowAnonymous;
+        this.workers = Executors.newFixedThreadPool(workerThreads, r -> {
+            Thread t = new Thread(r, "quickchat-server-worker");
+            t.setDaemon(true);
+            return t;
+        });
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "quickchat-server-timer");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** Binds and starts the selector thread. */
+    public void start() throws IOException {
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.bind(address);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        thread = new Thread(this::run, "quickchat-server");
+        thread.setDaemon(true);
+        thread.start();
+        if (consuming.compareAndSet(false, true)) ChatApp1.mailboxes.attachConsumer(); // INBOX drains them
+    }
+
+    /** The bound port (useful when started on port 0). */
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    /** Blocks until the server is closed. */
+    public void join() throws InterruptedException {
+        thread.join();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        if (consuming.compareAndSet(true, false)) ChatApp1.mailboxes.detachConsumer();
+        workers.shutdownNow();
+        timer.shutdownNow();
+        if (selector != null) selector.wakeup();
+        if (thread != null && thread != Thread.currentThread()) {
+            try {
+                thread.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // ---------- selector thread ----------
+
+    private void run() {
+        try {
+            while (!closed) {
+                selector.select();
+                Connection c;
+                while ((c = wantWrite.poll()) != null) {
+                    if (c.key.isValid()) c.key.interestOps(c.key.interestOps() | SelectionKey.OP_WRITE);
+                }
+                while ((c = wantRead.poll()) != null) {
+                    if (c.key.isValid() && c.paused) c.parse();
+                }
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    try {
+                        if (!key.isValid()) continue;
+                        if (key.isAcceptable()) accept();
+                        if (key.isValid() && key.isReadable()) ((Connection) key.attachment()).read();
+                        if (key.isValid() && key.isWritable()) ((Connection) key.attachment()).write();
+                    } catch (IOException e) {
+                        if (key.attachment() != null) ((Connection) key.attachment()).close();
+                        else e.printStackTrace(); // accept failed
+                    }
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                try {
+                    key.channel().close();
+                } catch (IOException ignored) {
+                    // shutting down anyway
+                }
+            }
+            try {
+                selector.close();
+            } catch (IOException ignored) {
+                // shutting down anyway
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel ch;
+        while ((ch = server.accept()) != null) {
+            ch.configureBlocking(false);
+            Connection c = new Connection(ch);
+            c.key = ch.register(selector, SelectionKey.OP_READ, c);
+        }
+    }
+
+    // ---------- per connection ----------
+
+    // one input line waiting for a worker
+    private static final class Command {
+        final String line;
+
+        Command(String line) {
+            this.line = line;
+        }
+    }
+
+    // queued in place of a line longer than MAX_LINE
+    private static final Command LINE_TOO_LONG = new Command(null);
+
+    private final class Connection {
+        final SocketChannel channel;
+        SelectionKey key;
+        final ByteBuffer in = ByteBuffer.allocate(CHUNK);
+        final ByteArrayOutputStream line = new ByteArrayOutputStream();
+        final Queue<Command> commands = new ConcurrentLinkedQueue<>();
+        final AtomicInteger pending = new AtomicInteger(); // commands in commands
+        final AtomicBoolean scheduled = new AtomicBoolean();
+        final Queue<ByteBuffer> out = new ConcurrentLinkedQueue<>();
+        final AtomicLong queued = new AtomicLong(); // bytes in out
+        volatile boolean waiting;                     // a worker waits in awaitDrain
+        volatile boolean closeAfterWrite;
+        volatile boolean paused;                      // set by the selector thread: OP_READ is off
+        volatile Command held;                        // a SEND waiting for room in a full inbox
+        long holdDeadline;                            // worker thread only: when held runs anyway
+        boolean overflowed;                           // selector thread only: input is discarded
+        String session; // token after LOGIN or SESSION (worker thread only, one at a time)
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        // selector thread
+        void read() throws IOException {
+            int n = channel.read(in);
+            if (n < 0) {
+                close();
+                return;
+            }
+            parse();
+        }
+
+        // selector thread: splits buffered input into commands for a worker, up to maxCommands;
+        // input beyond that stays in the buffer and reading pauses until the worker catches up
+        void parse() {
+            boolean full, more;
+            do {
+                in.flip();
+                while (in.hasRemaining() && !overflowed && pending.get() < maxCommands && held == null) {
+                    byte b = in.get();
+                    if (b == '\n') {
+                        String cmd = new String(line.toByteArray(), StandardCharsets.UTF_8);
+                        line.reset();
+                        if (cmd.endsWith("\r")) cmd = cmd.substring(0, cmd.length() - 1);
+                        queue(new Command(cmd));
+                    } else if (line.size() >= MAX_LINE) {
+                        // answered in turn, after the commands already queued; later input is discarded
+                        line.reset();
+                        queue(LINE_TOO_LONG);
+                        overflowed = true;
+                    } else {
+                        line.write(b);
+                    }
+                }
+                more = in.hasRemaining() && !overflowed;
+                if (more) in.compact();
+                else in.clear();
+                paused = true; // published before the check, so drain() either sees it or is seen
+                full = backlogged();
+                paused = full;
+            } while (!full && more);
+            int ops = key.interestOps();
+            key.interestOps(full ? ops & ~SelectionKey.OP_READ : ops | SelectionKey.OP_READ);
+            schedule();
+        }
+
+        void queue(Command cmd) {
+            pending.incrementAndGet();
+            commands.add(cmd);
+        }
+
+        boolean backlogged() {
+            return pending.get() >= maxCommands || queued.get() > maxQueuedBytes || held != null;
+        }
+
+        void schedule() {
+            if ((held != null || !commands.isEmpty()) && scheduled.compareAndSet(false, true)) {
+                try {
+                    workers.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    close();
+                }
+            }
+        }
+
+        // worker thread: runs this connection's commands in order
+        void drain() {
+            try {
+                while (!closeAfterWrite && channel.isOpen()) {
+                    Command cmd = held;
+                    if (cmd != null) {
+                        if (System.nanoTime() - holdDeadline < 0 && mustWaitForRoom(cmd)) break; // woken, but no room yet
+                        held = null;
+                        if (paused) requestRead();
+                    } else {
+                        if ((cmd = commands.poll()) == null) break;
+                        if (pending.decrementAndGet() < maxCommands && paused) requestRead();
+                        if (mustWaitForRoom(cmd)) {
+                            long timeout = ChatApp1.mailboxes.getBlockTimeoutMillis();
+                            held = cmd;
+                            holdDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+                            timer.schedule(this::schedule, timeout, TimeUnit.MILLISECONDS);
+                            break;
+                        }
+                    }
+                    Reply reply = new Reply(this);
+                    try {
+                        if (cmd == LINE_TOO_LONG) {
+                            reply.status("ERR line too long");
+                            reply.quit = true;
+                        } else {
+                            execute(this, cmd.line, reply);
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        if (!channel.isOpen()) break; // dropped while the reply was written
+                        reply.status("ERR " + e.getMessage());
+                    }
+                    try {
+                        reply.close();
+                    } catch (IOException e) {
+                        break;
+                    }
+                    if (reply.quit) {
+                        closeAfterWrite = true;
+                        requestWrite(); // the reply may already be flushed; write() then closes
+                    }
+                }
+            } catch (RejectedExecutionException e) {
+                close(); // shutting down: the timer is gone
+            } finally {
+                scheduled.set(false);
+            }
+            Command blocked = held;
+            // registered only now that scheduled is clear, so a wake-up cannot be lost in between
+            if (blocked != null) ChatApp1.mailboxes.whenRoom(sendRecipient(blocked.line), this::schedule);
+            else if (!closeAfterWrite && channel.isOpen() && !commands.isEmpty()) schedule();
+        }
+
+        // under BLOCK, whether cmd is a SEND to an inbox that is full right now
+        boolean mustWaitForRoom(Command cmd) {
+            if (cmd == LINE_TOO_LONG || ChatApp1.mailboxes.getPolicy() != Mailbox.Backpressure.BLOCK
+                    || !ChatApp1.mailboxes.hasConsumer()) return false;
+            String recipient = sendRecipient(cmd.line);
+            return recipient != null && !ChatApp1.mailboxes.hasRoom(recipient);
+        }
+
+        // any thread
+        void send(String text) {
+            ByteBuffer buf = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+            queued.addAndGet(buf.remaining());
+            out.add(buf);
+            requestWrite();
+        }
+
+        // worker thread: waits while more than maxQueuedBytes are unsent; drops a client that
+        // reads nothing for stallMillis meanwhile
+        void awaitDrain() throws IOException {
+            if (queued.get() <= maxQueuedBytes) return;
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(stallMillis);
+            synchronized (this) {
+                waiting = true;
+                try {
+                    long before = queued.get();
+                    while (queued.get() > maxQueuedBytes && channel.isOpen()) {
+                        long now = queued.get();
+                        if (now < before) { // the client is reading, just slowly: give it more time
+                            before = now;
+                            deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(stallMillis);
+                        }
+                        long left = deadline - System.nanoTime();
+                        if (left <= 0) {
+                            close();
+                            break;
+                        }
+                        TimeUnit.NANOSECONDS.timedWait(this, left);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    close();
+                } finally {
+                    waiting = false;
+                }
+            }
+            if (!channel.isOpen()) throw new IOException("connection closed: replies were not read");
+        }
+
+        void requestWrite() {
+            wantWrite.add(this);
+            selector.wakeup();
+        }
+
+        // any thread: asks the selector thread to parse what is buffered and read again if it can
+        void requestRead() {
+            wantRead.add(this);
+            selector.wakeup();
+        }
+
+        // selector thread
+        void write() throws IOException {
+            ByteBuffer buf;
+            boolean drained = true;
+            while ((buf = out.peek()) != null) {
+                queued.addAndGet(-channel.write(buf));
+                if (buf.hasRemaining()) {
+                    drained = false;
+                    break;
+                }
+                out.poll();
+            }
+            if (waiting) {
+                synchronized (this) {
+                    notifyAll(); // progress, even if still over the limit: restarts the stall clock
+                }
+            }
+            if (paused && !backlogged()) parse();
+            if (!drained) return;
+            if (closeAfterWrite) {
+                close();
+                return;
+            }
+            int read = paused ? 0 : SelectionKey.OP_READ;
+            key.interestOps(read);
+            // a worker may have queued more between the last peek and the interest change
+            if (!out.isEmpty()) key.interestOps(read | SelectionKey.OP_WRITE);
+        }
+
+        // any thread
+        void close() {
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // already gone
+            }
+            commands.clear();
+            out.clear();
+            synchronized (this) {
+                notifyAll(); // a worker waiting in awaitDrain gives up at once
+            }
+        }
+    }
+
+    /** Result lines of one reply, dot-stuffed and sent in chunks as they are written. */
+    private static final class Reply extends Writer {
+        private final Connection c;
+        private final StringBuilder buf = new StringBuilder();
+        private boolean lineStart = true;
+        private boolean statusSent;
+        boolean quit;
+
+        Reply(Connection c) {
+            this.c = c;
+        }
+
+        void status(String status) {
+            if (statusSent) return;
+            statusSent = true;
+            buf.append(status).append('\n');
+        }
+
+        @Override
+        public void write(char[] chars, int off, int len) throws IOException {
+            status("OK");
+            for (int i = off; i < off + len; i++) {
+                char ch = chars[i];
+                if (lineStart && ch == '.') buf.append('.');
+                buf.append(ch);
+                lineStart = ch == '\n';
+            }
+            if (buf.length() >= CHUNK) flush();
+        }
+
+        /** Writes text as result lines, ending it with a newline if it has none. */
+        void lines(String text) throws IOException {
+            write(text);
+            if (!lineStart) write("\n");
+        }
+
+        @Override
+        public void write(String s) throws IOException {
+            write(s.toCharArray(), 0, s.length());
+        }
+
+        /** Queues what is buffered, then waits while the connection has too much unsent. */
+        @Override
+        public void flush() throws IOException {
+            if (buf.length() == 0) return;
+            c.send(buf.toString());
+            buf.setLength(0);
+            c.awaitDrain();
+        }
+
+        @Override
+        public void close() throws IOException {
+            status("OK");
+            if (!lineStart) buf.append('\n');
+            buf.append(".\n");
+            flush();
+        }
+    }
+
+    // ---------- commands ----------
+
+    private void execute(Connection c, String cmd, Reply reply) throws IOException {
+        String[] parts = cmd.split(" ", 2);
+        String verb = parts[0].toUpperCase(Locale.ROOT);
+        String arg = parts.length > 1 ? parts[1].trim() : "";
+        String user = null;
+        if (c.session != null && !verb.equals("LOGIN") && !verb.equals("SESSION") && !verb.equals("QUIT")) {
+            user = ChatApp1.sessions.usernameFor(c.session);
+            if (user == null) {
+                c.session = null;
+                reply.status("ERR session expired");
+                return;
+            }
+        }
+        if (user == null && !allowAnonymous && (verb.equals("SEND") || verb.equals("DELETE") || verb.equals("INBOX"))) {
+            reply.status("ERR login required");
+            return;
+        }
+        switch (verb) {
+            case "PING":
+                reply.lines("PONG");
+                break;
+            case "LOGIN": {
+                String[] a = arg.split(" ", 2);
+                if (a.length < 2) {
+                    reply.status("ERR usage: LOGIN username password");
+                    break;
+                }
+                if (!new ChatApp1.Login().loginUser(a[0], a[1])) {
+                    reply.status("ERR Username or password incorrect, please try again.");
+                    break;
+                }
+                if (c.session != null) ChatApp1.sessions.invalidate(c.session);
+                c.session = ChatApp1.sessions.open(a[0]); // IllegalStateException (too many) -> ERR
+                reply.lines("Token: " + c.session);
+                break;
+            }
+            case "SESSION": {
+                String name = ChatApp1.sessions.usernameFor(arg);
+                if (name == null) {
+                    reply.status("ERR unknown or expired session");
+                    break;
+                }
+                c.session = arg;
+                reply.lines("Welcome " + name + ".");
+                break;
+            }
+            case "WHOAMI":
+                if (user == null) reply.status("ERR not logged in");
+                else reply.lines(user);
+                break;
+            case "LOGOUT":
+                if (user == null) {
+                    reply.status("ERR not logged in");
+                    break;
+                }
+                ChatApp1.sessions.invalidate(c.session);
+                c.session = null;
+                reply.lines("Logged out.");
+                break;
+            case "SEND": {
+                String[] a = arg.split(" ", 3);
+                if (a.length < 3) {
+                    reply.status("ERR usage: SEND sender recipient text");
+                    break;
+                }
+                if (user != null && !user.equals(a[0])) {
+                    reply.status("ERR logged in as " + user + ", cannot send as " + a[0]);
+                    break;
+                }
+                ChatApp1.Message m = ChatApp1.newMessage(a[0], a[1], a[2]); // IllegalArgumentException -> ERR
+                String sent = m.sentMessage(1);
+                reply.lines("MessageID: " + m.getMessageID() + "\nMessageHash: " + m.getMessageHash());
+                if (ChatApp1.SENT_NOT_DELIVERED.equals(sent)) reply.lines("Inbox: full, not delivered");
+                break;
+            }
+            case "ID":
+                reply.lines(ChatApp1.searchByMessageID(arg));
+                break;
+            case "RECIPIENT":
+                if (arg.isEmpty()) {
+                    reply.status("ERR usage: RECIPIENT number");
+                    break;
+                }
+                reply.lines(ChatApp1.searchByRecipient(arg));
+                break;
+            case "DELETE": {
+                // the owner check runs under the store's write lock, together with the removal
+                String owner = user;
+                boolean[] refused = new boolean[1];
+                ChatApp1.Message m = ChatApp1.deleteByMessageHash(arg, found -> {
+                    refused[0] = owner != null && !owner.equals(found.getSender());
+                    return !refused[0];
+                });
+                if (m == null) reply.status("ERR Message hash not found.");
+                else if (refused[0]) reply.status("ERR logged in as " + user + ", cannot delete a message sent by " + m.getSender());
+                else reply.lines("Message deleted successfully.");
+                break;
+            }
+            case "LONGEST":
+                reply.lines(ChatApp1.displayLongestSentMessage());
+                break;
+            case "REPORT":
+                // streamed to the socket a chunk at a time, waiting for the client when it lags
+                if (ChatApp1.reports.write(ReportEngine.Report.ALL_SENT, reply) == 0) {
+                    reply.lines(ReportEngine.Report.ALL_SENT.getEmptyText());
+                }
+                break;
+            case "SEARCH": {
+                TextIndex.Result result = ChatApp1.textIndex.search(arg, 0, 20);
+                reply.lines("Matches: " + result.getTotal());
+                for (ChatApp1.Message m : result.getHits()) {
+                    reply.lines("MessageID: " + m.getMessageID() + " | Recipient: " + m.getRecipient()
+                            + " | Message: " + m.getMessageText());
+                }
+                break;
+            }
+            case "INBOX": {
+                String[] a = arg.split(" ", 2);
+                if (a[0].isEmpty()) {
+                    reply.status("ERR usage: INBOX number [max]");
+                    break;
+                }
+                if (user != null && !ownNumber(user, a[0])) {
+                    reply.status("ERR logged in as " + user + ", cannot read the inbox of " + a[0]);
+                    break;
+                }
+                int max = a.length > 1 ? Integer.parseInt(a[1].trim()) : 100;
+                for (ChatApp1.Message m : ChatApp1.mailboxes.drain(a[0], max)) {
+                    reply.lines("MessageID: " + m.getMessageID() + "\nSender: " + m.getSender()
+                            + "\nMessage: " + m.getMessageText());
+                }
+                break;
+            }
+            case "QUIT":
+                reply.lines("Bye.");
+                reply.quit = true;
+                break;
+            default:
+                reply.status("ERR unknown command: " + parts[0]);
+        }
+    }
+
+    // the recipient of a SEND command line (split as execute does), or null for anything else
+    private static String sendRecipient(String cmd) {
+        String[] parts = cmd.split(" ", 2);
+        if (parts.length < 2 || !parts[0].equalsIgnoreCase("SEND")) return null;
+        String[] a = parts[1].trim().split(" ", 3);
+        return a.length < 3 ? null : a[1];
+    }
+
+    // whether number is the phone username registered with
+    private static boolean ownNumber(String username, String number) {
+        ChatApp1.User u = ChatApp1.Login.users.findByUsername(username);
+        return u != null && u.getPhone() != null
+                && RecipientIndex.normalize(u.getPhone()).equals(RecipientIndex.normalize(number));
+    }
+}
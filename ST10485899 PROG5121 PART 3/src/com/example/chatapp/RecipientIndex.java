@@ -0,0 +1,86 @@
+package com.example.chatapp;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+/**
+ * RecipientIndex - recipient number -> posting list of that recipient's sent messages.
+ *
+ * Numbers are normalized (spaces, dashes, dots and brackets dropped) so "+27 83 123 4567" and
+ * "+27831234567" share one posting list. Each posting list is ordered by send sequence, so a
+ * query costs O(log k + results) for a recipient with k messages, whatever the total number of
+ * sent messages, and can be read a page at a time.
+ */
+public class RecipientIndex implements MessageIndex {
+
+    // updates come one at a time from the store's writer; queries take no lock
+    private final ConcurrentHashMap<String, ConcurrentSkipListMap<Long, ChatApp1.Message>> postings =
+            new ConcurrentHashMap<>();
+
+    public static String normalize(String phone) {
+        if (phone == null) return "";
+        StringBuilder sb = new StringBuilder(phone.length());
+        for (int i = 0; i < phone.length(); i++) {
+            char c = phone.charAt(i);
+            if (c == ' ' || c == '-' || c == '.' || c == '(' || c == ')') continue;
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    // ---------- MessageIndex ----------
+
+    @Override
+    public void added(ChatApp1.Message m, long seq) {
+        postings.computeIfAbsent(normalize(m.getRecipient()), k -> new ConcurrentSkipListMap<>()).put(seq, m);
+    }
+
+    @Override
+    public void removed(ChatApp1.Message m, long seq) {
+        String key = normalize(m.getRecipient());
+        ConcurrentSkipListMap<Long, ChatApp1.Message> list = postings.get(key);
+        if (list == null) return;
+        list.remove(seq);
+        if (list.isEmpty()) postings.remove(key, list);
+    }
+
+    @Override
+    public void cleared() {
+        postings.clear();
+    }
+
+    // ---------- queries ----------
+
+    /** O(k) for k messages to recipient (the posting list is a skip list). */
+    public int count(String recipient) {
+        ConcurrentSkipListMap<Long, ChatApp1.Message> list = postings.get(normalize(recipient));
+        return list == null ? 0 : list.size();
+    }
+
+    /** Up to limit messages to recipient sent after the cursor, oldest first. */
+    public MessagePage page(String recipient, long after, int limit) {
+        List<ChatApp1.Message> out = new ArrayList<>(Math.min(limit, 64));
+        ConcurrentSkipListMap<Long, ChatApp1.Message> list = postings.get(normalize(recipient));
+        if (list == null) return new MessagePage(out, after, false);
+        long cursor = after;
+        Iterator<Map.Entry<Long, ChatApp1.Message>> it = list.tailMap(after, false).entrySet().iterator();
+        while (out.size() < limit && it.hasNext()) {
+            Map.Entry<Long, ChatApp1.Message> e = it.next();
+            out.add(e.getValue());
+            cursor = e.getKey();
+        }
+        return new MessagePage(out, cursor, it.hasNext());
+    }
+
+    /** Streams every message to recipient, oldest first, a page at a time. */
+    public void forEach(String recipient, Consumer<ChatApp1.Message> action) {
+        long cursor = MessagePage.START;
+        MessagePage page;
+        do {
+            page = page(recipient, cursor, 256);
+            for (ChatApp1.Message m : page.getMessages()) action.accept(m);
+            cursor = page.getCursor();
+        } while (page.hasMore());
+    }
+}
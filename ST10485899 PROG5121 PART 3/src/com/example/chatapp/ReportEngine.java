@@ -0,0 +1,130 @@
+package com.example.chatapp;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+
+/**
+ * ReportEngine - writes the sent-message reports a line at a time.
+ *
+ * Instead of building one String holding every message, a report is written straight to a
+ * Writer (a file export, a socket, a StringWriter for a dialog) page by page, so memory use does
+ * not grow with the history. Pages can also be read on their own with a cursor: the sequence
+ * number of the last message seen, or the hash of that message ("next 100 after hash X").
+ */
+public class ReportEngine {
+
+    /** The two reports the menu offers, with their line layout and empty text. */
+    public enum Report {
+        ALL_SENT("No sent messages to report.") {
+            @Override
+            void writeLine(ChatApp1.Message m, Writer out) throws IOException {
+                out.append("MessageHash: ").append(m.getMessageHash())
+                   .append(" | MessageID: ").append(m.getMessageID())
+                   .append(" | Sender: ").append(safe(m.getSender()))
+                   .append(" | Recipient: ").append(safe(m.getRecipient()))
+                   .append(" | Message: ").append(m.getMessageText())
+                   .append("\n");
+            }
+        },
+        SENDER_RECIPIENT("No sent messages available.") {
+            @Override
+            void writeLine(ChatApp1.Message m, Writer out) throws IOException {
+                out.append("Sender: ").append(m.getSender())
+                   .append(" | Recipient: ").append(m.getRecipient())
+                   .append("\n");
+            }
+        };
+
+        private final String emptyText;
+
+        Report(String emptyText) {
+            this.emptyText = emptyText;
+        }
+
+        public String getEmptyText() { return emptyText; }
+
+        abstract void writeLine(ChatApp1.Message m, Writer out) throws IOException;
+    }
+
+    private static final int PAGE_SIZE = 256;
+
+    private final PagedMessages store;
+
+    public ReportEngine(PagedMessages store) {
+        this.store = store;
+    }
+
+    // ---------- streaming ----------
+
+    /** Writes the whole report to out, one page of messages at a time; returns the line count. */
+    public long write(Report report, Writer out) throws IOException {
+        long start = System.nanoTime();
+        long lines = 0;
+        long cursor = MessagePage.START;
+        MessagePage page;
+        do {
+            page = store.page(cursor, PAGE_SIZE);
+            for (ChatApp1.Message m : page.getMessages()) {
+                report.writeLine(m, out);
+                lines++;
+            }
+            cursor = page.getCursor();
+        } while (page.hasMore());
+        out.flush();
+        Metrics.GLOBAL.record(Metrics.Op.REPORT, start);
+        return lines;
+    }
+
+    /** Exports the report to a UTF-8 file (written beside it first, then moved into place). */
+    public long export(Report report, String filename) throws IOException {
+        Path target = Paths.get(filename);
+        Path tmp = Paths.get(filename + ".tmp");
+        long lines;
+        try (Writer out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            lines = write(report, out);
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+        return lines;
+    }
+
+    // ---------- paging ----------
+
+    /** Up to limit messages after the cursor (MessagePage.START for the first page). */
+    public MessagePage page(long after, int limit) {
+        return store.page(after, limit);
+    }
+
+    /** Up to limit messages sent after the one with this hash; null starts at the beginning. */
+    public MessagePage pageAfterHash(String hash, int limit) {
+        if (hash == null) return page(MessagePage.START, limit);
+        ChatApp1.Message m = store.findFirstByHash(hash);
+        if (m == null) return new MessagePage(new ArrayList<>(), MessagePage.START, false);
+        return page(store.seqOf(m), limit);
+    }
+
+    /** Renders just the given page, e.g. for one dialog of a paged view. */
+    public String render(Report report, MessagePage page) {
+        StringWriter out = new StringWriter();
+        try {
+            for (ChatApp1.Message m : page.getMessages()) report.writeLine(m, out);
+        } catch (IOException e) {
+            // StringWriter does not throw
+        }
+        return out.toString();
+    }
+
+    /** The full report as one String; the empty text if there are no messages. */
+    public String toString(Report report) {
+        StringWriter out = new StringWriter();
+        try {
+            if (write(report, out) == 0) return report.getEmptyText();
+        } catch (IOException e) {
+            // StringWriter does not throw
+        }
+        return out.toString();
+    }
+
+    private static String safe(String s) { return s == null ? "" : s; }
+}
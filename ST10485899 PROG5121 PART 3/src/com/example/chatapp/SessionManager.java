@@ -0,0 +1,194 @@
+package com.example.chatapp;
+
+import java.io.Closeable;
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.LongSupplier;
+
+/**
+ * SessionManager - logged-in users, as opaque tokens handed out once the password was checked.
+ *
+ * Tokens are 32 random bytes (URL-safe Base64) from SecureRandom and carry nothing about the
+ * user. They map to their Session in a ConcurrentHashMap, so checking a token on each request is
+ * one hash lookup instead of a password check. A session ends when it has not been used for the
+ * idle timeout, or when it reaches its maximum age however busy it is; an expired token is
+ * refused at lookup even if it has not been swept yet.
+ *
+ * Expired sessions are removed by a sweeper thread driving a hashed timer wheel: WHEEL_SLOTS
+ * queues, one per tick, and each session sits in the slot its deadline falls in. Using a session
+ * only moves its deadline, not the session; when the sweeper reaches the slot it re-files the
+ * sessions whose deadline has moved on and drops the rest. A sweep therefore only touches
+ * the sessions due around that tick, and memory stays bounded by how many sessions can be live
+ * at once (capped at maxSessions) rather than by how many were ever opened.
+ */
+public class SessionManager implements Closeable {
+
+    public static final int WHEEL_SLOTS = 512;
+    private static final int TOKEN_BYTES = 32;
+
+    /** One logged-in user. */
+    public static final class Session {
+        private final String token;
+        private final String username;
+        private final long createdMillis;
+        private volatile long lastUsedMillis;
+
+        Session(String token, String username, long now) {
+            this.token = token;
+            this.username = username;
+            this.createdMillis = now;
+            this.lastUsedMillis = now;
+        }
+
+        public String getToken() { return token; }
+        public String getUsername() { return username; }
+        public long getCreatedMillis() { return createdMillis; }
+        public long getLastUsedMillis() { return lastUsedMillis; }
+    }
+
+    private final long idleMillis;
+    private final long maxAgeMillis;
+    private final int maxSessions;
+    private final long tickMillis;
+    private final LongSupplier clock;
+
+    private final SecureRandom random = new SecureRandom();
+    private final Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+    private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<>();
+    private final List<Queue<Session>> wheel = new ArrayList<>(WHEEL_SLOTS);
+    private long nextTick = -1; // first tick not swept yet (guarded by this)
+    private ScheduledExecutorService sweeper;
+
+    /**
+     * @param idleMillis   a session unused for this long ends
+     * @param maxAgeMillis a session ends this long after it was opened, used or not
+     * @param maxSessions  open() refuses new sessions while this many are live
+     * @param tickMillis   how often the sweeper runs, and the width of one wheel slot
+     * @param clock        current time in milliseconds (monotonic)
+     */
+    public SessionManager(long idleMillis, long maxAgeMillis, int maxSessions, long tickMillis, LongSupplier clock) {
+        if (idleMillis < 1 || maxAgeMillis < 1 || tickMillis < 1) throw new IllegalArgumentException("timeouts must be positive");
+        if (maxSessions < 1) throw new IllegalArgumentException("maxSessions must be at least 1");
+        this.idleMillis = idleMillis;
+        this.maxAgeMillis = maxAgeMillis;
+        this.maxSessions = maxSessions;
+        this.tickMillis = tickMillis;
+        this.clock = clock;
+        for (int i = 0; i < WHEEL_SLOTS; i++) wheel.add(new ConcurrentLinkedQueue<>());
+    }
+
+    /**
+     * Reads chatapp.session.idleSeconds, chatapp.session.maxSeconds, chatapp.session.max and
+     * chatapp.session.tickMs, falling back to 1800 / 43200 / 100000 / 1000, and starts the sweeper.
+     */
+    public static SessionManager fromSystemProperties() {
+        SessionManager manager = new SessionManager(
+                TimeUnit.SECONDS.toMillis(Long.getLong("chatapp.session.idleSeconds", 1800L)),
+                TimeUnit.SECONDS.toMillis(Long.getLong("chatapp.session.maxSeconds", 43200L)),
+                Integer.getInteger("chatapp.session.max", 100000),
+                Long.getLong("chatapp.session.tickMs", 1000L),
+                () -> TimeUnit.NANOSECONDS.toMillis(System.nanoTime()));
+        manager.start();
+        return manager;
+    }
+
+    // ---------- sessions ----------
+
+    /**
+     * Opens a session for username, whose password the caller has already checked, and returns
+     * its token. Throws IllegalStateException if maxSessions sessions are live; expired ones the
+     * sweeper has not reached yet are swept first, so they never count against the limit.
+     */
+    public String open(String username) {
+        if (username == null || username.isEmpty()) throw new IllegalArgumentException("Missing username.");
+        if (sessions.size() >= maxSessions) {
+            sweep();
+            if (sessions.size() >= maxSessions) throw new IllegalStateException("Too many active sessions, please try again later.");
+        }
+        byte[] bytes = new byte[TOKEN_BYTES];
+        random.nextBytes(bytes);
+        Session s = new Session(encoder.encodeToString(bytes), username, clock.getAsLong());
+        sessions.put(s.token, s);
+        schedule(s, deadline(s) / tickMillis);
+        return s.token;
+    }
+
+    /** The live session for token (marking it used), or null if the token is unknown or expired. */
+    public Session get(String token) {
+        Session s = token == null ? null : sessions.get(token);
+        if (s == null) return null;
+        long now = clock.getAsLong();
+        if (deadline(s) <= now) {
+            sessions.remove(token, s);
+            return null;
+        }
+        if (s.lastUsedMillis != now) s.lastUsedMillis = now;
+        return s;
+    }
+
+    /** The user logged in with token, or null if the token is unknown or expired. */
+    public String usernameFor(String token) {
+        Session s = get(token);
+        return s == null ? null : s.username;
+    }
+
+    /** Ends the session (logout); false if it was not live. */
+    public boolean invalidate(String token) {
+        return token != null && sessions.remove(token) != null; // its wheel entry is dropped when swept
+    }
+
+    /** Live sessions, including expired ones the sweeper has not reached yet. */
+    public int size() {
+        return sessions.size();
+    }
+
+    // ---------- timer wheel ----------
+
+    private long deadline(Session s) {
+        return Math.min(s.lastUsedMillis + idleMillis, s.createdMillis + maxAgeMillis);
+    }
+
+    private void schedule(Session s, long tick) {
+        wheel.get((int) Math.floorMod(tick, (long) WHEEL_SLOTS)).add(s);
+    }
+
+    /** Sweeps every slot up to the current tick; run by the sweeper thread, callable directly. */
+    public synchronized void sweep() {
+        long now = clock.getAsLong();
+        long tick = now / tickMillis;
+        if (nextTick < 0 || tick - nextTick >= WHEEL_SLOTS) nextTick = tick - WHEEL_SLOTS + 1; // first run, or fell behind: every slot once
+        List<Session> refile = new ArrayList<>();
+        for (; nextTick <= tick; nextTick++) {
+            Queue<Session> slot = wheel.get((int) Math.floorMod(nextTick, (long) WHEEL_SLOTS));
+            Session s;
+            while ((s = slot.poll()) != null) {
+                if (sessions.get(s.token) != s) continue;         // logged out, or already expired at lookup
+                if (deadline(s) <= now) sessions.remove(s.token, s);
+                else refile.add(s);                                 // used since it was filed, or due on a later turn
+            }
+        }
+        // nextTick is now the next slot to sweep; nothing goes behind it
+        for (Session s : refile) schedule(s, Math.max(deadline(s) / tickMillis, nextTick));
+    }
+
+    /** Starts the sweeper thread, which sweeps once per tick. */
+    public synchronized void start() {
+        if (sweeper != null) return;
+        sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "quickchat-sessions");
+            t.setDaemon(true);
+            return t;
+        });
+        sweeper.scheduleAtFixedRate(this::sweep, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /** Stops the sweeper and ends every session. */
+    @Override
+    public synchronized void close() {
+        if (sweeper != null) sweeper.shutdownNow();
+        sweeper = null;
+        sessions.clear();
+        for (Queue<Session> slot : wheel) slot.clear();
+    }
+}
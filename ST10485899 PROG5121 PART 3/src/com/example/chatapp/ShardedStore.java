@@ -0,0 +1,659 @@
+package com.example.chatapp;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.*;
+
+/**
+ * ShardedStore - the sent messages (ChatApp1.store) partitioned across N shards by recipient.
+ *
+ * A message lives in shard floorMod(hash(normalized recipient), N). Every shard has its own
+ * MessageStore (so its own write lock), recipient and length indexes, log, segment, compactor and
+ * writer thread, so sends to different shards share no lock and no file. Shard 0 keeps
+ * messages.json and messages.seg (and the writer it is given, which the drafts use as well);
+ * shard i has messages-i.json and messages-i.seg. chatapp.shards sets N; the default of 1 is
+ * the single-store layout.
+ *
+ * Per-recipient queries read one shard. Queries over all messages (page() and so the reports and
+ * the browser, longest and top K, the length order, ID and hash lookups) fan out to every shard
+ * in parallel on a ForkJoinPool and merge the results. All shards draw sequence numbers from one
+ * counter, so merged results keep the global send order, and every record carries its number
+ * ("Seq") so that order survives a restart. The full-text index is one index registered on every
+ * shard, because its ranking counts documents over all messages.
+ *
+ * Shards commit independently, so a page read while sends are in flight can step past a message
+ * another shard had not committed yet; reading again from an earlier cursor (a refresh) shows it.
+ *
+ * As a List it is append-only: add, addAll and clear change it, get(i) reads a merged snapshot
+ * that is rebuilt after a change, and iteration is in send order. Deletes go through
+ * removeFirstByHash.
+ */
+public class ShardedStore extends AbstractList<ChatApp1.Message> implements PagedMessages, Closeable {
+
+    public static final String SEQ = "Seq";
+
+    /** One partition: its store, indexes and files. */
+    public static final class Shard {
+        final int index;
+        final MessageStore store;
+        final RecipientIndex recipients = new RecipientIndex();
+        final LengthIndex lengths = new LengthIndex();
+        final MessageLog log;
+        final String segmentFile;
+        final GroupCommitWriter writer;
+        final LogCompactor compactor;
+
+        Shard(int index, AtomicLong sequence, MessageLog log, String segmentFile, GroupCommitWriter writer) {
+            this.index = index;
+            this.store = new MessageStore(sequence);
+            this.log = log;
+            this.segmentFile = segmentFile;
+            this.writer = writer;
+            this.compactor = LogCompactor.fromSystemProperties(log, writer, segmentFile);
+            store.addIndex(recipients);
+            store.addIndex(lengths);
+        }
+
+        public int getIndex() { return index; }
+        public MessageStore getStore() { return store; }
+        public RecipientIndex getRecipients() { return recipients; }
+        public LengthIndex getLengths() { return lengths; }
+        public MessageLog getLog() { return log; }
+        public String getSegmentFile() { return segmentFile; }
+        public GroupCommitWriter getWriter() { return writer; }
+        public LogCompactor getCompactor() { return compactor; }
+    }
+
+    private final Shard[] shards;
+    private final String messagesFile;
+    private final String segmentFile;
+    private final ForkJoinPool pool;
+    private final AtomicLong sequence = new AtomicLong();
+    private volatile Positions positions; // get(int) snapshot, valid while the shard versions add up to it
+
+    // the messages in send order as of one sum of shard versions
+    private static final class Positions {
+        final long version;
+        final ChatApp1.Message[] messages;
+
+        Positions(long version, ChatApp1.Message[] messages) {
+            this.version = version;
+            this.messages = messages;
+        }
+    }
+
+    public ShardedStore(int shardCount, String messagesFile, String segmentFile, GroupCommitWriter writer) {
+        this(shardCount, messagesFile, segmentFile, writer, ForkJoinPool.commonPool());
+    }
+
+    /** Shard 0 writes through writer; every other shard gets a writer of its own with the same policy. */
+    public ShardedStore(int shardCount, String messagesFile, String segmentFile, GroupCommitWriter writer,
+                        ForkJoinPool pool) {
+        if (shardCount < 1) throw new IllegalArgumentException("shardCount must be at least 1");
+        this.messagesFile = messagesFile;
+        this.segmentFile = segmentFile;
+        this.pool = pool;
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(i, sequence, new MessageLog(fileOf(messagesFile, i)), fileOf(segmentFile, i),
+                    i == 0 ? writer : new GroupCommitWriter(writer.getPolicy()));
+        }
+    }
+
+    /** Reads chatapp.shards, falling back to 1. */
+    public static ShardedStore fromSystemProperties(String messagesFile, String segmentFile, GroupCommitWriter writer) {
+        return new ShardedStore(Integer.getInteger("chatapp.shards", 1), messagesFile, segmentFile, writer);
+    }
+
+    /** filename for shard 0, "messages-i.json" for shard i of "messages.json". */
+    static String fileOf(String filename, int shard) {
+        if (shard == 0) return filename;
+        int dot = filename.lastIndexOf('.');
+        int slash = Math.max(filename.lastIndexOf('/'), filename.lastIndexOf(File.separatorChar));
+        if (dot <= slash) return filename + "-" + shard;
+        return filename.substring(0, dot) + "-" + shard + filename.substring(dot);
+    }
+
+    public int shardCount() { return shards.length; }
+
+    public Shard shard(int i) { return shards[i]; }
+
+    public Shard shardFor(String recipient) {
+        return shards[Math.floorMod(RecipientIndex.normalize(recipient).hashCode(), shards.length)];
+    }
+
+    public Shard shardOf(ChatApp1.Message m) {
+        return shardFor(m.getRecipient());
+    }
+
+    /** Registers one secondary index on every shard (the full-text index). */
+    public void addIndex(MessageIndex index) {
+        for (Shard shard : shards) shard.store.addIndex(index);
+    }
+
+    /** The log record of a stored message: its fields and its sequence number. */
+    public Map<String,String> toRecord(ChatApp1.Message m) {
+        return toRecord(m, seqOf(m));
+    }
+
+    private static Map<String,String> toRecord(ChatApp1.Message m, long seq) {
+        Map<String,String> record = ChatApp1.toRecord(m);
+        if (seq >= 0) record.put(SEQ, Long.toString(seq));
+        return record;
+    }
+
+    // ---------- List ----------
+
+    @Override
+    public int size() {
+        int n = 0;
+        for (Shard shard : shards) n += shard.store.size();
+        return n;
+    }
+
+    @Override
+    public boolean add(ChatApp1.Message m) {
+        return shardOf(m).store.add(m);
+    }
+
+    /**
+     * Adds the messages under consecutive sequence numbers, so they keep the order given across
+     * shards (bulk imports); each shard takes its part under one hold of its lock.
+     */
+    @Override
+    public boolean addAll(Collection<? extends ChatApp1.Message> messages) {
+        if (messages.isEmpty()) return false;
+        if (shards.length == 1) return shards[0].store.addAll(messages);
+        long seq = sequence.getAndAdd(messages.size());
+        Map<Shard, List<ChatApp1.Message>> parts = new LinkedHashMap<>();
+        Map<Shard, List<Long>> seqs = new HashMap<>();
+        for (ChatApp1.Message m : messages) {
+            Shard shard = shardOf(m);
+            parts.computeIfAbsent(shard, s -> new ArrayList<>()).add(m);
+            seqs.computeIfAbsent(shard, s -> new ArrayList<>()).add(seq++);
+        }
+        for (Map.Entry<Shard, List<ChatApp1.Message>> e : parts.entrySet()) {
+            List<Long> taken = seqs.get(e.getKey());
+            long[] numbers = new long[taken.size()];
+            for (int i = 0; i < numbers.length; i++) numbers[i] = taken.get(i);
+            e.getKey().store.restoreAll(e.getValue(), numbers);
+        }
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        for (Shard shard : shards) shard.store.clear();
+    }
+
+    @Override
+    public ChatApp1.Message get(int index) {
+        if (shards.length == 1) return shards[0].store.get(index);
+        Positions p = positions;
+        long v = version();
+        if (p == null || p.version != v) {
+            List<ChatApp1.Message> all = new ArrayList<>(size());
+            for (ChatApp1.Message m : this) all.add(m);
+            p = new Positions(v, all.toArray(new ChatApp1.Message[0]));
+            positions = p;
+        }
+        if (index < 0 || index >= p.messages.length) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + p.messages.length);
+        }
+        return p.messages[index];
+    }
+
+    private long version() {
+        long v = 0;
+        for (Shard shard : shards) v += shard.store.version();
+        return v;
+    }
+
+    /** Every shard's messages merged into send order; weakly consistent, like MessageStore's. */
+    @Override
+    public Iterator<ChatApp1.Message> iterator() {
+        if (shards.length == 1) return shards[0].store.iterator();
+        PriorityQueue<Ranked> heads = new PriorityQueue<>(Comparator.comparingLong((Ranked r) -> r.seq));
+        List<Iterator<ChatApp1.Message>> its = new ArrayList<>(shards.length);
+        for (Shard shard : shards) {
+            its.add(shard.store.iterator());
+            offerNext(heads, its.get(its.size() - 1), shard.index);
+        }
+        return new Iterator<ChatApp1.Message>() {
+            @Override
+            public boolean hasNext() { return !heads.isEmpty(); }
+
+            @Override
+            public ChatApp1.Message next() {
+                Ranked r = heads.poll();
+                if (r == null) throw new NoSuchElementException();
+                offerNext(heads, its.get(r.source), r.source);
+                return r.message;
+            }
+        };
+    }
+
+    private void offerNext(PriorityQueue<Ranked> heads, Iterator<ChatApp1.Message> it, int shard) {
+        while (it.hasNext()) {
+            ChatApp1.Message m = it.next();
+            long seq = shards[shard].store.seqOf(m);
+            if (seq >= 0) { // -1: deleted since the iterator passed it
+                heads.add(new Ranked(m, seq, shard, 0));
+                return;
+            }
+        }
+    }
+
+    // ---------- PagedMessages ----------
+
+    @Override
+    public long seqOf(ChatApp1.Message m) {
+        return m == null ? -1 : shardOf(m).store.seqOf(m);
+    }
+
+    /** Up to limit messages sent after the cursor, over all shards: each shard's page, merged. */
+    @Override
+    public MessagePage page(long after, int limit) {
+        if (shards.length == 1) return shards[0].store.page(after, limit);
+        return merge(fanOut(shard -> shard.store.page(after, limit)), after, limit,
+                Comparator.comparingLong((Ranked r) -> r.seq), r -> r.seq);
+    }
+
+    /** Earliest sent message with this hash in any shard, or null. */
+    @Override
+    public ChatApp1.Message findFirstByHash(String hash) {
+        return earliest(fanOut(shard -> shard.store.findFirstByHash(hash)));
+    }
+
+    /** Earliest sent message with this ID in any shard, or null. */
+    public ChatApp1.Message findById(String id) {
+        return earliest(fanOut(shard -> shard.store.findById(id)));
+    }
+
+    /**
+     * Removes the earliest sent message with this hash if allowed accepts it (see
+     * MessageStore.removeFirstByHash). allowed is asked at most once, about the message that is
+     * earliest over all shards at the moment of the removal. Returns that message, removed or
+     * not, or null if no shard has the hash.
+     */
+    public ChatApp1.Message removeFirstByHash(String hash, Predicate<ChatApp1.Message> allowed) {
+        if (shards.length == 1) return shards[0].store.removeFirstByHash(hash, allowed);
+        while (true) {
+            ChatApp1.Message first = findFirstByHash(hash);
+            if (first == null) return null;
+            // only the message found is removed; if it went meanwhile, look again
+            ChatApp1.Message found = shardOf(first).store.removeFirstByHash(hash, m -> m == first && allowed.test(m));
+            if (found == first) return first;
+        }
+    }
+
+    public ChatApp1.Message removeFirstByHash(String hash) {
+        return removeFirstByHash(hash, m -> true);
+    }
+
+    // ---------- length queries ----------
+
+    /** Longest sent message over all shards (ties go to the earliest sent), or null. */
+    public ChatApp1.Message longest() {
+        List<ChatApp1.Message> top = topK(1);
+        return top.isEmpty() ? null : top.get(0);
+    }
+
+    /** The k longest messages over all shards: each shard's top k, merged. */
+    public List<ChatApp1.Message> topK(int k) {
+        return mergeTopK(fanOut(shard -> shard.lengths.topK(k)), k);
+    }
+
+    /** The k longest messages from sender over all shards. */
+    public List<ChatApp1.Message> topK(String sender, int k) {
+        return mergeTopK(fanOut(shard -> shard.lengths.topK(sender, k)), k);
+    }
+
+    /** Up to limit messages after the cursor, longest first, as LengthIndex.page over all shards. */
+    public MessagePage lengthPage(long after, int limit) {
+        if (shards.length == 1) return shards[0].lengths.page(after, limit);
+        return merge(fanOut(shard -> shard.lengths.page(after, limit)), after, limit,
+                (a, b) -> LengthIndex.compare(a.message, a.seq, b.message, b.seq),
+                r -> LengthIndex.cursorOf(r.message, r.seq));
+    }
+
+    private List<ChatApp1.Message> mergeTopK(List<List<ChatApp1.Message>> parts, int k) {
+        List<Ranked> merged = new ArrayList<>();
+        for (List<ChatApp1.Message> part : parts) {
+            for (ChatApp1.Message m : part) {
+                long seq = seqOf(m);
+                if (seq >= 0) merged.add(new Ranked(m, seq, 0, 0));
+            }
+        }
+        merged.sort((a, b) -> LengthIndex.compare(a.message, a.seq, b.message, b.seq));
+        List<ChatApp1.Message> out = new ArrayList<>(Math.min(k, merged.size()));
+        for (int i = 0; i < merged.size() && i < k; i++) out.add(merged.get(i).message);
+        return out;
+    }
+
+    // ---------- merging ----------
+
+    // a message with its sequence number, and where it came from (shard, or page and position)
+    private static final class Ranked {
+        final ChatApp1.Message message;
+        final long seq;
+        final int source;
+        final int position;
+
+        Ranked(ChatApp1.Message message, long seq, int source, int position) {
+            this.message = message;
+            this.seq = seq;
+            this.source = source;
+            this.position = position;
+        }
+    }
+
+    // Merges pages that are each in order into one page of up to limit. A shard's page holds
+    // limit messages if it has more, so nothing after it can come before the last one taken.
+    // A message deleted since its page was read (seqOf -1) is left out.
+    private MessagePage merge(List<MessagePage> pages, long after, int limit, Comparator<Ranked> order,
+                              ToLongFunction<Ranked> cursorOf) {
+        PriorityQueue<Ranked> heads = new PriorityQueue<>(order);
+        for (int i = 0; i < pages.size(); i++) offerNext(heads, pages.get(i), i, 0);
+        List<ChatApp1.Message> out = new ArrayList<>(Math.max(0, Math.min(limit, 256)));
+        long cursor = after;
+        while (out.size() < limit && !heads.isEmpty()) {
+            Ranked r = heads.poll();
+            out.add(r.message);
+            cursor = cursorOf.applyAsLong(r);
+            offerNext(heads, pages.get(r.source), r.source, r.position + 1);
+        }
+        boolean more = !heads.isEmpty();
+        for (MessagePage page : pages) more |= page.hasMore();
+        return new MessagePage(out, cursor, more);
+    }
+
+    private void offerNext(PriorityQueue<Ranked> heads, MessagePage page, int source, int from) {
+        List<ChatApp1.Message> messages = page.getMessages();
+        for (int i = from; i < messages.size(); i++) {
+            long seq = seqOf(messages.get(i));
+            if (seq >= 0) {
+                heads.add(new Ranked(messages.get(i), seq, source, i));
+                return;
+            }
+        }
+    }
+
+    private ChatApp1.Message earliest(List<ChatApp1.Message> hits) {
+        ChatApp1.Message best = null;
+        long bestSeq = Long.MAX_VALUE;
+        for (ChatApp1.Message m : hits) {
+            long seq = seqOf(m);
+            if (seq >= 0 && seq < bestSeq) {
+                best = m;
+                bestSeq = seq;
+            }
+        }
+        return best;
+    }
+
+    // ---------- persistence ----------
+
+    /**
+     * Adds the messages (in order, see addAll) and queues their records on their shards' writers,
+     * one batch per shard (BulkImporter). Returns the acks.
+     */
+    public List<CompletableFuture<Void>> importAll(List<ChatApp1.Message> messages) {
+        addAll(messages);
+        List<CompletableFuture<Void>> acks = new ArrayList<>();
+        for (Map.Entry<Shard, List<Map<String,String>>> e : recordsByShard(messages).entrySet()) {
+            Shard shard = e.getKey();
+            List<Map<String,String>> records = e.getValue();
+            boolean fsync = shard.writer.getPolicy().isFsync();
+            acks.add(shard.writer.submitTask(shard.log, l -> l.appendAll(records, fsync)));
+            shard.compactor.recordAppends(records.size());
+        }
+        return acks;
+    }
+
+    /** Queues a rewrite of every shard's log from memory (tombstones gone); returns the acks. */
+    public List<CompletableFuture<Void>> rewrite() {
+        List<CompletableFuture<Void>> acks = new ArrayList<>(shards.length);
+        for (Shard shard : shards) {
+            List<Map<String,String>> records = recordsOf(shard);
+            acks.add(shard.writer.submitRewrite(shard.log, records));
+            shard.compactor.reset(records.size(), 0);
+        }
+        return acks;
+    }
+
+    private Map<Shard, List<Map<String,String>>> recordsByShard(List<ChatApp1.Message> messages) {
+        Map<Shard, List<Map<String,String>>> out = new LinkedHashMap<>();
+        for (ChatApp1.Message m : messages) {
+            out.computeIfAbsent(shardOf(m), s -> new ArrayList<>()).add(toRecord(m));
+        }
+        return out;
+    }
+
+    // the shard's messages as log records, in send order
+    private static List<Map<String,String>> recordsOf(Shard shard) {
+        List<Map<String,String>> records = new ArrayList<>(shard.store.size());
+        for (ChatApp1.Message m : shard.store) {
+            long seq = shard.store.seqOf(m);
+            if (seq >= 0) records.add(toRecord(m, seq));
+        }
+        return records;
+    }
+
+    /** Commits everything queued on every shard's writer. */
+    public void flush() throws IOException {
+        for (Shard shard : shards) shard.writer.flush();
+    }
+
+    /** Closes the writers this store made (shard 0's belongs to whoever passed it in). */
+    @Override
+    public void close() {
+        for (int i = 1; i < shards.length; i++) shards[i].writer.close();
+    }
+
+    // ---------- loading ----------
+
+    // one log file read at startup: its live records and what became of them
+    private static final class Replay {
+        final int file;
+        final MessageLog log;
+        final String segmentFile;
+        final List<ChatApp1.Message> messages = new ArrayList<>();
+        long[] seqs;              // -1 for a record without a Seq (written before sharding)
+        int tombstones;
+        boolean segmentCurrent;   // the segment holds exactly the live records
+        boolean strays;           // some records belong to another shard
+
+        Replay(int file, MessageLog log, String segmentFile) {
+            this.file = file;
+            this.log = log;
+            this.segmentFile = segmentFile;
+        }
+    }
+
+    /**
+     * Loads every shard in parallel: from its segment when that is current (no JSON parsing) plus
+     * the log records appended after it, otherwise from the whole log. Every record becomes a
+     * Message (fromRecord), since the stores and indexes hold the messages themselves.
+     *
+     * Records keep the sequence number they were saved with. Records without one predate
+     * sharding, so they can only be in messages.json, ahead of every numbered one: they are
+     * numbered 0, 1, ... in file order, below every saved number, and the same way on every start.
+     *
+     * If the shard count changed, records sit in the wrong files (or in messages-i.json for an i
+     * that is no longer a shard). They are then moved: first appended to the log of the shard they
+     * belong to, then every shard's log is rewritten from memory (shard 0 last), then the files of
+     * shards that no longer exist are deleted. A crash partway leaves a message in two files,
+     * never in none, and the copy read second carries the same number and is skipped.
+     */
+    public void load(Function<Map<String,String>, ChatApp1.Message> fromRecord) throws IOException {
+        List<Replay> files = new ArrayList<>();
+        for (Shard shard : shards) files.add(new Replay(shard.index, shard.log, shard.segmentFile));
+        for (int i = shards.length; Files.exists(Paths.get(fileOf(messagesFile, i))); i++) {
+            files.add(new Replay(i, new MessageLog(fileOf(messagesFile, i)), fileOf(segmentFile, i)));
+        }
+
+        // 1. read every file and build its messages, in parallel
+        invokeAll(files, replay -> {
+            read(replay, fromRecord);
+            return null;
+        });
+
+        // 2. number the records saved without a sequence number, in file order
+        long legacy = 0;
+        for (Replay replay : files) {
+            for (int i = 0; i < replay.seqs.length; i++) if (replay.seqs[i] < 0) replay.seqs[i] = legacy++;
+        }
+        sequence.accumulateAndGet(legacy, Math::max);
+
+        // 3. put every message into the shard it belongs to, in parallel
+        Map<Shard, List<ChatApp1.Message>> moved = new ConcurrentHashMap<>();
+        invokeAll(files, replay -> {
+            restore(replay, moved);
+            return null;
+        });
+
+        // 4. move misplaced records to the files of their shards
+        boolean migrate = files.size() > shards.length;
+        for (Replay replay : files) migrate |= replay.strays;
+        if (migrate) {
+            for (Map.Entry<Shard, List<ChatApp1.Message>> e : moved.entrySet()) {
+                Shard shard = e.getKey();
+                List<Map<String,String>> records = new ArrayList<>();
+                for (ChatApp1.Message m : e.getValue()) records.add(toRecord(m));
+                shard.log.appendAll(records, shard.writer.getPolicy().isFsync());
+            }
+            for (int i = shards.length - 1; i >= 0; i--) {
+                shards[i].log.rewrite(recordsOf(shards[i]), shards[i].writer.getPolicy().isFsync());
+            }
+            for (Replay replay : files.subList(shards.length, files.size())) {
+                Files.deleteIfExists(Paths.get(replay.log.getFilename()));
+                Files.deleteIfExists(Paths.get(replay.segmentFile));
+            }
+        }
+
+        // 5. refresh stale segments and set up the compactors
+        boolean rewritten = migrate;
+        invokeAll(files.subList(0, shards.length), replay -> {
+            Shard shard = shards[replay.file];
+            boolean stale = rewritten || !replay.segmentCurrent;
+            if (stale && Files.exists(Paths.get(shard.log.getFilename()))) {
+                MessageSegment.write(shard.segmentFile, recordsOf(shard), shard.log);
+            }
+            shard.compactor.reset(shard.store.size(), rewritten ? 0 : replay.tombstones);
+            shard.compactor.maybeCompact();
+            return null;
+        });
+    }
+
+    private static void read(Replay replay, Function<Map<String,String>, ChatApp1.Message> fromRecord) throws IOException {
+        MessageLog.LiveRecords live = new MessageLog.LiveRecords();
+        int fromSegment = -1;
+        if (Files.exists(Paths.get(replay.log.getFilename()))) {
+            replay.log.open();
+            MessageSegment segment = MessageSegment.openIfCurrent(replay.segmentFile, replay.log);
+            if (segment != null) {
+                for (int i = 0; i < segment.size(); i++) live.apply(segment.getRecord(i));
+                fromSegment = segment.size();
+                replay.log.forEachAfter(segment.getSourceTail(), live::apply);
+            } else {
+                replay.log.forEach(live::apply);
+            }
+        }
+        List<Map<String,String>> records = live.toList();
+        replay.tombstones = live.tombstoneCount();
+        replay.segmentCurrent = fromSegment == records.size() && replay.tombstones == 0;
+        replay.seqs = new long[records.size()];
+        for (int i = 0; i < replay.seqs.length; i++) {
+            replay.seqs[i] = savedSeq(records.get(i));
+            replay.messages.add(fromRecord.apply(records.get(i)));
+        }
+    }
+
+    private void restore(Replay replay, Map<Shard, List<ChatApp1.Message>> moved) {
+        Map<Shard, List<Integer>> parts = new LinkedHashMap<>();
+        for (int i = 0; i < replay.messages.size(); i++) {
+            parts.computeIfAbsent(shardOf(replay.messages.get(i)), s -> new ArrayList<>()).add(i);
+        }
+        for (Map.Entry<Shard, List<Integer>> e : parts.entrySet()) {
+            Shard shard = e.getKey();
+            List<ChatApp1.Message> messages = new ArrayList<>(e.getValue().size());
+            long[] seqs = new long[e.getValue().size()];
+            for (int j = 0; j < seqs.length; j++) {
+                messages.add(replay.messages.get(e.getValue().get(j)));
+                seqs[j] = replay.seqs[e.getValue().get(j)];
+            }
+            shard.store.restoreAll(messages, seqs);
+            if (shard.index == replay.file) continue;
+            replay.strays = true;
+            List<ChatApp1.Message> added = new ArrayList<>();
+            for (int j = 0; j < seqs.length; j++) {
+                if (shard.store.seqOf(messages.get(j)) == seqs[j]) added.add(messages.get(j)); // not a copy already there
+            }
+            if (!added.isEmpty()) moved.computeIfAbsent(shard, s -> Collections.synchronizedList(new ArrayList<>())).addAll(added);
+        }
+    }
+
+    // the Seq field of a record, or -1 if it has none
+    private static long savedSeq(Map<String,String> record) {
+        String value = record.get(SEQ);
+        if (value == null) return -1;
+        try {
+            long seq = Long.parseLong(value);
+            return seq < 0 ? -1 : seq;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // ---------- fan-out ----------
+
+    private interface Task<T, R> {
+        R run(T item) throws IOException;
+    }
+
+    // in-memory queries do no I/O
+    private <T> List<T> fanOut(Function<Shard, T> query) {
+        try {
+            return invokeAll(Arrays.asList(shards), query::apply);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // runs one task per item on the pool and returns the results in the same order
+    private <T, R> List<R> invokeAll(List<T> items, Task<T, R> task) throws IOException {
+        List<ForkJoinTask<R>> tasks = new ArrayList<>(items.size());
+        for (T item : items) {
+            tasks.add(ForkJoinTask.adapt(() -> {
+                try {
+                    return task.run(item);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }));
+        }
+        if (tasks.size() == 1) {
+            tasks.get(0).quietlyInvoke();
+        } else {
+            for (ForkJoinTask<R> t : tasks) pool.execute(t);
+        }
+        List<R> results = new ArrayList<>(tasks.size());
+        for (ForkJoinTask<R> t : tasks) {
+            try {
+                results.add(t.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof UncheckedIOException) throw ((UncheckedIOException) e.getCause()).getCause();
+                if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+                throw new IOException(e.getCause());
+            }
+        }
+        return results;
+    }
+}
@@ -0,0 +1,445 @@
+package com.example.chatapp;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * TextIndex - inverted index over the text of sent messages.
+ *
+ * Words come from Message.words, the same tokenization createMessageHash uses, upper-cased so
+ * matching ignores case. Each term maps to a posting list (message sequence number -> how often
+ * the term occurs in it); the term dictionary is sorted, so a prefix query is a range of it.
+ * Sends and deletes update only the terms of that one message.
+ *
+ * Query syntax: words are ANDed, "OR" separates alternatives, a trailing '*' makes a prefix:
+ *   "lunch friday"        messages with both words
+ *   "lunch OR dinner"     messages with either
+ *   "meet*"               meet, meeting, meets, ...
+ * Results are ranked by tf-idf (rarer words count more, repeated words count more), ties going
+ * to the newest message, and returned a page at a time.
+ *
+ * Posting lists are sorted by sequence number, so a query is evaluated as a merge over them
+ * without copying any: an AND group leapfrogs its lists (the shortest leads, the others skip
+ * ahead to it), a prefix and an OR are k-way merges on a small heap, and the scored matches
+ * stream into a bounded top-(offset+limit) heap of primitive arrays. Memory per query grows with
+ * the page asked for and the number of terms, not with the number of matches.
+ */
+public class TextIndex implements MessageIndex {
+
+    /** One page of ranked results plus the total number of matches. */
+    public static final class Result {
+        private final List<ChatApp1.Message> hits;
+        private final int total;
+
+        Result(List<ChatApp1.Message> hits, int total) {
+            this.hits = Collections.unmodifiableList(hits);
+            this.total = total;
+        }
+
+        public List<ChatApp1.Message> getHits() { return hits; }
+        public int getTotal() { return total; }
+    }
+
+    // one term's posting list (sequence number -> occurrences) and its length, which the skip
+    // list itself can only count by walking it
+    private static final class Postings {
+        final ConcurrentSkipListMap<Long, Integer> bySeq = new ConcurrentSkipListMap<>();
+        final AtomicInteger size = new AtomicInteger();
+    }
+
+    private static final long DONE = Long.MAX_VALUE;
+
+    private static final int LOCK_STRIPES = 64;
+
+    // Queries take no lock. Updates come from the store's writer, or from the writers of every
+    // shard of a ShardedStore at once, so each term's posting list is changed under its stripe:
+    // a list emptied and dropped can then never take an add meant for the one replacing it.
+    private final ConcurrentSkipListMap<String, Postings> terms = new ConcurrentSkipListMap<>();
+    private final ConcurrentHashMap<Long, ChatApp1.Message> docs = new ConcurrentHashMap<>();
+    private final Object[] stripes = new Object[LOCK_STRIPES];
+
+    public TextIndex() {
+        for (int i = 0; i < stripes.length; i++) stripes[i] = new Object();
+    }
+
+    private Object stripe(String term) {
+        return stripes[term.hashCode() & (LOCK_STRIPES - 1)];
+    }
+
+    // ---------- MessageIndex ----------
+
+    @Override
+    public void added(ChatApp1.Message m, long seq) {
+        for (Map.Entry<String, Integer> e : termCounts(m.getMessageText()).entrySet()) {
+            synchronized (stripe(e.getKey())) {
+                Postings postings = terms.computeIfAbsent(e.getKey(), k -> new Postings());
+                if (postings.bySeq.put(seq, e.getValue()) == null) postings.size.incrementAndGet();
+            }
+        }
+        docs.put(seq, m);
+    }
+
+    @Override
+    public void removed(ChatApp1.Message m, long seq) {
+        docs.remove(seq);
+        for (String term : termCounts(m.getMessageText()).keySet()) {
+            synchronized (stripe(term)) {
+                Postings postings = terms.get(term);
+                if (postings == null) continue;
+                if (postings.bySeq.remove(seq) != null) postings.size.decrementAndGet();
+                if (postings.bySeq.isEmpty()) terms.remove(term, postings);
+            }
+        }
+    }
+
+    @Override
+    public void cleared() {
+        docs.clear();
+        terms.clear();
+    }
+
+    private static Map<String, Integer> termCounts(String text) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (String word : ChatApp1.Message.words(text == null ? "" : text)) {
+            if (!word.isEmpty()) counts.merge(word.toUpperCase(Locale.ROOT), 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    // ---------- queries ----------
+
+    /** Number of messages containing term (exact word). */
+    public int documentFrequency(String term) {
+        Postings postings = terms.get(normalize(term));
+        return postings == null ? 0 : postings.size.get();
+    }
+
+    /** Ranked results offset .. offset+limit-1 of query. */
+    public Result search(String query, int offset, int limit) {
+        long start = System.nanoTime();
+        int from = Math.max(0, offset);
+        TopK top = new TopK((int) Math.min((long) from + Math.max(0, limit), docs.size()));
+        int total = 0;
+        Cursor matches = matcher(query);
+        if (matches != null) {
+            for (matches.advance(0); matches.seq != DONE; matches.advance(matches.seq + 1)) {
+                top.offer(matches.seq, matches.value);
+                total++;
+            }
+        }
+
+        long[] ranked = top.sorted();
+        List<ChatApp1.Message> hits = new ArrayList<>(Math.max(0, ranked.length - from));
+        for (int i = from; i < ranked.length; i++) {
+            ChatApp1.Message m = docs.get(ranked[i]);
+            if (m != null) hits.add(m);
+        }
+        Metrics.GLOBAL.record(Metrics.Op.SEARCH_TEXT, start);
+        return new Result(hits, total);
+    }
+
+    /**
+     * Every match of query, best first, as sequence numbers: ranked once, so a caller paging
+     * through all of them (a table) does not rank again per page. See message(seq).
+     */
+    public long[] rank(String query) {
+        long start = System.nanoTime();
+        long[] seqs = new long[16];
+        double[] scores = new double[16];
+        int total = 0;
+        Cursor matches = matcher(query);
+        if (matches != null) {
+            for (matches.advance(0); matches.seq != DONE; matches.advance(matches.seq + 1)) {
+                if (total == seqs.length) {
+                    seqs = Arrays.copyOf(seqs, total * 2);
+                    scores = Arrays.copyOf(scores, total * 2);
+                }
+                seqs[total] = matches.seq;
+                scores[total++] = matches.value;
+            }
+        }
+        TopK all = new TopK(total);
+        for (int i = 0; i < total; i++) all.offer(seqs[i], scores[i]);
+        long[] ranked = all.sorted();
+        Metrics.GLOBAL.record(Metrics.Op.SEARCH_TEXT, start);
+        return ranked;
+    }
+
+    /** The message indexed under seq, or null if it has been deleted since it was ranked. */
+    public ChatApp1.Message message(long seq) {
+        return docs.get(seq);
+    }
+
+    // "a b OR c*" -> [[A, B], [C*]]
+    private static List<List<String>> parse(String query) {
+        List<List<String>> groups = new ArrayList<>();
+        List<String> group = new ArrayList<>();
+        for (String token : (query == null ? "" : query).trim().split("\\s+")) {
+            if (token.equals("OR")) {
+                if (!group.isEmpty()) groups.add(group);
+                group = new ArrayList<>();
+                continue;
+            }
+            boolean prefix = token.endsWith("*");
+            String word = normalize(token);
+            if (!word.isEmpty()) group.add(prefix ? word + "*" : word);
+        }
+        if (!group.isEmpty()) groups.add(group);
+        return groups;
+    }
+
+    // keeps the ASCII letters and digits, upper-cased (a char loop, like Validator's checks)
+    private static String normalize(String token) {
+        StringBuilder sb = new StringBuilder(token.length());
+        for (int i = 0; i < token.length(); i++) {
+            char c = token.charAt(i);
+            if (c >= 'a' && c <= 'z') sb.append((char) (c - 'a' + 'A'));
+            else if ((c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')) sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    // every group of the query OR-ed together, valued by tf-idf; null if nothing can match
+    private Cursor matcher(String query) {
+        int n = Math.max(1, docs.size());
+        List<Cursor> groups = new ArrayList<>();
+        for (List<String> group : parse(query)) {
+            Cursor c = matchAll(group, n);
+            if (c != null) groups.add(c);
+        }
+        if (groups.isEmpty()) return null;
+        return groups.size() == 1 ? groups.get(0) : new Union(groups);
+    }
+
+    // messages matching every term of the group; null if one of the terms has no postings
+    private Cursor matchAll(List<String> group, int n) {
+        List<Cursor> lists = new ArrayList<>(group.size());
+        List<Integer> frequencies = new ArrayList<>(group.size());
+        for (String term : group) {
+            Cursor c;
+            int df;
+            if (term.endsWith("*")) {
+                List<Cursor> parts = new ArrayList<>();
+                for (Postings postings : prefixRange(term.substring(0, term.length() - 1))) {
+                    parts.add(new TermCursor(postings.bySeq));
+                }
+                if (parts.isEmpty()) return null;
+                c = parts.size() == 1 ? parts.get(0) : new Union(parts);
+                df = countDistinct(term);
+            } else {
+                Postings postings = terms.get(term);
+                if (postings == null) return null;
+                c = new TermCursor(postings.bySeq);
+                df = postings.size.get();
+            }
+            if (df == 0) return null;
+            // shortest list first: it leads the intersection
+            int at = 0;
+            while (at < frequencies.size() && frequencies.get(at) <= df) at++;
+            lists.add(at, c);
+            frequencies.add(at, df);
+        }
+        double[] idf = new double[lists.size()];
+        for (int i = 0; i < idf.length; i++) idf[i] = Math.log(1.0 + (double) n / frequencies.get(i));
+        return new Intersection(lists, idf);
+    }
+
+    private Collection<Postings> prefixRange(String prefix) {
+        return terms.subMap(prefix, true, prefix + Character.MAX_VALUE, true).values();
+    }
+
+    // messages holding at least one word with the prefix (term ends in '*'), merged without a copy
+    private int countDistinct(String term) {
+        List<Cursor> parts = new ArrayList<>();
+        for (Postings postings : prefixRange(term.substring(0, term.length() - 1))) {
+            parts.add(new TermCursor(postings.bySeq));
+        }
+        if (parts.isEmpty()) return 0;
+        Cursor c = parts.size() == 1 ? parts.get(0) : new Union(parts);
+        int count = 0;
+        for (c.advance(0); c.seq != DONE; c.advance(c.seq + 1)) count++;
+        return count;
+    }
+
+    // ---------- cursors ----------
+
+    // walks matching sequence numbers in ascending order; value is the match's tf or score
+    private abstract static class Cursor {
+        long seq = -1;
+        double value;
+
+        /** Moves to the first match at or after target (or DONE); never backwards. */
+        abstract void advance(long target);
+    }
+
+    // one posting list: value is the term's count in the message
+    private static final class TermCursor extends Cursor {
+        private final ConcurrentSkipListMap<Long, Integer> postings;
+        private Iterator<Map.Entry<Long, Integer>> it;
+
+        TermCursor(ConcurrentSkipListMap<Long, Integer> postings) {
+            this.postings = postings;
+        }
+
+        @Override
+        void advance(long target) {
+            if (seq >= target) return;
+            // step along the iterator when the target is next anyway, otherwise skip ahead
+            if (it == null || target > seq + 1) it = postings.tailMap(target, true).entrySet().iterator();
+            if (!it.hasNext()) {
+                seq = DONE;
+                return;
+            }
+            Map.Entry<Long, Integer> e = it.next();
+            seq = e.getKey();
+            value = e.getValue();
+        }
+    }
+
+    // k-way merge: every message on any of the lists, value summed over the lists holding it
+    private static final class Union extends Cursor {
+        private final PriorityQueue<Cursor> heap;
+        private final List<Cursor> level; // the lists positioned on seq (all of them before the start)
+
+        Union(List<Cursor> parts) {
+            heap = new PriorityQueue<>(parts.size(), Comparator.comparingLong((Cursor c) -> c.seq));
+            level = new ArrayList<>(parts);
+        }
+
+        @Override
+        void advance(long target) {
+            if (seq >= target) return;
+            for (Cursor c : level) {
+                c.advance(target);
+                if (c.seq != DONE) heap.add(c);
+            }
+            level.clear();
+            while (!heap.isEmpty() && heap.peek().seq < target) {
+                Cursor c = heap.poll();
+                c.advance(target);
+                if (c.seq != DONE) heap.add(c);
+            }
+            if (heap.isEmpty()) {
+                seq = DONE;
+                return;
+            }
+            seq = heap.peek().seq;
+            double sum = 0;
+            while (!heap.isEmpty() && heap.peek().seq == seq) {
+                Cursor c = heap.poll();
+                sum += c.value;
+                level.add(c);
+            }
+            value = sum;
+        }
+    }
+
+    // leapfrog intersection: the first list leads, the others skip ahead to it; value is tf-idf
+    private static final class Intersection extends Cursor {
+        private final Cursor[] lists;
+        private final double[] idf;
+
+        Intersection(List<Cursor> lists, double[] idf) {
+            this.lists = lists.toArray(new Cursor[0]);
+            this.idf = idf;
+        }
+
+        @Override
+        void advance(long target) {
+            if (seq >= target) return;
+            long t = target;
+            next:
+            while (true) {
+                lists[0].advance(t);
+                t = lists[0].seq;
+                if (t == DONE) break;
+                for (int i = 1; i < lists.length; i++) {
+                    lists[i].advance(t);
+                    if (lists[i].seq != t) {
+                        t = lists[i].seq;
+                        if (t == DONE) break next;
+                        continue next;
+                    }
+                }
+                double score = 0;
+                for (int i = 0; i < lists.length; i++) score += lists[i].value * idf[i];
+                seq = t;
+                value = score;
+                return;
+            }
+            seq = DONE;
+        }
+    }
+
+    // ---------- ranking ----------
+
+    // the best `keep` (seq, score) pairs: a min-heap on primitive arrays with the worst at the root
+    private static final class TopK {
+        private final long[] seqs;
+        private final double[] scores;
+        private int size;
+
+        TopK(int keep) {
+            seqs = new long[keep];
+            scores = new double[keep];
+        }
+
+        void offer(long seq, double score) {
+            if (seqs.length == 0) return;
+            if (size < seqs.length) {
+                seqs[size] = seq;
+                scores[size] = score;
+                up(size++);
+            } else if (better(seq, score, seqs[0], scores[0])) {
+                seqs[0] = seq;
+                scores[0] = score;
+                down(0, size);
+            }
+        }
+
+        /** The kept sequence numbers, best first (the heap is used up). */
+        long[] sorted() {
+            for (int end = size - 1; end > 0; end--) {
+                swap(0, end);
+                down(0, end);
+            }
+            return Arrays.copyOf(seqs, size); // heap sort with the worst on top leaves best first
+        }
+
+        // higher score first, then the newer message
+        private static boolean better(long s1, double v1, long s2, double v2) {
+            int c = Double.compare(v1, v2);
+            return c != 0 ? c > 0 : s1 > s2;
+        }
+
+        private void up(int i) {
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (!better(seqs[parent], scores[parent], seqs[i], scores[i])) return;
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void down(int i, int n) {
+            while (true) {
+                int worst = i, l = 2 * i + 1, r = l + 1;
+                if (l < n && better(seqs[worst], scores[worst], seqs[l], scores[l])) worst = l;
+                if (r < n && better(seqs[worst], scores[worst], seqs[r], scores[r])) worst = r;
+                if (worst == i) return;
+                swap(i, worst);
+                i = worst;
+            }
+        }
+
+        private void swap(int a, int b) {
+            long s = seqs[a];
+            seqs[a] = seqs[b];
+            seqs[b] = s;
+            double v = scores[a];
+            scores[a] = scores[b];
+            scores[b] = v;
+        }
+    }
+}
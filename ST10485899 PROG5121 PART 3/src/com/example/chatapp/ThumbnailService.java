@@ -0,0 +1,228 @@
+package com.example.chatapp;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.swing.ImageIcon;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * ThumbnailService - SIZE x SIZE profile picture thumbnails, made off the Swing event thread.
+ *
+ * thumbnail(path) returns at once; decoding and scaling run on a small pool of daemon threads.
+ * Each thumbnail goes through three levels, each one cheaper than the next:
+ *   1. memory - a bounded LRU of ready ImageIcons, keyed by the SHA-256 of the image file;
+ *   2. disk   - <dir>/<sha-256>.png, written once per distinct image, so a restart (or the same
+ *               picture chosen from another path) does not decode the original again;
+ *   3. decode - the original is read with ImageIO, subsampled while reading when it is much
+ *               bigger than the thumbnail (a 20 MP photo is never fully held in memory), then
+ *               scaled down in halving steps and centred on a transparent SIZE x SIZE square.
+ * The hash of a path is remembered with the file's size and modified time, so asking again for
+ * an unchanged file costs one stat. Requests for a path already being made share one future.
+ */
+public class ThumbnailService implements Closeable {
+
+    public static final int SIZE = 120;
+
+    private final Path dir;
+    private final ExecutorService executor;
+    private final Map<String, ImageIcon> icons;   // content hash -> thumbnail (LRU, guarded by itself)
+    private final Map<String, String> hashes;     // path|size|mtime -> content hash (LRU, guarded by itself)
+    private final ConcurrentHashMap<String, CompletableFuture<ImageIcon>> pending = new ConcurrentHashMap<>();
+
+    /**
+     * @param dir      directory of the disk cache (created when needed)
+     * @param capacity thumbnails kept in memory
+     * @param threads  images decoded at once
+     */
+    public ThumbnailService(String dir, int capacity, int threads) {
+        if (capacity < 1 || threads < 1) throw new IllegalArgumentException("capacity and threads must be at least 1");
+        this.dir = Paths.get(dir);
+        this.icons = lru(capacity);
+        this.hashes = lru(4 * capacity);
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "quickchat-thumbnails");
+            t.setDaemon(true);
+            t.setPriority(Thread.NORM_PRIORITY - 1); // never compete with the UI
+            return t;
+        });
+    }
+
+    /**
+     * Reads chatapp.thumbs.dir, chatapp.thumbs.cache and chatapp.thumbs.threads, falling back to
+     * "thumbnails" / 256 / 2.
+     */
+    public static ThumbnailService fromSystemProperties() {
+        return new ThumbnailService(System.getProperty("chatapp.thumbs.dir", "thumbnails"),
+                Integer.getInteger("chatapp.thumbs.cache", 256), Integer.getInteger("chatapp.thumbs.threads", 2));
+    }
+
+    private static <V> Map<String, V> lru(int capacity) {
+        return new LinkedHashMap<String, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    // ---------- requests ----------
+
+    /**
+     * The thumbnail of the image at path. Completes on a pool thread (hop to the event thread
+     * before touching Swing); fails with an IOException if the file is missing or not an image.
+     */
+    public CompletableFuture<ImageIcon> thumbnail(String path) {
+        CompletableFuture<ImageIcon> mine = new CompletableFuture<>();
+        CompletableFuture<ImageIcon> running = pending.putIfAbsent(path, mine);
+        if (running != null) return running;
+        try {
+            executor.execute(() -> {
+                try {
+                    mine.complete(load(path));
+                } catch (IOException | RuntimeException e) {
+                    mine.completeExceptionally(e);
+                } finally {
+                    pending.remove(path, mine);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pending.remove(path, mine);
+            mine.completeExceptionally(e);
+        }
+        return mine;
+    }
+
+    /** Thumbnails held in memory. */
+    public int cached() {
+        synchronized (icons) {
+            return icons.size();
+        }
+    }
+
+    // ---------- pool thread ----------
+
+    private ImageIcon load(String path) throws IOException {
+        Path source = Paths.get(path);
+        String hash = hash(source);
+        synchronized (icons) {
+            ImageIcon icon = icons.get(hash);
+            if (icon != null) return icon;                                   // 1. memory
+        }
+        Path cachedFile = dir.resolve(hash + ".png");
+        BufferedImage thumb = Files.isRegularFile(cachedFile) ? ImageIO.read(cachedFile.toFile()) : null;  // 2. disk
+        if (thumb == null) {
+            thumb = scale(decode(source));                                   // 3. decode
+            store(thumb, cachedFile);
+        }
+        ImageIcon icon = new ImageIcon(thumb);
+        synchronized (icons) {
+            icons.put(hash, icon);
+        }
+        return icon;
+    }
+
+    // SHA-256 of the file, remembered for as long as its size and modified time stay the same
+    private String hash(Path source) throws IOException {
+        String stamp = source.toAbsolutePath() + "|" + Files.size(source) + "|" + Files.getLastModifiedTime(source).toMillis();
+        synchronized (hashes) {
+            String hash = hashes.get(stamp);
+            if (hash != null) return hash;
+        }
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every JVM has SHA-256
+        }
+        byte[] buf = new byte[1 << 16];
+        try (InputStream in = Files.newInputStream(source)) {
+            int n;
+            while ((n = in.read(buf)) > 0) digest.update(buf, 0, n);
+        }
+        StringBuilder hex = new StringBuilder(64);
+        for (byte b : digest.digest()) hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        String hash = hex.toString();
+        synchronized (hashes) {
+            hashes.put(stamp, hash);
+        }
+        return hash;
+    }
+
+    // reads every (2^k)th pixel of images far bigger than the thumbnail instead of the whole image
+    private static BufferedImage decode(Path source) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(source.toFile())) {
+            Iterator<ImageReader> readers = in == null ? Collections.emptyIterator() : ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) throw new IOException(source + " is not an image");
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int shorter = Math.min(reader.getWidth(0), reader.getHeight(0));
+                int step = 1;
+                while (shorter / (step * 2) >= 2 * SIZE) step *= 2;
+                ImageReadParam param = reader.getDefaultReadParam();
+                if (step > 1) param.setSourceSubsampling(step, step, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    // fit inside SIZE x SIZE, halving at a time (one big bilinear step looks as bad as nearest)
+    static BufferedImage scale(BufferedImage image) {
+        double ratio = Math.min(1.0, Math.min((double) SIZE / image.getWidth(), (double) SIZE / image.getHeight()));
+        int w = Math.max(1, (int) Math.round(image.getWidth() * ratio));
+        int h = Math.max(1, (int) Math.round(image.getHeight() * ratio));
+        BufferedImage current = image;
+        int cw = image.getWidth(), ch = image.getHeight();
+        while (cw / 2 >= w && ch / 2 >= h) {
+            cw /= 2;
+            ch /= 2;
+            current = draw(current, cw, ch, cw, ch, 0, 0);
+        }
+        return draw(current, SIZE, SIZE, w, h, (SIZE - w) / 2, (SIZE - h) / 2);
+    }
+
+    private static BufferedImage draw(BufferedImage from, int width, int height, int w, int h, int x, int y) {
+        BufferedImage to = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = to.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(from, x, y, w, h, null);
+        } finally {
+            g.dispose();
+        }
+        return to;
+    }
+
+    // written to a temp file and moved into place, so a reader never sees half a PNG
+    private void store(BufferedImage thumb, Path target) {
+        try {
+            Files.createDirectories(dir);
+            Path tmp = Files.createTempFile(dir, "thumb", ".tmp");
+            try {
+                ImageIO.write(thumb, "png", tmp.toFile());
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        } catch (IOException e) {
+            e.printStackTrace(); // the thumbnail is still shown, only not cached on disk
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
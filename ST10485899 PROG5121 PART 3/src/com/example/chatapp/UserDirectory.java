@@ -0,0 +1,441 @@
+package com.example.chatapp;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32C;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * UserDirectory - registered users, kept on disk and looked up by username or phone number.
+ *
+ * users.jsonl holds one JSON object per line and is only ever appended to; registering a user
+ * appends its line, and a later line for the same username replaces the earlier one. Memory only
+ * holds two indexes: username -> file offset of the user's line, and phone -> username. A profile
+ * is read from disk (one positional read of one line) when it is asked for, so a login or
+ * registration check is a hash lookup plus at most one small read, however many users there are.
+ *
+ * Nothing is read when the directory is created; the indexes are built on first use. close()
+ * writes them to users.jsonl.idx with the size of users.jsonl at that point and a CRC32C of
+ * those bytes, so the next start only scans the lines appended after it instead of parsing the
+ * whole file. A snapshot whose checksum no longer matches (the file was rewritten or replaced)
+ * is ignored. A line torn by a crash in the middle of an append is cut off when the file is opened.
+ *
+ * Lookups share the read side of a read-write lock and close() takes the write side, so a
+ * lookup never meets a half-closed directory (a closed file, emptied indexes).
+ *
+ * Passwords are never stored. A record holds a PBKDF2WithHmacSHA256 hash of the password with a
+ * random per-user salt and its iteration count (chatapp.users.hashIterations, default 600000, so
+ * raising it later leaves older records verifiable); checkPassword recomputes it. A file written
+ * before hashing, with "Password" in plain text, is rewritten hashed the first time it is opened.
+ *
+ * inMemory() gives a directory with no file behind it (the standalone login class, tests).
+ */
+public class UserDirectory implements Closeable {
+
+    private static final int MAGIC = 0x51435544; // "QCUD"
+    private static final int VERSION = 3; // 1: over plain-text passwords, 2: matched by file key; both rescanned
+    private static final int DEFAULT_ITERATIONS = 600_000;
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final Path file, indexFile;
+    private final boolean fsync;
+    private final int iterations;
+    private final List<String> memory; // the lines, when there is no file
+
+    private final ConcurrentHashMap<String, Long> byUsername = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, String> byPhone = new ConcurrentHashMap<>(); // normalized phone -> username
+    private final ReentrantReadWriteLock closing = new ReentrantReadWriteLock(); // lookups read, close() writes
+    private FileChannel channel;
+    private long length;
+    private volatile boolean loaded;
+
+    /** A directory backed by filename (and filename + ".idx"); nothing is read until first use. */
+    public UserDirectory(String filename, boolean fsync) {
+        this(filename, fsync, Integer.getInteger("chatapp.users.hashIterations", DEFAULT_ITERATIONS));
+    }
+
+    UserDirectory(String filename, boolean fsync, int iterations) {
+        if (iterations < 1) throw new IllegalArgumentException("iterations must be at least 1");
+        this.file = Paths.get(filename);
+        this.indexFile = Paths.get(filename + ".idx");
+        this.fsync = fsync;
+        this.iterations = iterations;
+        this.memory = null;
+    }
+
+    private UserDirectory() {
+        this.file = null;
+        this.indexFile = null;
+        this.fsync = false;
+        this.iterations = Integer.getInteger("chatapp.users.hashIterations", DEFAULT_ITERATIONS);
+        this.memory = new ArrayList<>();
+        this.loaded = true;
+    }
+
+    public static UserDirectory inMemory() {
+        return new UserDirectory();
+    }
+
+    // ---------- lookups (shared read lock) ----------
+
+    public boolean containsUsername(String username) {
+        closing.readLock().lock();
+        try {
+            ensureLoaded();
+            return username != null && byUsername.containsKey(username);
+        } finally {
+            closing.readLock().unlock();
+        }
+    }
+
+    /** The user's profile; its password is null (only the hash is stored). */
+    public ChatApp1.User findByUsername(String username) {
+        Map<String,String> record = recordOf(username);
+        return record == null ? null : fromRecord(record);
+    }
+
+    /** Whether password is the one username registered with; false for an unknown user. */
+    public boolean checkPassword(String username, String password) {
+        Map<String,String> record = recordOf(username);  // the hash is computed outside the lock
+        if (record == null || password == null) return false;
+        try {
+            Base64.Decoder base64 = Base64.getDecoder();
+            byte[] expected = base64.decode(record.getOrDefault("PasswordHash", ""));
+            byte[] actual = hash(password, base64.decode(record.getOrDefault("Salt", "")),
+                    Integer.parseInt(record.getOrDefault("Iterations", "0")));
+            return MessageDigest.isEqual(expected, actual); // constant time
+        } catch (IllegalArgumentException e) {
+            return false; // damaged record
+        }
+    }
+
+    public ChatApp1.User findByPhone(String phone) {
+        String username;
+        closing.readLock().lock();
+        try {
+            ensureLoaded();
+            username = phone == null ? null : byPhone.get(RecipientIndex.normalize(phone));
+        } finally {
+            closing.readLock().unlock();
+        }
+        return username == null ? null : findByUsername(username);
+    }
+
+    public int size() {
+        closing.readLock().lock();
+        try {
+            ensureLoaded();
+            return byUsername.size();
+        } finally {
+            closing.readLock().unlock();
+        }
+    }
+
+    // ---------- registration ----------
+
+    /** Adds user unless its username is taken; returns false (and writes nothing) if it is. */
+    public synchronized boolean register(ChatApp1.User user) {
+        ensureLoaded();
+        if (byUsername.containsKey(user.getUsername())) return false;
+        try {
+            Map<String,String> record = toRecord(user);
+            index(record, append(MessageLog.toLine(record)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return true;
+    }
+
+    private Map<String,String> toRecord(ChatApp1.User u) {
+        byte[] salt = new byte[SALT_BYTES];
+        RANDOM.nextBytes(salt);
+        Base64.Encoder base64 = Base64.getEncoder();
+        Map<String,String> r = new LinkedHashMap<>();
+        r.put("Username", u.getUsername());
+        r.put("Salt", base64.encodeToString(salt));
+        r.put("Iterations", Integer.toString(iterations));
+        r.put("PasswordHash", base64.encodeToString(hash(u.getPassword() == null ? "" : u.getPassword(), salt, iterations)));
+        r.put("FullName", u.getFullname());
+        r.put("Gender", u.getGender());
+        r.put("Phone", u.getPhone());
+        r.put("ProfileImage", u.getProfileImagePath());
+        return r;
+    }
+
+    private static ChatApp1.User fromRecord(Map<String,String> r) {
+        return new ChatApp1.User(r.get("FullName"), r.get("Gender"), r.get("Username"), null,
+                r.get("Phone"), r.get("ProfileImage"));
+    }
+
+    // a record written before hashing, with "Password" in plain text, as a user to register again
+    private static ChatApp1.User fromLegacyRecord(Map<String,String> r) {
+        return new ChatApp1.User(r.get("FullName"), r.get("Gender"), r.get("Username"), r.get("Password"),
+                r.get("Phone"), r.get("ProfileImage"));
+    }
+
+    private static byte[] hash(String password, byte[] salt, int iterations) {
+        if (salt.length == 0 || iterations < 1) throw new IllegalArgumentException("no salt or iteration count");
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("PBKDF2WithHmacSHA256 is part of every Java 8+ runtime", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    private void index(Map<String,String> record, long offset) {
+        String username = record.get("Username");
+        if (username == null) return;
+        byUsername.put(username, offset);
+        String phone = record.get("Phone");
+        if (phone != null && !phone.isEmpty()) byPhone.put(RecipientIndex.normalize(phone), username);
+    }
+
+    // called with this locked; returns the offset of the line
+    private long append(String line) throws IOException {
+        if (memory != null) {
+            memory.add(line);
+            return memory.size() - 1;
+        }
+        ByteBuffer buf = ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.UTF_8));
+        long offset = length;
+        long pos = offset;
+        while (buf.hasRemaining()) pos += channel.write(buf, pos);
+        if (fsync) channel.force(false);
+        length = pos;
+        Metrics.GLOBAL.addBytesWritten(pos - offset);
+        return offset;
+    }
+
+    private Map<String,String> recordOf(String username) {
+        closing.readLock().lock();
+        try {
+            ensureLoaded();
+            Long offset = username == null ? null : byUsername.get(username);
+            return offset == null ? null : read(offset);
+        } finally {
+            closing.readLock().unlock();
+        }
+    }
+
+    // one line from disk (or memory); positional reads are safe from any thread
+    private Map<String,String> read(long offset) {
+        if (memory != null) {
+            synchronized (this) {
+                return JsonRecordReader.parseObject(memory.get((int) offset));
+            }
+        }
+        try {
+            ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+            ByteBuffer buf = ByteBuffer.allocate(256);
+            long pos = offset;
+            while (true) {
+                buf.clear();
+                int n = channel.read(buf, pos);
+                if (n <= 0) break;
+                for (int i = 0; i < n; i++) {
+                    byte b = buf.get(i);
+                    if (b == '\n') return JsonRecordReader.parseObject(line.toString("UTF-8"));
+                    line.write(b);
+                }
+                pos += n;
+            }
+            throw new IOException(file + ": no complete user record at " + offset);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // ---------- loading ----------
+
+    private void ensureLoaded() {
+        if (loaded) return;
+        synchronized (this) {
+            if (loaded) return;
+            try {
+                load();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            loaded = true;
+        }
+    }
+
+    private void load() throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long from = loadIndex();
+        boolean[] plainText = {false};
+        length = scan(from, plainText);
+        if (length < channel.size()) channel.truncate(length); // torn last line
+        if (plainText[0]) hashPlainTextPasswords();
+    }
+
+    // Rewrites the file with every user's latest record hashed, so no earlier line (replaced
+    // registrations included) keeps a plain-text password; the old file is replaced atomically.
+    private void hashPlainTextPasswords() throws IOException {
+        Path tmp = Paths.get(file + ".tmp");
+        Map<String, Long> rewritten = new HashMap<>();
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16)) {
+            long pos = 0;
+            for (Map.Entry<String, Long> e : byUsername.entrySet()) {
+                Map<String,String> record = read(e.getValue());
+                if (record.containsKey("Password")) record = toRecord(fromLegacyRecord(record));
+                byte[] line = (MessageLog.toLine(record) + "\n").getBytes(StandardCharsets.UTF_8);
+                out.write(line);
+                rewritten.put(e.getKey(), pos);
+                pos += line.length;
+            }
+        }
+        if (fsync) {
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                ch.force(true);
+            }
+        }
+        channel.close();
+        try {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.deleteIfExists(indexFile);
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        length = channel.size();
+        byUsername.putAll(rewritten);
+    }
+
+    // Reads users.idx if it was written for this file; returns where the scan of the file starts.
+    private long loadIndex() {
+        if (!Files.exists(indexFile)) return 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) return 0;
+            long sourceLength = in.readLong();
+            long sourceChecksum = in.readLong();
+            if (sourceLength > channel.size() || checksum(sourceLength) != sourceChecksum) return 0;
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String username = readString(in);
+                String phone = readString(in);
+                long offset = in.readLong();
+                byUsername.put(username, offset);
+                if (!phone.isEmpty()) byPhone.put(phone, username);
+            }
+            return sourceLength;
+        } catch (IOException e) {
+            byUsername.clear();
+            byPhone.clear();
+            return 0; // unreadable snapshot: scan the whole file instead
+        }
+    }
+
+    // Indexes every complete line from offset on; returns the offset after the last one.
+    // plainText[0] is set if a line still holds a plain-text password.
+    private long scan(long offset, boolean[] plainText) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ);
+             InputStream in = new BufferedInputStream(Channels.newInputStream(ch.position(offset)), 1 << 16)) {
+            ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+            long start = offset, pos = offset;
+            int b;
+            while ((b = in.read()) != -1) {
+                pos++;
+                if (b != '\n') {
+                    line.write(b);
+                    continue;
+                }
+                Map<String,String> record = JsonRecordReader.parseObject(line.toString("UTF-8"));
+                if (record != null) {
+                    index(record, start);
+                    if (record.containsKey("Password")) plainText[0] = true;
+                }
+                line.reset();
+                start = pos;
+            }
+            return start;
+        }
+    }
+
+    // CRC32C of the first length bytes of the file: a sequential read, no parsing
+    private long checksum(long length) throws IOException {
+        CRC32C crc = new CRC32C();
+        ByteBuffer buf = ByteBuffer.allocateDirect(1 << 16);
+        long pos = 0;
+        while (pos < length) {
+            buf.clear();
+            buf.limit((int) Math.min(buf.capacity(), length - pos));
+            int n = channel.read(buf, pos);
+            if (n <= 0) throw new EOFException(file + " ended at " + pos);
+            buf.flip();
+            crc.update(buf);
+            pos += n;
+        }
+        return crc.getValue();
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /** Writes the index snapshot and closes the file; waits for lookups in progress to finish. */
+    @Override
+    public void close() throws IOException {
+        closing.writeLock().lock(); // before the monitor, in the same order as a lookup that loads
+        try {
+            synchronized (this) {
+                if (memory != null || channel == null) return;
+                writeIndex();
+                channel.close();
+                channel = null;
+                byUsername.clear();
+                byPhone.clear();
+                loaded = false; // a later lookup opens the file again
+            }
+        } finally {
+            closing.writeLock().unlock();
+        }
+    }
+
+    private void writeIndex() throws IOException {
+        Map<String, String> phoneOf = new HashMap<>();
+        for (Map.Entry<String, String> e : byPhone.entrySet()) phoneOf.put(e.getValue(), e.getKey());
+        Path tmp = Paths.get(indexFile + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(length);
+            out.writeLong(checksum(length));
+            out.writeInt(byUsername.size());
+            for (Map.Entry<String, Long> e : byUsername.entrySet()) {
+                writeString(out, e.getKey());
+                writeString(out, phoneOf.getOrDefault(e.getKey(), ""));
+                out.writeLong(e.getValue());
+            }
+        }
+        try {
+            Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.chatapp;
+
+import java.util.*;
+
+/**
+ * Validator - every input rule of the app in one place, as plain character scans.
+ *
+ * The checks used to be String.matches calls, which compile their regex on every call, and the
+ * username/password rules were written out twice (login and ChatApp1.Login). Both now delegate
+ * here. The two registration screens still have different password rules, so both are kept,
+ * under names that say which is which.
+ *
+ * validateAll checks a whole batch of messages and reports every problem of every message
+ * instead of stopping (or throwing) at the first one, for imports of large dumps.
+ */
+public final class Validator {
+
+    public static final int MAX_MESSAGE_LENGTH = 250;
+    public static final int MAX_MESSAGE_ID_LENGTH = 10;
+
+    private Validator() {
+    }
+
+    // ---------- single fields ----------
+
+    /** Contains an underscore and is no more than five characters long. */
+    public static boolean isUsername(String username) {
+        return username != null && username.length() <= 5 && username.indexOf('_') >= 0;
+    }
+
+    /** At least 8 characters with a capital letter, a digit and a special character (login). */
+    public static boolean isComplexPassword(String password) {
+        if (password == null || password.length() < 8) return false;
+        boolean hasUpper = false, hasDigit = false, hasSpecial = false;
+        for (int i = 0; i < password.length(); i++) {
+            char c = password.charAt(i);
+            if (Character.isUpperCase(c)) hasUpper = true;
+            else if (Character.isDigit(c)) hasDigit = true;
+            else if (!Character.isLetterOrDigit(c)) hasSpecial = true;
+        }
+        return hasUpper && hasDigit && hasSpecial;
+    }
+
+    /** More than 8 characters (the Swing registration form, ChatApp1.Login). */
+    public static boolean isLongPassword(String password) {
+        return password != null && password.length() > 8;
+    }
+
+    /** South African number: +27 followed by exactly 9 digits. */
+    public static boolean isSaCellphone(String phone) {
+        return phone != null && phone.length() == 12 && phone.startsWith("+27") && allDigits(phone, 3);
+    }
+
+    /** International number: '+' then digits only, 10 to 13 characters in all. */
+    public static boolean isInternationalNumber(String phone) {
+        if (phone == null || phone.length() < 10 || phone.length() > 13 || phone.charAt(0) != '+') return false;
+        return allDigits(phone, 1);
+    }
+
+    public static boolean isMessageID(String id) {
+        return id != null && id.length() <= MAX_MESSAGE_ID_LENGTH;
+    }
+
+    public static boolean isMessageLength(String text) {
+        return text != null && text.length() <= MAX_MESSAGE_LENGTH;
+    }
+
+    // ASCII digits only, like \d without UNICODE_CHARACTER_CLASS
+    private static boolean allDigits(String s, int from) {
+        if (from >= s.length()) return false;
+        for (int i = from; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') return false;
+        }
+        return true;
+    }
+
+    // ---------- messages ----------
+
+    /** Outcome for one message of a batch: its position and everything wrong with it. */
+    public static final class Result {
+        private final int index;
+        private final ChatApp1.Message message;
+        private final List<String> problems;
+
+        Result(int index, ChatApp1.Message message, List<String> problems) {
+            this.index = index;
+            this.message = message;
+            this.problems = problems;
+        }
+
+        public int getIndex() { return index; }
+        public ChatApp1.Message getMessage() { return message; }
+        public List<String> getProblems() { return problems; }
+        public boolean isValid() { return problems.isEmpty(); }
+    }
+
+    /** Every problem with m (empty if it is valid); never throws. */
+    public static List<String> problems(ChatApp1.Message m) {
+        if (m == null) return Collections.singletonList("Missing message.");
+        return problems(m.getMessageID(), m.getRecipient(), m.getMessageText());
+    }
+
+    /** The same checks on the raw fields, before a Message (and its hash) is built from them. */
+    public static List<String> problems(String messageID, String recipient, String messageText) {
+        List<String> problems = null;
+        if (!isMessageID(messageID)) {
+            problems = add(problems, "Message ID must be at most " + MAX_MESSAGE_ID_LENGTH + " characters.");
+        }
+        if (!isInternationalNumber(recipient)) {
+            problems = add(problems, "Cell phone number is incorrectly formatted. Please include international code.");
+        }
+        if (!isMessageLength(messageText)) {
+            problems = add(problems, "Message exceeds " + MAX_MESSAGE_LENGTH + " characters.");
+        }
+        return problems == null ? Collections.emptyList() : problems;
+    }
+
+    /** One Result per message, in iteration order. */
+    public static List<Result> validateAll(Collection<ChatApp1.Message> messages) {
+        List<Result> results = new ArrayList<>(messages.size());
+        int i = 0;
+        for (ChatApp1.Message m : messages) {
+            results.add(new Result(i++, m, problems(m)));
+        }
+        return results;
+    }
+
+    // most messages are valid, so the list is only made when needed
+    private static List<String> add(List<String> problems, String problem) {
+        if (problems == null) problems = new ArrayList<>(2);
+        problems.add(problem);
+        return problems;
+    }
+}
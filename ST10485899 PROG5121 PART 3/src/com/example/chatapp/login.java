@@ -4,46 +4,38 @@
  */
 package com.example.chatapp;
 
-import java.util.regex.Pattern;
-import java.util.regex.Matcher;
-
 /**
  *
  * @author Perfect Mosoma
  */
 public class login {
-    // Single-user storage for the POE
-    private user registeredUser = null;
+    // Registered users; a fresh login() starts with none
+    private final UserDirectory users;
+    private String lastRegistered;
+
+    public login() {
+        this(UserDirectory.inMemory());
+    }
+
+    public login(UserDirectory users) {
+        this.users = users;
+    }
 
     // Username rule: contains underscore and is no more than five characters long.
     public boolean checkUsername(String username) {
-        if (username == null) return false;
-        // contains underscore and length <= 5
-        return username.contains("_") && username.length() <= 5;
+        return Validator.isUsername(username);
     }
 
     // Password complexity rules:
     // at least 8 chars, contains a capital, contains a digit, contains a special char
     public boolean checkPasswordComplexity(String password) {
-        if (password == null) return false;
-        if (password.length() < 8) return false;
-        boolean hasUpper = false;
-        boolean hasDigit = false;
-        boolean hasSpecial = false;
-        for (char c : password.toCharArray()) {
-            if (Character.isUpperCase(c)) hasUpper = true;
-            else if (Character.isDigit(c)) hasDigit = true;
-            else if (!Character.isLetterOrDigit(c)) hasSpecial = true;
-        }
-        return hasUpper && hasDigit && hasSpecial;
+        return Validator.isComplexPassword(password);
     }
 
     
+    // SA-specific: +27 followed by 9 digits
     public boolean checkCellphone(String cellphone) {
-        if (cellphone == null) return false;
-        // SA-specific pattern: +27 followed by 9 OR 10 digits
-        String saPattern = "^\\+27\\d{9}$";
-        return cellphone.matches(saPattern);
+        return Validator.isSaCellphone(cellphone);
     }
 
 /**
@@ -61,16 +53,17 @@ public class login {
             return "Cellphone number incorrectly formatted or doesn't contain international code.";
         }
         // all good -> register
-        this.registeredUser = new user(username, password, cellphone);
+        if (!users.register(new ChatApp1.User("", "", username, password, cellphone, ""))) {
+            return "This username is already taken. Please choose a different one.";
+        }
+        lastRegistered = username;
         return "Registration successful.";
     }
  /**
-     * loginUser: check entered credentials against stored registeredUser (single-user).
+     * loginUser: check entered credentials against the registered users.
      */
     public boolean loginUser(String username, String password) {
-        if (this.registeredUser == null) return false;
-        return this.registeredUser.getUsername().equals(username)
-                && this.registeredUser.getPassword().equals(password);
+        return users.checkPassword(username, password);
     }
 
     /**
@@ -95,8 +88,10 @@ public class login {
      return String.format("Welcome %s ,%s it is great to see you again.", firstName, lastName);
     }
 
-    // For tests or GUI to access the stored user (nullable)
+    // For tests or GUI to access the user registered last through this login (nullable);
+    // its password is null, only a hash of it is kept
     public user getRegisteredUser() {
-        return registeredUser;
+        ChatApp1.User u = lastRegistered == null ? null : users.findByUsername(lastRegistered);
+        return u == null ? null : new user(u.getUsername(), u.getPassword(), u.getPhone());
     }
 }
@@ -0,0 +1,67 @@
+package com.example.chatapp;
+
+import org.junit.*;
+
+import javax.swing.SwingUtilities;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class AsyncStoreTest {
+
+    private AsyncStore async;
+
+    @Before
+    public void setup() throws Exception {
+        ChatApp1.contents.clear();
+        Files.deleteIfExists(Paths.get(ChatApp1.MESSAGES_FILE));
+        async = new AsyncStore();
+    }
+
+    @After
+    public void cleanup() throws Exception {
+        async.close();
+        ChatApp1.writer.flush();
+        ChatApp1.contents.clear();
+        Files.deleteIfExists(Paths.get(ChatApp1.MESSAGES_FILE));
+    }
+
+    @Test(timeout = 30000)
+    public void testOperationsRunInOrderOffTheCallingThread() throws Exception {
+        List<CompletableFuture<ChatApp1.Message>> sends = new ArrayList<>();
+        for (int i = 0; i < 50; i++) sends.add(async.sendMessage("async", "+27831234567", "message " + i));
+        CompletableFuture<String> thread = async.submit(() -> Thread.currentThread().getName());
+        CompletableFuture<Boolean> delete = async.deleteByMessageHash(sends.get(0).get().getMessageHash());
+
+        assertEquals("quickchat-io", thread.get());
+        assertTrue(delete.get());
+        assertEquals(49, ChatApp1.contents.size());
+        for (int i = 1; i < 50; i++) assertEquals("message " + i, ChatApp1.contents.get(i - 1).getMessageText());
+
+        async.persistAllSentMessages().get();
+        // every message went to one recipient, so one shard's log (messages.json unless chatapp.shards is set)
+        String log = ChatApp1.store.shardFor("+27831234567").getLog().getFilename();
+        assertEquals(49, async.readJsonListFromFile(log).get().size());
+    }
+
+    @Test(timeout = 30000)
+    public void testCallbacksRunOnTheEventThread() throws Exception {
+        CountDownLatch called = new CountDownLatch(2);
+        AtomicReference<String> seen = new AtomicReference<>("");
+        AsyncStore.onEdt(async.sendMessage("async", "+27831234567", "ok"), m -> {
+            if (SwingUtilities.isEventDispatchThread()) seen.accumulateAndGet("sent ", String::concat);
+            called.countDown();
+        }, e -> called.countDown());
+        AsyncStore.onEdt(async.sendMessage("async", "0831234567", "bad number"), m -> called.countDown(), e -> {
+            if (SwingUtilities.isEventDispatchThread() && e instanceof IllegalArgumentException) {
+                seen.accumulateAndGet("rejected", String::concat);
+            }
+            called.countDown();
+        });
+        called.await();
+        assertEquals("sent rejected", seen.get());
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.chatapp;
+
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class BulkImporterTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private final GroupCommitWriter writer = new GroupCommitWriter(new GroupCommitWriter.FlushPolicy(256, 0, false));
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+    private MessageStore store;
+    private MessageLog log;
+    private BulkImporter importer;
+
+    @Before
+    public void setup() {
+        store = new MessageStore();
+        log = new MessageLog(new File(tmp.getRoot(), "messages.json").getPath());
+        importer = new BulkImporter(store, log, writer, pool);
+    }
+
+    @After
+    public void cleanup() {
+        writer.close();
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void testJsonImportKeepsOrderAcrossChunks() throws IOException {
+        int n = 3 * BulkImporter.CHUNK_SIZE + 17;
+        StringBuilder json = new StringBuilder("[\n");
+        for (int i = 0; i < n; i++) {
+            if (i > 0) json.append(",\n");
+            json.append("{\"MessageID\": \"").append(String.format("%010d", i))
+                    .append("\", \"Sender\": \"S\", \"Recipient\": \"+27831234567\", \"Message\": \"hello ").append(i).append("\"}");
+        }
+        json.append("\n]\n");
+        long[] progress = {0};
+
+        BulkImporter.Report report = importer.importJson(new StringReader(json.toString()), (rows, imported, rejected) -> progress[0] = rows);
+
+        assertEquals(n, report.getImported());
+        assertEquals(0, report.getRejected());
+        assertEquals(n, progress[0]);
+        assertEquals(n, store.size());
+        int i = 0;
+        for (ChatApp1.Message m : store) {
+            assertEquals("hello " + i, m.getMessageText());
+            assertEquals(new ChatApp1.Message(m.getMessageID(), "S", m.getRecipient(), m.getMessageText(), i).getMessageHash(),
+                    m.getMessageHash());
+            i++;
+        }
+        List<Map<String,String>> persisted = log.readAll();
+        assertEquals(n, persisted.size());
+        assertEquals("hello " + (n - 1), persisted.get(n - 1).get("Message"));
+    }
+
+    @Test
+    public void testBadRowsRejectedWithLineNumbers() throws IOException {
+        String json = "[\n"
+                + "{\"MessageID\": \"0000000001\", \"Recipient\": \"+27831234567\", \"Message\": \"ok\"},\n"
+                + "{\"MessageID\": \"0000000002\", \"Recipient\": \"0831234567\", \"Message\": \"bad number\"},\n"
+                + "{\"MessageID\": \"0000000003\", \"Message\": \"no recipient\"},\n"
+                + "{\"MessageID\": \"0000000004\", \"Recipient\": \"+27831234567\", \"Message\": \"ok too\"},\n"
+                + "{\"MessageID\": \"0000000005\" \"Recipient\"}\n"
+                + "]\n";
+
+        BulkImporter.Report report = importer.importJson(new StringReader(json), null);
+
+        assertEquals(2, report.getImported());
+        assertEquals(3, report.getRejected());
+        List<Integer> lines = new ArrayList<>();
+        for (BulkImporter.Rejection r : report.getRejections()) lines.add(r.getLine());
+        Collections.sort(lines);
+        assertEquals(Arrays.asList(3, 4, 6), lines);
+        assertEquals(Arrays.asList("ok", "ok too"), texts());
+    }
+
+    @Test
+    public void testCsvWithQuotedFields() throws IOException {
+        String csv = "MessageID,Recipient,Message,Sender\n"
+                + "0000000001,+27831234567,\"Hi, \"\"you\"\"\",kyl_1\n"
+                + "0000000002,+27831234567,\"two\nlines\",kyl_1\n"
+                + "\n"
+                + "0000000003,+27831234567,too,many,fields\n"
+                + "0000000004,+27831234567,last,kyl_1\n";
+
+        BulkImporter.Report report = importer.importCsv(new StringReader(csv), null);
+
+        assertEquals(Arrays.asList("Hi, \"you\"", "two\nlines", "last"), texts());
+        assertEquals(1, report.getRejected());
+        assertEquals(6, report.getRejections().get(0).getLine());
+        assertEquals("kyl_1", store.get(0).getSender());
+    }
+
+    @Test
+    public void testStrayQuoteCostsOnlyItsLine() throws IOException {
+        StringBuilder csv = new StringBuilder("MessageID,Recipient,Message\n");
+        csv.append("0000000001,+27831234567,\"stray\n");                      // line 2: the quote never closes
+        for (int i = 2; i <= 300; i++) csv.append(String.format("%010d,+27831234567,row %d%n", i, i));
+        csv.append("0000000301,+27831234567,also \"stray\n");                 // line 302, the last one
+
+        BulkImporter.Report report = importer.importCsv(new StringReader(csv.toString()), null);
+
+        assertEquals(299, report.getImported());
+        assertEquals(2, report.getRejected());
+        assertEquals(2, report.getRejections().get(0).getLine());
+        assertEquals("unterminated quoted field", report.getRejections().get(0).getReason());
+        assertEquals(302, report.getRejections().get(1).getLine());
+        assertEquals("row 2", store.get(0).getMessageText());
+    }
+
+    private List<String> texts() {
+        List<String> out = new ArrayList<>();
+        for (ChatApp1.Message m : store) out.add(m.getMessageText());
+        return out;
+    }
+}
@@ -7,6 +7,7 @@ import java.util.*;
 
 import static org.junit.Assert.*;
 
+@SuppressWarnings("deprecation") // still covers the legacy messageHashes / messageIDs lists
 public class ChatApp1Test {
 
     @Before
@@ -0,0 +1,78 @@
+package com.example.chatapp;
+
+import org.junit.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class DraftStoreTest {
+
+    @Before
+    public void setup() throws Exception {
+        ChatApp1.storedMessages.clear();
+        Files.deleteIfExists(Paths.get(ChatApp1.STORED_FILE));
+        ChatApp1.drafts.load();
+    }
+
+    @After
+    public void cleanup() throws Exception {
+        ChatApp1.writer.flush();
+        Files.deleteIfExists(Paths.get(ChatApp1.STORED_FILE));
+    }
+
+    @Test
+    public void testStoreKeepsDraftInMemoryAndMirror() {
+        new ChatApp1.Message("D1", "S", "+27831234567", "Draft one", 3).sentMessage(2);
+
+        assertEquals(1, ChatApp1.drafts.size());
+        assertEquals(1, ChatApp1.storedMessages.size());
+        assertEquals("Draft one", ChatApp1.drafts.getDrafts().get(0).getMessageText());
+    }
+
+    @Test
+    public void testDraftsAppendedAndReloadKeepsHash() throws Exception {
+        ChatApp1.Message first = new ChatApp1.Message("D1", "S", "+27831234567", "First draft", 5);
+        first.sentMessage(2);
+        new ChatApp1.Message("D2", "S", "+27831234567", "Second draft", 6).sentMessage(2);
+
+        ChatApp1.loadStoredMessagesIntoArray();
+        List<ChatApp1.Message> reloaded = ChatApp1.drafts.getDrafts();
+        assertEquals(2, reloaded.size());
+        assertEquals(first.getMessageHash(), reloaded.get(0).getMessageHash());
+        assertEquals(2, ChatApp1.storedMessages.size());
+    }
+
+    @Test
+    public void testTornDraftAppendKeepsEarlierDrafts() throws Exception {
+        new ChatApp1.Message("D1", "S", "+27831234567", "First draft", 1).sentMessage(2);
+        new ChatApp1.Message("D2", "S", "+27831234567", "Second draft", 2).sentMessage(2);
+        ChatApp1.writer.flush();
+
+        // a crash halfway through appending a third draft: the closing bracket is gone
+        Path file = Paths.get(ChatApp1.STORED_FILE);
+        String text = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        text = text.substring(0, text.lastIndexOf('}') + 1) + ",\n{\"MessageID\": \"D3\", \"Sen";
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+
+        ChatApp1.loadStoredMessagesIntoArray();
+        assertEquals(2, ChatApp1.drafts.size());
+        assertEquals("Second draft", ChatApp1.drafts.getDrafts().get(1).getMessageText());
+
+        new ChatApp1.Message("D4", "S", "+27831234567", "Fourth draft", 4).sentMessage(2);
+        ChatApp1.loadStoredMessagesIntoArray();
+        assertEquals(3, ChatApp1.drafts.size());
+    }
+
+    @Test
+    public void testLegacyDraftFileStillLoads() throws Exception {
+        ChatApp1.writeJsonListToFile(ChatApp1.STORED_FILE,
+                Collections.singletonList(ChatApp1.toRecord(new ChatApp1.Message("OLD", "S", "+27", "old", 0))));
+        ChatApp1.loadStoredMessagesIntoArray();
+        new ChatApp1.Message("NEW", "S", "+27", "new", 1).sentMessage(2);
+
+        ChatApp1.loadStoredMessagesIntoArray();
+        assertEquals(2, ChatApp1.drafts.size());
+    }
+}
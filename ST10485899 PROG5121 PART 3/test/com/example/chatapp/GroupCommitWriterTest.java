@@ -0,0 +1,123 @@
+package com.example.chatapp;
+
+import org.junit.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class GroupCommitWriterTest {
+
+    private Path file;
+    private MessageLog log;
+    private GroupCommitWriter writer;
+
+    @Before
+    public void setup() throws Exception {
+        file = Files.createTempFile("groupcommit", ".json");
+        Files.delete(file);
+        log = new MessageLog(file.toString());
+    }
+
+    @After
+    public void cleanup() throws Exception {
+        if (writer != null) writer.close();
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(Paths.get(file + ".tmp"));
+    }
+
+    private static Map<String,String> record(int i) {
+        Map<String,String> m = new LinkedHashMap<>();
+        m.put("MessageID", "ID" + i);
+        m.put("Message", "text " + i);
+        return m;
+    }
+
+    @Test
+    public void testAckMeansWritten() throws Exception {
+        writer = new GroupCommitWriter(new GroupCommitWriter.FlushPolicy(16, 0, false));
+        GroupCommitWriter.await(writer.submit(log, record(1)));
+        assertEquals(1, log.readAll().size());
+    }
+
+    @Test
+    public void testConcurrentSubmitsKeepEveryRecord() throws Exception {
+        writer = new GroupCommitWriter(new GroupCommitWriter.FlushPolicy(64, 2, false));
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<?>> jobs = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            int base = t * 100;
+            jobs.add(pool.submit(() -> {
+                List<CompletableFuture<Void>> acks = new ArrayList<>();
+                for (int i = 0; i < 100; i++) acks.add(writer.submit(log, record(base + i)));
+                CompletableFuture.allOf(acks.toArray(new CompletableFuture<?>[0])).join();
+            }));
+        }
+        for (Future<?> f : jobs) f.get(30, TimeUnit.SECONDS);
+        pool.shutdown();
+
+        Set<String> ids = new HashSet<>();
+        for (Map<String,String> r : log.readAll()) ids.add(r.get("MessageID"));
+        assertEquals(800, ids.size());
+    }
+
+    @Test
+    public void testFlushWritesAsyncSubmits() throws Exception {
+        writer = new GroupCommitWriter(new GroupCommitWriter.FlushPolicy(1000, 50, true));
+        for (int i = 0; i < 10; i++) writer.submit(log, record(i));
+        writer.flush();
+        assertEquals(10, log.readAll().size());
+    }
+
+    @Test
+    public void testRewriteIsOrderedAfterQueuedAppends() throws Exception {
+        writer = new GroupCommitWriter(new GroupCommitWriter.FlushPolicy(1000, 20, false));
+        writer.submit(log, record(1));
+        writer.submit(log, record(2));
+        writer.submitRewrite(log, Collections.singletonList(record(2)));
+        GroupCommitWriter.await(writer.submitDurable(log, record(3)));
+
+        List<Map<String,String>> all = log.readAll();
+        assertEquals(2, all.size());
+        assertEquals("ID2", all.get(0).get("MessageID"));
+        assertEquals("ID3", all.get(1).get("MessageID"));
+    }
+
+    @Test
+    public void testCloseRacingSubmitsLeavesNoAckPending() throws Exception {
+        writer = new GroupCommitWriter(new GroupCommitWriter.FlushPolicy(8, 0, false));
+        List<CompletableFuture<Void>> acks = new CopyOnWriteArrayList<>();
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        CountDownLatch started = new CountDownLatch(4);
+        for (int t = 0; t < 4; t++) {
+            int base = t * 10_000;
+            pool.execute(() -> {
+                started.countDown();
+                for (int i = 0; ; i++) {
+                    try {
+                        acks.add(writer.submit(log, record(base + i)));
+                    } catch (IllegalStateException closed) {
+                        return;
+                    }
+                }
+            });
+        }
+        started.await();
+        writer.close();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+
+        int written = 0;
+        for (CompletableFuture<Void> ack : acks) {
+            assertTrue(ack.isDone());
+            if (!ack.isCompletedExceptionally()) written++;
+        }
+        assertEquals(written, log.readAll().size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPolicyRejectsEmptyBatch() {
+        new GroupCommitWriter.FlushPolicy(0, 0, false);
+    }
+}
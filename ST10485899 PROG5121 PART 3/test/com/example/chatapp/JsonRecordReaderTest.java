@@ -0,0 +1,87 @@
+package com.example.chatapp;
+
+import org.junit.*;
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class JsonRecordReaderTest {
+
+    private Path file;
+
+    @Before
+    public void setup() throws Exception {
+        file = Files.createTempFile("records", ".json");
+    }
+
+    @After
+    public void cleanup() throws Exception {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void testReadsRecordsOneAtATime() throws Exception {
+        String json = "[\n  {\"MessageID\": \"A1\", \"Message\": \"Hi\"},\n  {\"MessageID\": \"A2\", \"Message\": \"Bye\"}\n]\n";
+        JsonRecordReader reader = new JsonRecordReader(new StringReader(json));
+
+        Map<String,String> first = reader.nextRecord();
+        assertEquals("A1", first.get("MessageID"));
+        assertEquals(2, reader.getRecordLine());
+        assertEquals("Bye", reader.nextRecord().get("Message"));
+        assertNull(reader.nextRecord());
+    }
+
+    @Test
+    public void testTextWithSeparatorsSurvivesRoundTrip() throws Exception {
+        Map<String,String> m = new LinkedHashMap<>();
+        m.put("MessageID", "X");
+        m.put("Message", "a}, {b, \"c\": d\nnext line \\ end");
+        ChatApp1.writeJsonListToFile(file.toString(), Collections.singletonList(m));
+
+        List<Map<String,String>> read = ChatApp1.readJsonListFromFile(file.toString());
+        assertEquals(1, read.size());
+        assertEquals(m.get("Message"), read.get(0).get("Message"));
+    }
+
+    @Test
+    public void testOnlyCompleteWritesCountAsBytesWritten() throws Exception {
+        Map<String,String> m = Collections.singletonMap("MessageID", "Ü1");
+        long before = Metrics.GLOBAL.getBytesWritten();
+        ChatApp1.writeJsonListToFile(file.toString(), Collections.singletonList(m));
+        assertEquals(Files.size(file), Metrics.GLOBAL.getBytesWritten() - before);
+
+        before = Metrics.GLOBAL.getBytesWritten();
+        ChatApp1.writeJsonListToFile(file.resolve("not-a-directory.json").toString(), Collections.singletonList(m));
+        assertEquals(before, Metrics.GLOBAL.getBytesWritten());
+    }
+
+    @Test
+    public void testEmptyAndMissingFiles() throws Exception {
+        Files.writeString(file, "  ");
+        assertTrue(ChatApp1.readJsonListFromFile(file.toString()).isEmpty());
+        Files.delete(file);
+        assertTrue(ChatApp1.readJsonListFromFile(file.toString()).isEmpty());
+    }
+
+    @Test
+    public void testMalformedInputReportsLine() {
+        JsonRecordReader reader = new JsonRecordReader(new StringReader("[\n{\"a\": \"b\"}\n{\"c\": \"d\"}]"));
+        try {
+            reader.nextRecord();
+            reader.nextRecord();
+            fail("expected malformed JSON");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("line 3"));
+        }
+    }
+
+    @Test
+    public void testNonStringValuesKeptAsText() throws Exception {
+        Map<String,String> m = JsonRecordReader.parseObject("{\"n\": 42, \"ok\": true, \"x\": null}");
+        assertEquals("42", m.get("n"));
+        assertEquals("true", m.get("ok"));
+        assertNull(JsonRecordReader.parseObject("{\"n\": \"unterminated"));
+    }
+}
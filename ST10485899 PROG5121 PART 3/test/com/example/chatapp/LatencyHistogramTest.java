@@ -0,0 +1,42 @@
+package com.example.chatapp;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBucketsCoverEveryValueWithinSixPercent() {
+        Random rnd = new Random(5121);
+        for (int i = 0; i < 100_000; i++) {
+            long v = (rnd.nextLong() >>> 1) >>> rnd.nextInt(63); // any magnitude, never negative
+            int b = LatencyHistogram.index(v);
+            long high = LatencyHistogram.highestValue(b);
+            assertTrue(v + " -> " + high, high >= v);
+            assertTrue(v + " -> " + high, high - v <= v / 16);
+        }
+        assertEquals(0, LatencyHistogram.index(0));
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.highestValue(LatencyHistogram.index(Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram h = new LatencyHistogram();
+        assertEquals(0, h.percentile(99));
+        for (long v = 1; v <= 10_000; v++) h.record(v * 1000);
+
+        assertEquals(10_000, h.getCount());
+        assertEquals(10_000_000, h.getMax());
+        assertEquals(5_000_500, h.getMean(), 1);
+        assertEquals(5_000_000, h.percentile(50), 5_000_000 / 16);
+        assertEquals(9_900_000, h.percentile(99), 9_900_000 / 16);
+        assertEquals(10_000_000, h.percentile(100));
+
+        h.reset();
+        assertEquals(0, h.getCount());
+        assertEquals(0, h.getMax());
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.chatapp;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class LengthIndexTest {
+
+    private MessageStore store;
+    private LengthIndex index;
+
+    @Before
+    public void setUp() {
+        store = new MessageStore();
+        index = new LengthIndex();
+        store.addIndex(index);
+    }
+
+    private ChatApp1.Message send(String sender, String text) {
+        ChatApp1.Message m = new ChatApp1.Message("ID" + store.size(), sender, "+27", text, store.size());
+        store.add(m);
+        return m;
+    }
+
+    @Test
+    public void testTopKLongestFirstTiesInSendOrder() {
+        ChatApp1.Message a = send("ann", "aaaa");
+        ChatApp1.Message b = send("bob", "bbbbbb");
+        ChatApp1.Message c = send("ann", "cccc");
+        send("bob", "d");
+        assertEquals(b, index.longest());
+        assertEquals(Arrays.asList(b, a, c), index.topK(3));
+        assertEquals(4, index.topK(10).size());
+    }
+
+    @Test
+    public void testPerSender() {
+        send("ann", "aa");
+        ChatApp1.Message longest = send("ann", "aaaaa");
+        send("bob", "bbbbbbbbbb");
+        assertEquals(Collections.singletonList(longest), index.topK("ann", 1));
+        assertTrue(index.topK("nobody", 3).isEmpty());
+    }
+
+    @Test
+    public void testDeleteAndClearKeepIndexInStep() {
+        ChatApp1.Message big = send("ann", "a much longer message");
+        ChatApp1.Message small = send("ann", "short");
+        store.removeFirstByHash(big.getMessageHash());
+        assertEquals(small, index.longest());
+        store.clear();
+        assertNull(index.longest());
+        assertTrue(index.topK("ann", 2).isEmpty());
+    }
+}
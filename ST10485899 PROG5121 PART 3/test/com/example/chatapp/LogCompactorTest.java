@@ -0,0 +1,101 @@
+package com.example.chatapp;
+
+import org.junit.*;
+import java.nio.file.*;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class LogCompactorTest {
+
+    private Path dir;
+    private MessageLog log;
+    private GroupCommitWriter writer;
+    private String segment;
+
+    @Before
+    public void setup() throws Exception {
+        dir = Files.createTempDirectory("compactor");
+        log = new MessageLog(dir.resolve("messages.json").toString());
+        segment = dir.resolve("messages.seg").toString();
+        writer = new GroupCommitWriter(new GroupCommitWriter.FlushPolicy(64, 0, false));
+    }
+
+    @After
+    public void cleanup() throws Exception {
+        writer.close();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path f : files) Files.delete(f);
+        }
+        Files.delete(dir);
+    }
+
+    private static Map<String,String> record(int i) {
+        return ChatApp1.toRecord(new ChatApp1.Message("ID" + i, "S", "+27831234567", "text " + i, i));
+    }
+
+    @Test
+    public void testTombstoneRemovesFirstLiveMatch() throws Exception {
+        Map<String,String> r = record(1);
+        log.append(r);
+        log.append(r);
+        log.append(MessageLog.tombstone(r.get("MessageHash")));
+
+        MessageLog.LiveRecords live = new MessageLog.LiveRecords();
+        log.forEach(live::apply);
+        assertEquals(1, live.liveCount());
+        assertEquals(1, live.tombstoneCount());
+    }
+
+    @Test
+    public void testCompactionDropsTombstonesAndWritesSnapshot() throws Exception {
+        LogCompactor compactor = new LogCompactor(log, writer, segment, 0.3, 2);
+        for (int i = 0; i < 10; i++) log.append(record(i));
+        for (int i = 0; i < 6; i++) log.append(MessageLog.tombstone(record(i).get("MessageHash")));
+        compactor.reset(4, 6);
+
+        compactor.compact();
+
+        List<Map<String,String>> all = log.readAll();
+        assertEquals(4, all.size());
+        assertEquals("ID6", all.get(0).get("MessageID"));
+        assertEquals(0, compactor.getTombstones());
+
+        MessageSegment snapshot = MessageSegment.openIfCurrent(segment, log);
+        assertNotNull(snapshot);
+        assertEquals(4, snapshot.size());
+    }
+
+    @Test
+    public void testRecordsAppendedAfterSnapshotAreKept() throws Exception {
+        LogCompactor compactor = new LogCompactor(log, writer, segment, 0.3, 2);
+        for (int i = 0; i < 4; i++) log.append(record(i));
+        log.append(MessageLog.tombstone(record(0).get("MessageHash")));
+        long before = log.tailOffset();
+
+        compactor.compact();
+        GroupCommitWriter.await(writer.submit(log, record(9)));
+
+        List<String> ids = new ArrayList<>();
+        MessageSegment snapshot = MessageSegment.openIfCurrent(segment, log);
+        for (int i = 0; i < snapshot.size(); i++) ids.add(snapshot.getRecord(i).get("MessageID"));
+        log.forEachAfter(snapshot.getSourceTail(), r -> ids.add(r.get("MessageID")));
+        assertEquals(Arrays.asList("ID1", "ID2", "ID3", "ID9"), ids);
+        assertTrue(log.tailOffset() < before + 200);
+    }
+
+    @Test
+    public void testThresholdTriggersBackgroundCompaction() throws Exception {
+        LogCompactor compactor = new LogCompactor(log, writer, segment, 0.5, 3);
+        for (int i = 0; i < 4; i++) log.append(record(i));
+        compactor.reset(4, 0);
+        for (int i = 0; i < 3; i++) {
+            GroupCommitWriter.await(writer.submit(log, MessageLog.tombstone(record(i).get("MessageHash"))));
+            compactor.recordDelete();
+        }
+
+        assertTrue(compactor.awaitIdle(10_000));
+        assertEquals(1, compactor.getCompactions());
+        assertEquals(1, log.readAll().size());
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.chatapp;
+
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class MailboxTest {
+
+    private static ChatApp1.Message msg(String recipient, int n) {
+        return new ChatApp1.Message("ID" + n, "S", recipient, "message " + n, n);
+    }
+
+    private static List<String> texts(List<ChatApp1.Message> batch) {
+        List<String> out = new ArrayList<>();
+        for (ChatApp1.Message m : batch) out.add(m.getMessageText());
+        return out;
+    }
+
+    @Test
+    public void testDrainInBatchesOldestFirst() {
+        Mailbox box = new Mailbox(10, Mailbox.Backpressure.REJECT);
+        for (int i = 0; i < 5; i++) assertTrue(box.offer(msg("+27", i)));
+        assertEquals(Arrays.asList("message 0", "message 1"), texts(box.drain(2)));
+        assertEquals(3, box.drain(10).size());
+        assertTrue(box.drain(10).isEmpty());
+    }
+
+    @Test
+    public void testDropOldestKeepsNewest() {
+        Mailbox box = new Mailbox(3, Mailbox.Backpressure.DROP_OLDEST);
+        for (int i = 0; i < 5; i++) assertTrue(box.offer(msg("+27", i)));
+        assertEquals(2, box.getDropped());
+        assertEquals(Arrays.asList("message 2", "message 3", "message 4"), texts(box.drain(10)));
+    }
+
+    @Test
+    public void testRejectWhenFull() {
+        Mailbox box = new Mailbox(2, Mailbox.Backpressure.REJECT);
+        assertTrue(box.offer(msg("+27", 0)));
+        assertTrue(box.offer(msg("+27", 1)));
+        assertFalse(box.offer(msg("+27", 2)));
+        assertEquals(1, box.getRejected());
+        assertEquals(2, box.size());
+    }
+
+    @Test
+    public void testBlockNeverWaitsButSignalsRoom() {
+        Mailbox box = new Mailbox(1, Mailbox.Backpressure.BLOCK);
+        assertTrue(box.offer(msg("+27", 0)));
+        assertFalse(box.hasRoom());
+        assertFalse(box.offer(msg("+27", 1))); // a sender that did not wait for room is refused at once
+        assertEquals(1, box.getRejected());
+
+        List<String> woken = new ArrayList<>();
+        box.whenRoom(() -> woken.add("first"));
+        assertEquals(Collections.emptyList(), woken);
+        assertEquals(1, box.drain(1).size());
+        assertEquals(Collections.singletonList("first"), woken);
+        box.whenRoom(() -> woken.add("second")); // room already: runs straight away
+        assertEquals(Arrays.asList("first", "second"), woken);
+    }
+
+    @Test(timeout = 10000)
+    public void testHotRecipientDoesNotHoldUpOthers() throws Exception {
+        Mailboxes boxes = new Mailboxes(5, Mailbox.Backpressure.BLOCK, 5000);
+        for (int i = 0; i < 5; i++) assertTrue(boxes.deliver(msg("+111", i)));
+        assertFalse(boxes.hasRoom("+111"));
+        CountDownLatch room = new CountDownLatch(1);
+        boxes.whenRoom("+1 11", room::countDown);
+
+        // the hot mailbox is full and its sender holds back; another recipient is unaffected
+        long start = System.nanoTime();
+        assertTrue(boxes.deliver(msg("+222", 0)));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+        assertEquals(1, boxes.drain("+222", 10).size());
+
+        assertEquals(1, boxes.drain("+111", 1).size());
+        assertTrue(room.await(5, TimeUnit.SECONDS));
+        assertTrue(boxes.deliver(msg("+111", 99)));
+        assertEquals(5, boxes.pending("+111"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeMaxIsRejected() {
+        new Mailbox(10, Mailbox.Backpressure.REJECT).drain(-1);
+    }
+
+    @Test
+    public void testMailboxReadToTheEndIsEvicted() {
+        Mailboxes boxes = new Mailboxes(10, Mailbox.Backpressure.REJECT, 0);
+        for (int i = 0; i < 3; i++) assertTrue(boxes.deliver(msg("+111", i)));
+        assertEquals(2, boxes.drain("+111", 2).size());
+        assertEquals(1, boxes.size());
+        assertEquals(1, boxes.drain("+111", 2).size());
+        assertEquals(0, boxes.size());
+
+        assertTrue(boxes.deliver(msg("+111", 3))); // comes back on the next delivery
+        assertEquals(Collections.singletonList("message 3"), texts(boxes.drain("+111", 10)));
+    }
+
+    @Test
+    public void testIdleMailboxIsEvicted() throws Exception {
+        Mailboxes boxes = new Mailboxes(10, Mailbox.Backpressure.REJECT, 0, 50);
+        assertTrue(boxes.deliver(msg("+111", 0)));
+        assertEquals(0, boxes.evictIdle());
+        Thread.sleep(100);
+        assertEquals(1, boxes.evictIdle());
+        assertEquals(0, boxes.pending("+111"));
+
+        assertTrue(boxes.deliver(msg("+111", 1)));
+        Thread.sleep(100);
+        assertTrue(boxes.deliver(msg("+222", 0))); // sweeps on the way in; a fresh mailbox is not idle yet
+        assertEquals(0, boxes.pending("+111"));
+        assertEquals(1, boxes.pending("+222"));
+    }
+
+    @Test
+    public void testLastConsumerToDetachClearsTheMailboxes() {
+        Mailboxes boxes = new Mailboxes(10, Mailbox.Backpressure.REJECT, 0);
+        assertFalse(boxes.hasConsumer());
+        boxes.attachConsumer();
+        boxes.attachConsumer();
+        assertTrue(boxes.deliver(msg("+111", 0)));
+        boxes.detachConsumer();
+        assertEquals(1, boxes.pending("+111"));
+        boxes.detachConsumer();
+        assertFalse(boxes.hasConsumer());
+        assertEquals(0, boxes.size());
+    }
+
+    @Test
+    public void testSendWithoutConsumerQueuesNothing() {
+        ChatApp1.mailboxes.clear();
+        assertFalse(ChatApp1.mailboxes.hasConsumer());
+        ChatApp1.Message m = ChatApp1.newMessage("S", "+27839990001", "nobody reads this inbox");
+        assertEquals("Message successfully sent.", m.sentMessage(1));
+        assertEquals(0, ChatApp1.mailboxes.pending("+27839990001"));
+        ChatApp1.deleteByMessageHash(m.getMessageHash());
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.chatapp;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class MessageHashTest {
+
+    // the regex implementation the scanner replaced
+    private static String legacyHash(String messageID, String messageText, int messageNumber) {
+        String idPart = messageID != null && messageID.length() >= 2 ? messageID.substring(0, 2) : "00";
+        String text = messageText.trim();
+        String[] words = text.split("\\s+");
+        String first = words.length >= 1 ? words[0].replaceAll("[^a-zA-Z0-9]", "") : "";
+        String last = words.length >= 2 ? words[words.length - 1].replaceAll("[^a-zA-Z0-9]", "") : first;
+        String combined = (first + last).toUpperCase();
+        return (idPart + ":" + messageNumber + ":" + combined).toUpperCase();
+    }
+
+    private static List<String> legacyWords(String text) {
+        List<String> out = new ArrayList<>();
+        for (String w : text.trim().split("\\s+")) out.add(w.replaceAll("[^a-zA-Z0-9]", ""));
+        return out;
+    }
+
+    @Test
+    public void testKnownCases() {
+        String[] texts = {"", "   ", "Hi", "Hi there you", "  Hi,  you!  ", "a\tb\nc", "!!! ???", "x\u0001y z",
+                "café naïve", "one two", "\u0001lead trail\u0002"};
+        String[] ids = {null, "", "1", "12", "ab99", "éa", "zz"};
+        for (String t : texts) {
+            for (String id : ids) {
+                assertEquals(id + "/" + t, legacyHash(id, t, 7), new ChatApp1.Message(id, "S", "+27", t, 7).getMessageHash());
+            }
+            assertEquals(t, legacyWords(t), Arrays.asList(ChatApp1.Message.words(t)));
+        }
+    }
+
+    @Test
+    public void testMatchesRegexVersionOnRandomText() {
+        Random rnd = new Random(42);
+        char[] alphabet = "aZ09 \t\n\u000B\f\r.,!-_\u0001é ".toCharArray();
+        for (int n = 0; n < 20000; n++) {
+            char[] chars = new char[rnd.nextInt(12)];
+            for (int i = 0; i < chars.length; i++) chars[i] = alphabet[rnd.nextInt(alphabet.length)];
+            String text = new String(chars);
+            String id = n % 3 == 0 ? "x" : "q" + (char) ('a' + rnd.nextInt(26));
+            assertEquals(text, legacyHash(id, text, n), new ChatApp1.Message(id, "S", "+27", text, n).getMessageHash());
+            assertEquals(text, legacyWords(text), Arrays.asList(ChatApp1.Message.words(text)));
+        }
+    }
+}
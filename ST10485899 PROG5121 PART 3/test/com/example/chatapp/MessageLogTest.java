@@ -0,0 +1,133 @@
+package com.example.chatapp;
+
+import org.junit.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class MessageLogTest {
+
+    private Path file;
+    private MessageLog log;
+
+    @Before
+    public void setup() throws Exception {
+        file = Files.createTempFile("messagelog", ".json");
+        Files.delete(file);
+        log = new MessageLog(file.toString());
+    }
+
+    @After
+    public void cleanup() throws Exception {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(Paths.get(file + ".tmp"));
+    }
+
+    private static Map<String,String> record(String id, String text) {
+        Map<String,String> m = new LinkedHashMap<>();
+        m.put("MessageID", id);
+        m.put("Message", text);
+        return m;
+    }
+
+    @Test
+    public void testAppendThenReplay() throws Exception {
+        log.append(record("1", "Hello"));
+        log.append(record("2", "World"));
+
+        List<Map<String,String>> all = log.readAll();
+        assertEquals(2, all.size());
+        assertEquals("World", all.get(1).get("Message"));
+    }
+
+    @Test
+    public void testFileStaysReadableJsonArray() throws Exception {
+        log.append(record("1", "a \"quoted\" line\nwith newline"));
+        log.append(record("2", "B"));
+
+        List<Map<String,String>> all = ChatApp1.readJsonListFromFile(file.toString());
+        assertEquals(2, all.size());
+        assertEquals("2", all.get(1).get("MessageID"));
+    }
+
+    @Test
+    public void testAppendOnlyTouchesTail() throws Exception {
+        log.append(record("1", "first"));
+        String before = Files.readString(file);
+        log.append(record("2", "second"));
+        String after = Files.readString(file);
+
+        String kept = before.substring(0, before.lastIndexOf('}') + 1);
+        assertTrue(after.startsWith(kept));
+    }
+
+    @Test
+    public void testTornAppendIsRecovered() throws Exception {
+        log.append(record("1", "kept"));
+        // simulate a crash partway through the next append
+        String content = Files.readString(file);
+        String torn = content.substring(0, content.lastIndexOf('}') + 1) + ",\n{\"MessageID\": \"2\", \"Mess";
+        Files.writeString(file, torn);
+
+        log.open();
+        List<Map<String,String>> all = log.readAll();
+        assertEquals(1, all.size());
+        assertEquals("kept", all.get(0).get("Message"));
+
+        log.append(record("3", "after crash"));
+        assertEquals(2, log.readAll().size());
+    }
+
+    @Test
+    public void testAppendRecoversWithoutOpen() throws Exception {
+        log.append(record("1", "kept"));
+        Files.write(file, "{\"MessageID\": \"9\"".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        log.append(record("2", "next"));
+        List<Map<String,String>> all = log.readAll();
+        assertEquals(2, all.size());
+        assertEquals("2", all.get(1).get("MessageID"));
+    }
+
+    @Test
+    public void testLegacyPrettyFileStillAppends() throws Exception {
+        List<Map<String,String>> legacy = new ArrayList<>();
+        legacy.add(record("1", "old"));
+        ChatApp1.writeJsonListToFile(file.toString(), legacy);
+
+        log.open();
+        log.append(record("2", "new"));
+        List<Map<String,String>> all = log.readAll();
+        assertEquals(2, all.size());
+        assertEquals("old", all.get(0).get("Message"));
+    }
+
+    @Test
+    public void testRewriteReplacesContents() throws Exception {
+        log.append(record("1", "a"));
+        log.append(record("2", "b"));
+        log.rewrite(Collections.singletonList(record("2", "b")));
+
+        List<Map<String,String>> all = log.readAll();
+        assertEquals(1, all.size());
+        assertEquals("2", all.get(0).get("MessageID"));
+    }
+
+    @Test
+    public void testOnlyRewritesChangeTheGeneration() throws Exception {
+        log.append(record("1", "a"));
+        long before = log.generation();
+        log.append(record("2", "b"));
+        assertEquals(before, log.generation());
+
+        log.rewrite(Collections.singletonList(record("2", "b")));
+        assertEquals(before + 1, log.generation());
+
+        MessageLog other = new MessageLog(file + ".tmp");
+        other.append(record("3", "c"));
+        log.replaceWith(other);
+        assertEquals(before + 2, log.generation());
+    }
+}
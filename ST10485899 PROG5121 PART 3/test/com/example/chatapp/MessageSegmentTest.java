@@ -0,0 +1,123 @@
+package com.example.chatapp;
+
+import org.junit.*;
+import java.nio.file.*;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class MessageSegmentTest {
+
+    private Path json, seg;
+
+    @Before
+    public void setup() throws Exception {
+        json = Files.createTempFile("messages", ".json");
+        seg = Files.createTempFile("messages", ".seg");
+        Files.delete(json);
+        Files.delete(seg);
+    }
+
+    @After
+    public void cleanup() throws Exception {
+        Files.deleteIfExists(json);
+        Files.deleteIfExists(seg);
+    }
+
+    private static Map<String,String> record(String id, String text) {
+        return ChatApp1.toRecord(new ChatApp1.Message(id, "S", "+27831234567", text, 0));
+    }
+
+    @Test
+    public void testConvertAndRandomAccess() throws Exception {
+        MessageLog log = new MessageLog(json.toString());
+        for (int i = 0; i < 50; i++) log.append(record("ID" + i, "text number " + i));
+
+        assertEquals(50, MessageSegment.convert(json.toString(), seg.toString()));
+        MessageSegment segment = MessageSegment.open(seg.toString());
+        assertEquals(50, segment.size());
+        assertEquals("ID37", segment.getRecord(37).get("MessageID"));
+        assertEquals("text number 12", segment.getField(12, 4));
+    }
+
+    @Test
+    public void testUnicodeAndEmptyFields() throws Exception {
+        MessageLog log = new MessageLog(json.toString());
+        log.append(record("Ü1", ""));
+        MessageSegment.convert(json.toString(), seg.toString());
+
+        Map<String,String> r = MessageSegment.open(seg.toString()).getRecord(0);
+        assertEquals("Ü1", r.get("MessageID"));
+        assertEquals("", r.get("Message"));
+    }
+
+    @Test
+    public void testTailAppendedAfterSegmentIsReplayed() throws Exception {
+        MessageLog log = new MessageLog(json.toString());
+        log.append(record("A1", "one"));
+        MessageSegment.convert(json.toString(), seg.toString());
+        log.append(record("A2", "two"));
+        log.append(record("A3", "three"));
+
+        MessageSegment segment = MessageSegment.openIfCurrent(seg.toString(), log);
+        assertNotNull(segment);
+        List<String> tail = new ArrayList<>();
+        log.forEachAfter(segment.getSourceTail(), r -> tail.add(r.get("MessageID")));
+        assertEquals(Arrays.asList("A2", "A3"), tail);
+    }
+
+    @Test
+    public void testSegmentIsStaleAfterRewrite() throws Exception {
+        MessageLog log = new MessageLog(json.toString());
+        log.append(record("A1", "one"));
+        log.append(record("A2", "two"));
+        MessageSegment.convert(json.toString(), seg.toString());
+
+        log.rewrite(Collections.singletonList(record("A2", "two")));
+        assertNull(MessageSegment.openIfCurrent(seg.toString(), log));
+    }
+
+    @Test
+    public void testSegmentIsStaleAfterInPlaceRewriteOfSameLength() throws Exception {
+        MessageLog log = new MessageLog(json.toString());
+        log.append(record("A1", "one"));
+        log.append(record("A2", "two"));
+        MessageSegment.convert(json.toString(), seg.toString());
+
+        // same file (inode) and same length, other records: only the checksum can tell
+        Path other = Files.createTempFile("other", ".json");
+        Files.delete(other);
+        MessageLog replacement = new MessageLog(other.toString());
+        replacement.append(record("A2", "two"));
+        replacement.append(record("A3", "six"));
+        byte[] bytes = Files.readAllBytes(other);
+        Files.delete(other);
+        assertEquals(Files.size(json), bytes.length);
+        Files.write(json, bytes, StandardOpenOption.TRUNCATE_EXISTING);
+
+        assertNull(MessageSegment.openIfCurrent(seg.toString(), log));
+    }
+
+    @Test
+    public void testSegmentIsStaleWhenEitherEndOfALargeLogChanges() throws Exception {
+        MessageLog log = new MessageLog(json.toString());
+        for (int i = 0; i < 5000; i++) log.append(record(String.format("ID%04d", i), "text number " + i));
+        assertTrue(Files.size(json) > 2L * MessageLog.FINGERPRINT_WINDOW);
+        MessageSegment.convert(json.toString(), seg.toString());
+        assertNotNull(MessageSegment.openIfCurrent(seg.toString(), log));
+        String original = Files.readString(json);
+
+        // same length, first or last record edited in place
+        for (String id : new String[] {"ID0000", "ID4999"}) {
+            Files.writeString(json, original.replace(id, id.replace("ID", "XX")), StandardOpenOption.TRUNCATE_EXISTING);
+            assertEquals(original.length(), Files.size(json));
+            assertNull(id, MessageSegment.openIfCurrent(seg.toString(), log));
+        }
+    }
+
+    @Test
+    public void testCorruptSegmentIsRejected() throws Exception {
+        Files.writeString(seg, "definitely not a segment file");
+        assertNull(MessageSegment.openIfCurrent(seg.toString(), new MessageLog(json.toString())));
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.chatapp;
+
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class MessageStoreStressTest {
+
+    private static final int WRITERS = 8;
+    private static final int PER_WRITER = 2000;
+
+    @Test(timeout = 60000)
+    public void testStoreStaysConsistentUnderContention() throws Exception {
+        MessageStore store = new MessageStore();
+        RecipientIndex recipients = new RecipientIndex();
+        LengthIndex lengths = new LengthIndex();
+        store.addIndex(recipients);
+        store.addIndex(lengths);
+
+        ExecutorService pool = Executors.newFixedThreadPool(WRITERS + 4);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger deleted = new AtomicInteger();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Future<?>> writers = new ArrayList<>();
+
+        for (int w = 0; w < WRITERS; w++) {
+            final int writer = w;
+            writers.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < PER_WRITER; i++) {
+                    // unique ID prefix per message, so hashes are unique too
+                    String id = String.format("%02d%08d", writer, i);
+                    ChatApp1.Message m = new ChatApp1.Message(id, "w" + writer, "+27" + (i % 10),
+                            "hello number " + i + " from " + writer, i);
+                    store.add(m);
+                    if (i % 5 == 0 && store.removeFirstByHash(m.getMessageHash()) != null) deleted.incrementAndGet();
+                }
+                return null;
+            }));
+        }
+
+        // readers run until the writers are done and must never fail or see a half-added message
+        CountDownLatch writersDone = new CountDownLatch(1);
+        for (int r = 0; r < 4; r++) {
+            pool.submit(() -> {
+                try {
+                    start.await();
+                    while (writersDone.getCount() > 0) {
+                        for (ChatApp1.Message m : store) {
+                            ChatApp1.Message byId = store.findById(m.getMessageID());
+                            // either found, or deleted between the iteration and the lookup
+                            if (byId != null) assertSame(m, byId);
+                        }
+                        store.page(MessagePage.START, 50);
+                        lengths.topK(5);
+                        recipients.page("+270", MessagePage.START, 20);
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+                return null;
+            });
+        }
+
+        start.countDown();
+        for (Future<?> f : writers) f.get();
+        writersDone.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(30, TimeUnit.SECONDS));
+        if (failure.get() != null) throw new AssertionError("reader failed", failure.get());
+
+        int expected = WRITERS * PER_WRITER - deleted.get();
+        assertEquals(WRITERS * PER_WRITER / 5, deleted.get());
+        assertEquals(expected, store.size());
+
+        // every index agrees with the send-order view
+        List<ChatApp1.Message> all = new ArrayList<>(store);
+        assertEquals(expected, all.size());
+        int recipientTotal = 0;
+        for (int i = 0; i < 10; i++) recipientTotal += recipients.count("+27" + i);
+        assertEquals(expected, recipientTotal);
+        assertEquals(expected, lengths.topK(Integer.MAX_VALUE).size());
+        for (int i = 0; i < all.size(); i++) {
+            ChatApp1.Message m = all.get(i);
+            assertSame(m, store.findById(m.getMessageID()));
+            assertSame(m, store.findFirstByHash(m.getMessageHash()));
+            assertSame(m, store.get(i));
+            if (i > 0) assertTrue(store.seqOf(all.get(i - 1)) < store.seqOf(m));
+        }
+    }
+}
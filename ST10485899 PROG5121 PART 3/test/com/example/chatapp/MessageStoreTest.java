@@ -0,0 +1,99 @@
+package com.example.chatapp;
+
+import org.junit.*;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class MessageStoreTest {
+
+    private MessageStore store;
+
+    @Before
+    public void setup() {
+        store = new MessageStore();
+    }
+
+    @Test
+    public void testAddIndexesByIdAndHash() {
+        ChatApp1.Message m = new ChatApp1.Message("ID1", "S", "+27", "Hello there", 0);
+        store.add(m);
+
+        assertSame(m, store.findById("ID1"));
+        assertSame(m, store.findFirstByHash(m.getMessageHash()));
+        assertSame(m, store.get(0));
+    }
+
+    @Test
+    public void testHashCollisionsRemoveEarliestFirst() {
+        // same ID prefix, number and first/last word -> same hash
+        ChatApp1.Message a = new ChatApp1.Message("AB1", "S", "+27", "Hi you", 0);
+        ChatApp1.Message b = new ChatApp1.Message("AB2", "S", "+27", "Hi there you", 0);
+        store.add(a);
+        store.add(b);
+        assertEquals(a.getMessageHash(), b.getMessageHash());
+        assertEquals(2, store.findAllByHash(a.getMessageHash()).size());
+
+        assertSame(a, store.removeFirstByHash(a.getMessageHash()));
+        assertSame(b, store.findFirstByHash(a.getMessageHash()));
+        assertEquals(Collections.singletonList(b), new ArrayList<>(store));
+    }
+
+    @Test
+    public void testRemoveByHashOnlyWhenAllowed() {
+        ChatApp1.Message m = new ChatApp1.Message("P1", "owner", "+27", "guarded text", 0);
+        store.add(m);
+
+        assertSame(m, store.removeFirstByHash(m.getMessageHash(), found -> found.getSender().equals("other")));
+        assertSame(m, store.findFirstByHash(m.getMessageHash()));
+        assertSame(m, store.removeFirstByHash(m.getMessageHash(), found -> found.getSender().equals("owner")));
+        assertNull(store.findFirstByHash(m.getMessageHash()));
+        assertNull(store.removeFirstByHash(m.getMessageHash(), found -> true));
+    }
+
+    @Test
+    public void testRemoveAndClearUpdateIndexes() {
+        store.add(new ChatApp1.Message("X1", "S", "+27", "one", 0));
+        store.add(new ChatApp1.Message("X2", "S", "+27", "two", 1));
+        store.remove(0);
+
+        assertNull(store.findById("X1"));
+        assertNotNull(store.findById("X2"));
+        store.clear();
+        assertNull(store.findById("X2"));
+        assertTrue(store.isEmpty());
+    }
+
+    @Test
+    public void testPositionsFollowRemovals() {
+        List<ChatApp1.Message> added = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            ChatApp1.Message m = new ChatApp1.Message("P" + i, "S", "+27", "message " + i, i);
+            added.add(m);
+            store.add(m);
+        }
+        assertSame(added.get(4), store.get(4));
+        store.removeFirstByHash(added.get(2).getMessageHash());
+        store.remove(0);
+
+        assertEquals(8, store.size());
+        assertSame(added.get(1), store.get(0));
+        assertSame(added.get(5), store.get(3));
+        assertSame(added.get(9), store.get(7));
+    }
+
+    @Test
+    public void testSameMessageCannotBeAddedTwice() {
+        ChatApp1.Message m = new ChatApp1.Message("D1", "S", "+27", "only once", 0);
+        store.add(m);
+        try {
+            store.add(m);
+            fail("second add of the same message");
+        } catch (IllegalArgumentException expected) {
+        }
+        assertEquals(1, store.size());
+        assertSame(m, store.removeFirstByHash(m.getMessageHash()));
+        assertNull(store.findById("D1"));
+        assertTrue(store.isEmpty());
+    }
+}
@@ -0,0 +1,186 @@
+package com.example.chatapp;
+
+import org.junit.*;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class MessageTableModelTest {
+
+    private static final int N = 20000;
+
+    private MessageStore store;
+    private LengthIndex lengths;
+    private RecipientIndex recipients;
+    private TextIndex text;
+
+    @Before
+    public void setup() {
+        store = new MessageStore();
+        lengths = new LengthIndex();
+        recipients = new RecipientIndex();
+        text = new TextIndex();
+        store.addIndex(lengths);
+        store.addIndex(recipients);
+        store.addIndex(text);
+        List<ChatApp1.Message> batch = new ArrayList<>(N);
+        for (int i = 0; i < N; i++) {
+            String words = i % 1000 == 0 ? "rare marker " + i : "message number " + i + (i % 7 == 0 ? " padded out" : "");
+            batch.add(new ChatApp1.Message("ID" + i, "S" + (i % 3), String.format("+2783%07d", i % 10), words, i));
+        }
+        store.addAll(batch);
+    }
+
+    // loads and delivers on the calling thread, so every read finds its row
+    private static MessageTableModel model(MessageTableModel.Source source, MessageTableModel.Column... columns) {
+        return new MessageTableModel(source, Arrays.asList(columns), Runnable::run, Runnable::run);
+    }
+
+    private static Object cell(MessageTableModel model, int row, int column) {
+        return model.getValueAt(row, column);
+    }
+
+    @Test
+    public void testRandomAccessFetchesOnlyThePagesLookedAt() {
+        AtomicInteger fetched = new AtomicInteger();
+        MessageTableModel.Source all = MessageTableModel.Source.all(store);
+        MessageTableModel.Source counting = MessageTableModel.Source.of(all::size, (after, limit) -> {
+            fetched.incrementAndGet();
+            return all.page(after, limit);
+        });
+        List<Runnable> queued = new ArrayList<>();
+        MessageTableModel model = new MessageTableModel(counting,
+                Arrays.asList(MessageTableModel.Column.MESSAGE_ID, MessageTableModel.Column.LENGTH), queued::add, Runnable::run);
+        assertEquals(0, model.getRowCount());   // counted on the loader, not on the caller's thread
+        assertEquals(1, queued.size());
+        queued.remove(0).run();
+        assertEquals(N, model.getRowCount());
+        assertEquals("MessageID", model.getColumnName(0));
+        assertEquals(0, fetched.get()); // nothing is read until a row is asked for
+
+        List<Integer> updated = new ArrayList<>();
+        model.addTableModelListener(e -> updated.add(e.getFirstRow()));
+        assertEquals(MessageTableModel.LOADING, model.getValueAt(N - 1, 0));
+        assertEquals(MessageTableModel.LOADING, model.getValueAt(N - 2, 1));
+        assertEquals(1, queued.size());                                      // one load per page
+        queued.remove(0).run();
+        assertEquals(Collections.singletonList((N - 1) / MessageTableModel.PAGE_SIZE * MessageTableModel.PAGE_SIZE), updated);
+        assertEquals("ID" + (N - 1), model.getValueAt(N - 1, 0));     // jumped to the end
+        int pages = (N + MessageTableModel.PAGE_SIZE - 1) / MessageTableModel.PAGE_SIZE;
+        assertEquals(pages, fetched.get());
+        assertEquals(1, model.cachedPages());
+
+        fetched.set(0);
+        for (int row = 0; row < N; row++) {
+            if (cell(model, row, 0) == MessageTableModel.LOADING) queued.remove(0).run();
+            assertEquals("ID" + row, cell(model, row, 0));           // every cursor is known now
+        }
+        assertEquals(pages, fetched.get());                                // each page once, no walking
+        assertTrue(model.cachedPages() <= MessageTableModel.MAX_CACHED_PAGES);
+        assertEquals(("message number " + (N - 2)).length(), cell(model, N - 2, 1));
+    }
+
+    @Test
+    public void testNewestRequestFirstAndOneWalkServesThePagesItPasses() {
+        AtomicInteger fetched = new AtomicInteger();
+        MessageTableModel.Source all = MessageTableModel.Source.all(store);
+        MessageTableModel.Source counting = MessageTableModel.Source.of(all::size, (after, limit) -> {
+            fetched.incrementAndGet();
+            return all.page(after, limit);
+        });
+        List<Runnable> queued = new ArrayList<>();
+        MessageTableModel model = new MessageTableModel(counting,
+                Collections.singletonList(MessageTableModel.Column.MESSAGE_ID), queued::add, Runnable::run);
+        queued.remove(0).run(); // the count
+        int size = MessageTableModel.PAGE_SIZE;
+
+        for (int page : new int[]{10, 20, 30}) assertEquals(MessageTableModel.LOADING, cell(model, page * size, 0));
+        queued.remove(0).run(); // serves page 30 first, handing over 10 and 20 on the way
+        assertEquals(31, fetched.get());
+        for (int page : new int[]{10, 20, 30}) assertEquals("ID" + page * size, cell(model, page * size, 0));
+        for (Runnable r : queued) r.run(); // nothing left for the other two loads
+        queued.clear();
+        assertEquals(31, fetched.get());
+
+        // flung through many pages: only the newest MAX_PENDING are loaded
+        fetched.set(0);
+        for (int page = 40; page < 60; page++) cell(model, page * size, 0);
+        for (Runnable r : queued) r.run();
+        queued.clear();
+        assertEquals(MessageTableModel.LOADING, cell(model, 40 * size, 0)); // dropped, so asked for again
+        assertEquals("ID" + 59 * size, cell(model, 59 * size, 0));
+        assertEquals(30, fetched.get()); // one walk, from the cursor of page 30
+
+        // a load that starts after a refresh is skipped
+        cell(model, 70 * size, 0);
+        model.refresh();
+        fetched.set(0);
+        for (Runnable r : queued) r.run();
+        assertEquals(0, fetched.get());
+    }
+
+    @Test
+    public void testOrderAndFiltersComeFromTheIndexes() {
+        MessageTableModel byLength = model(MessageTableModel.Source.byLength(store, lengths), MessageTableModel.Column.LENGTH);
+        int previous = Integer.MAX_VALUE;
+        for (int row = 0; row < N; row += 97) {
+            int length = (Integer) cell(byLength, row, 0);
+            assertTrue(length <= previous);
+            previous = length;
+        }
+        assertEquals(lengths.longest().getMessageText().length(), cell(byLength, 0, 0));
+
+        MessageTableModel toOne = model(MessageTableModel.Source.recipient(recipients, "+27 83 000 0003"),
+                MessageTableModel.Column.MESSAGE_ID, MessageTableModel.Column.RECIPIENT);
+        assertEquals(N / 10, toOne.getRowCount());
+        assertEquals("ID3", cell(toOne, 0, 0));
+        assertEquals("ID" + (N - 7), cell(toOne, N / 10 - 1, 0));
+
+        MessageTableModel rare = model(MessageTableModel.Source.search(text, "rare"), MessageTableModel.Column.MESSAGE);
+        assertEquals(N / 1000, rare.getRowCount());
+        for (int row = 0; row < rare.getRowCount(); row++) assertTrue(((String) cell(rare, row, 0)).startsWith("rare marker"));
+    }
+
+    @Test
+    public void testSearchIsRankedOncePerRefresh() {
+        AtomicInteger ranked = new AtomicInteger();
+        TextIndex counting = new TextIndex() {
+            @Override
+            public long[] rank(String query) {
+                ranked.incrementAndGet();
+                return super.rank(query);
+            }
+        };
+        store.addIndex(counting);
+        MessageTableModel model = model(MessageTableModel.Source.search(counting, "message"), MessageTableModel.Column.MESSAGE_ID);
+        int rows = model.getRowCount();
+        assertEquals(N - N / 1000, rows);
+        for (int row = 0; row < rows; row += MessageTableModel.PAGE_SIZE) assertNotEquals(MessageTableModel.LOADING, cell(model, row, 0));
+        assertEquals(1, ranked.get());
+
+        // same order as search() pages
+        List<ChatApp1.Message> top = text.search("message", 0, 5).getHits();
+        for (int row = 0; row < 5; row++) assertEquals(top.get(row).getMessageID(), cell(model, row, 0));
+
+        model.refresh();
+        assertEquals(rows, model.getRowCount());
+        assertEquals(2, ranked.get());
+    }
+
+    @Test
+    public void testListSourceAndRefresh() {
+        List<ChatApp1.Message> drafts = new ArrayList<>(store.page(MessagePage.START, 600).getMessages());
+        MessageTableModel model = model(MessageTableModel.Source.list(drafts), MessageTableModel.Column.MESSAGE_ID);
+        assertEquals(600, model.getRowCount());
+        assertEquals("ID599", cell(model, 599, 0));
+
+        drafts.subList(300, 600).clear();
+        assertEquals("ID599", cell(model, 599, 0)); // the cached page, until a refresh
+        model.refresh();
+        assertEquals(0, model.cachedPages());
+        assertEquals(300, model.getRowCount());
+        assertEquals("ID299", cell(model, 299, 0));
+    }
+}
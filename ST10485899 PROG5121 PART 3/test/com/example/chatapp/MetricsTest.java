@@ -0,0 +1,59 @@
+package com.example.chatapp;
+
+import org.junit.Test;
+
+import javax.management.*;
+import javax.management.openmbean.TabularData;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class MetricsTest {
+
+    @Test
+    public void testRecordAndDump() {
+        Metrics metrics = new Metrics();
+        long start = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(2);
+        metrics.record(Metrics.Op.SEND, start);
+        metrics.record(Metrics.Op.SEND, start);
+        metrics.addBytesWritten(100);
+        metrics.addRecordsParsed(3);
+
+        assertEquals(Long.valueOf(2), metrics.getCounts().get("SEND"));
+        assertFalse(metrics.getCounts().containsKey("DELETE")); // never called
+        assertTrue(metrics.getP50Micros().get("SEND") >= 2000);
+        String dump = metrics.dump();
+        assertTrue(dump, dump.contains("SEND"));
+        assertTrue(dump, dump.contains("bytes written: 100, records parsed: 3"));
+
+        metrics.reset();
+        assertTrue(metrics.getCounts().isEmpty());
+    }
+
+    @Test
+    public void testVisibleOverJmx() throws Exception {
+        Metrics metrics = new Metrics();
+        metrics.record(Metrics.Op.SEARCH_ID, System.nanoTime());
+        metrics.addBytesWritten(42);
+        metrics.registerMBean();
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(Metrics.OBJECT_NAME);
+        assertEquals(42L, server.getAttribute(name, "BytesWritten"));
+        TabularData counts = (TabularData) server.getAttribute(name, "Counts");
+        assertEquals(1L, counts.get(new Object[]{"SEARCH_ID"}).get("value"));
+        assertTrue(((String) server.invoke(name, "dump", null, null)).contains("SEARCH_ID"));
+        server.unregisterMBean(name);
+    }
+
+    @Test
+    public void testOperationsAreRecorded() {
+        long before = Metrics.GLOBAL.latency(Metrics.Op.SEARCH_ID).getCount();
+        long parsed = Metrics.GLOBAL.getRecordsParsed();
+        ChatApp1.searchByMessageID("no such id");
+        JsonRecordReader.parseObject("{\"a\": \"b\"}"); // single objects are not records of a file
+        assertEquals(before + 1, Metrics.GLOBAL.latency(Metrics.Op.SEARCH_ID).getCount());
+        assertEquals(parsed, Metrics.GLOBAL.getRecordsParsed());
+    }
+}
@@ -0,0 +1,260 @@
+package com.example.chatapp;
+
+import org.junit.*;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class QuickChatServerTest {
+
+    private QuickChatServer server;
+
+    @Before
+    public void setup() throws Exception {
+        ChatApp1.contents.clear();
+        ChatApp1.mailboxes.clear();
+        Files.deleteIfExists(Paths.get(ChatApp1.MESSAGES_FILE));
+        server = new QuickChatServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 4);
+        server.start();
+    }
+
+    @After
+    public void cleanup() throws Exception {
+        server.close();
+        ChatApp1.writer.flush();
+        ChatApp1.contents.clear();
+        Files.deleteIfExists(Paths.get(ChatApp1.MESSAGES_FILE));
+    }
+
+    // minimal client for the line protocol
+    private static final class Client implements Closeable {
+        final Socket socket;
+        final BufferedReader in;
+        final Writer out;
+
+        Client(int port) throws IOException {
+            socket = new Socket(InetAddress.getLoopbackAddress(), port);
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+        }
+
+        /** Status line first, then the un-stuffed result lines. */
+        List<String> call(String command) throws IOException {
+            out.write(command + "\n");
+            out.flush();
+            List<String> reply = new ArrayList<>();
+            reply.add(in.readLine());
+            String line;
+            while (!(line = in.readLine()).equals(".")) reply.add(line.startsWith("..") ? line.substring(1) : line);
+            return reply;
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testSendSearchDeleteOverLoopback() throws IOException {
+        ChatApp1.Login.users.register(new ChatApp1.User("Alice", "F", "alice", "Password123", "+27831234567", ""));
+        try (Client c = new Client(server.getPort())) {
+            assertEquals(Arrays.asList("OK", "PONG"), c.call("PING"));
+            assertEquals("OK", c.call("LOGIN alice Password123").get(0));
+
+            List<String> sent = c.call("SEND alice +27831234567 Hello over the wire");
+            assertEquals("OK", sent.get(0));
+            String id = sent.get(1).substring("MessageID: ".length());
+            String hash = sent.get(2).substring("MessageHash: ".length());
+
+            List<String> byId = c.call("ID " + id);
+            assertTrue(byId.contains("Message: Hello over the wire"));
+            assertTrue(c.call("RECIPIENT +27831234567").contains("Sender: alice"));
+            assertTrue(c.call("INBOX +27831234567").contains("Sender: alice"));
+            assertEquals(Collections.singletonList("OK"), c.call("INBOX +27831234567"));
+            assertTrue(c.call("LONGEST").contains("Hello over the wire"));
+            assertTrue(c.call("REPORT").get(1).contains("MessageHash: " + hash));
+
+            assertEquals("OK", c.call("DELETE " + hash).get(0));
+            assertTrue(c.call("DELETE " + hash).get(0).startsWith("ERR"));
+            assertTrue(c.call("SEND alice 0831234567 bad number").get(0).startsWith("ERR"));
+            assertTrue(c.call("NOPE").get(0).startsWith("ERR"));
+            assertEquals(Arrays.asList("OK", "Bye."), c.call("QUIT"));
+            assertNull(c.in.readLine());
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testLoginSessionAcrossConnections() throws IOException {
+        ChatApp1.Login.users.register(new ChatApp1.User("Srv User", "F", "srv_1", "Password123", "+27831230001", ""));
+        try (Client a = new Client(server.getPort()); Client b = new Client(server.getPort())) {
+            assertTrue(a.call("LOGIN srv_1 wrong").get(0).startsWith("ERR"));
+            assertTrue(a.call("WHOAMI").get(0).startsWith("ERR"));
+
+            List<String> login = a.call("LOGIN srv_1 Password123");
+            assertEquals("OK", login.get(0));
+            String token = login.get(1).substring("Token: ".length());
+            assertEquals(Arrays.asList("OK", "srv_1"), a.call("WHOAMI"));
+            assertEquals("OK", a.call("SEND srv_1 +27831234567 signed in").get(0));
+            assertTrue(a.call("SEND mallory +27831234567 spoofed").get(0).startsWith("ERR"));
+
+            assertTrue(b.call("SESSION not-a-token").get(0).startsWith("ERR"));
+            assertEquals("OK", b.call("SESSION " + token).get(0));
+            assertEquals(Arrays.asList("OK", "srv_1"), b.call("WHOAMI"));
+
+            assertEquals("OK", a.call("LOGOUT").get(0));
+            assertEquals("ERR session expired", b.call("WHOAMI").get(0)); // ended for every connection
+            assertTrue(b.call("WHOAMI").get(0).startsWith("ERR not logged in"));
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testChangesNeedASessionAndStayWithTheirOwner() throws IOException {
+        ChatApp1.Login.users.register(new ChatApp1.User("Srv Two", "F", "srv_2", "Password123", "+27831230002", ""));
+        ChatApp1.Login.users.register(new ChatApp1.User("Srv Three", "M", "srv_3", "Password123", "+27831230003", ""));
+        try (Client a = new Client(server.getPort()); Client b = new Client(server.getPort())) {
+            assertEquals("ERR login required", a.call("SEND srv_2 +27831230003 anonymous").get(0));
+            assertEquals("ERR login required", a.call("INBOX +27831230003").get(0));
+            assertEquals("ERR login required", a.call("DELETE 00:0:HIHI").get(0));
+            assertEquals("OK", a.call("PING").get(0)); // lookups stay open
+
+            assertEquals("OK", a.call("LOGIN srv_2 Password123").get(0));
+            assertEquals("OK", b.call("LOGIN srv_3 Password123").get(0));
+            String hash = a.call("SEND srv_2 +27831230003 for three").get(2).substring("MessageHash: ".length());
+            assertTrue(a.call("INBOX +27831230003").get(0).startsWith("ERR"));
+            assertTrue(b.call("INBOX +27831230003").contains("Sender: srv_2"));
+            assertTrue(b.call("DELETE " + hash).get(0).startsWith("ERR"));
+            assertEquals("OK", a.call("DELETE " + hash).get(0));
+            assertTrue(b.call("INBOX +27831230003 -1").get(0).startsWith("ERR"));
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testLineTooLongIsAnsweredAfterEarlierCommands() throws IOException {
+        try (Client c = new Client(server.getPort())) {
+            char[] tooLong = new char[64 * 1024 + 16];
+            Arrays.fill(tooLong, 'x');
+            c.out.write("PING\nPING\n" + new String(tooLong) + "\nPING\n");
+            c.out.flush();
+            for (int i = 0; i < 2; i++) {
+                assertEquals("OK", c.in.readLine());
+                assertEquals("PONG", c.in.readLine());
+                assertEquals(".", c.in.readLine());
+            }
+            assertEquals("ERR line too long", c.in.readLine());
+            assertEquals(".", c.in.readLine());
+            assertNull(c.in.readLine()); // closed; the PING after it is not run
+        }
+    }
+
+    // one report line per message, each about 200 bytes
+    private static void addReportMessages(int count) {
+        char[] text = new char[160];
+        Arrays.fill(text, 'r');
+        for (int i = 0; i < count; i++) {
+            ChatApp1.contents.add(new ChatApp1.Message(String.format("%010d", i), "bulk", "+27831234567", new String(text), i));
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testLargeReportReachesAClientThatReads() throws IOException {
+        addReportMessages(20000); // ~4 MB, far over what a connection may queue
+        try (Client c = new Client(server.getPort())) {
+            List<String> report = c.call("REPORT");
+            assertEquals("OK", report.get(0));
+            assertEquals(20001, report.size());
+            assertTrue(report.get(20000).contains("MessageID: 0000019999"));
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testClientThatStopsReadingIsDisconnected() throws Exception {
+        addReportMessages(40000); // ~8 MB, more than the socket buffers hold
+        try (QuickChatServer strict = new QuickChatServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 2,
+                16 * 1024, 200, false)) {
+            strict.start();
+            try (Socket stalled = new Socket()) {
+                stalled.setReceiveBufferSize(4096);
+                stalled.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), strict.getPort()));
+                stalled.getOutputStream().write("REPORT\n".getBytes(StandardCharsets.UTF_8));
+                stalled.getOutputStream().flush();
+                Thread.sleep(2000); // reads nothing
+
+                // what was already in the socket buffers arrives, then the end of the stream: no final "."
+                BufferedReader in = new BufferedReader(new InputStreamReader(stalled.getInputStream(), StandardCharsets.UTF_8));
+                String line, last = null;
+                int lines = 0;
+                while ((line = in.readLine()) != null) {
+                    last = line;
+                    lines++;
+                }
+                assertTrue(lines < 40001);
+                assertNotEquals(".", last);
+            }
+            try (Client c = new Client(strict.getPort())) {
+                assertEquals(Arrays.asList("OK", "PONG"), c.call("PING"));
+            }
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testManyConcurrentClients() throws Exception {
+        // anonymous senders, as with chatapp.server.allowAnonymous=true
+        server.close();
+        server = new QuickChatServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 4,
+                256 * 1024, 30_000, true);
+        server.start();
+        int clients = 50, perClient = 10;
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            final int n = i;
+            results.add(pool.submit(() -> {
+                int ok = 0;
+                try (Client c = new Client(server.getPort())) {
+                    for (int j = 0; j < perClient; j++) {
+                        if (c.call("SEND client" + n + " +2783" + String.format("%07d", n) + " msg " + j).get(0).equals("OK")) ok++;
+                    }
+                }
+                return ok;
+            }));
+        }
+        int total = 0;
+        for (Future<Integer> f : results) total += f.get();
+        pool.shutdown();
+        assertEquals(clients * perClient, total);
+        assertEquals(clients * perClient, ChatApp1.contents.size());
+        try (Client c = new Client(server.getPort())) {
+            long fromSeven = c.call("RECIPIENT +27830000007").stream().filter("Sender: client7"::equals).count();
+            assertEquals(perClient, fromSeven);
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testPipelinedCommandsPastTheLimitAreAllAnswered() throws Exception {
+        try (QuickChatServer tight = new QuickChatServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 2,
+                256 * 1024, 4, 30_000, false)) {
+            tight.start();
+            try (Client c = new Client(tight.getPort())) {
+                StringBuilder pings = new StringBuilder();
+                for (int i = 0; i < 5000; i++) pings.append("PING\n"); // far over 4 waiting commands
+                c.out.write(pings.toString());
+                c.out.flush();
+                for (int i = 0; i < 5000; i++) {
+                    assertEquals("OK", c.in.readLine());
+                    assertEquals("PONG", c.in.readLine());
+                    assertEquals(".", c.in.readLine());
+                }
+                assertEquals(Arrays.asList("OK", "PONG"), c.call("PING"));
+            }
+        }
+    }
+}
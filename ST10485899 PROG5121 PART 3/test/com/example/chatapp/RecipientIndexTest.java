@@ -0,0 +1,87 @@
+package com.example.chatapp;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class RecipientIndexTest {
+
+    private MessageStore store;
+    private RecipientIndex index;
+
+    @Before
+    public void setUp() {
+        store = new MessageStore();
+        index = new RecipientIndex();
+        store.addIndex(index);
+    }
+
+    private ChatApp1.Message send(String recipient, String text) {
+        ChatApp1.Message m = new ChatApp1.Message("ID" + store.size(), "me", recipient, text, store.size());
+        store.add(m);
+        return m;
+    }
+
+    @Test
+    public void testNormalizedNumbersShareOnePostingList() {
+        send("+27831234567", "one");
+        send("+27 83 123 4567", "two");
+        send("+27830000000", "other");
+        assertEquals(2, index.count("+27-83-123-4567"));
+        assertEquals(1, index.count("+27830000000"));
+        assertEquals(0, index.count("+111"));
+    }
+
+    @Test
+    public void testPagesFollowSendOrder() {
+        List<ChatApp1.Message> sent = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            sent.add(send("+111", "m" + i));
+            send("+222", "noise" + i);
+        }
+        List<ChatApp1.Message> seen = new ArrayList<>();
+        long cursor = MessagePage.START;
+        int pages = 0;
+        MessagePage page;
+        do {
+            page = index.page("+111", cursor, 3);
+            seen.addAll(page.getMessages());
+            cursor = page.getCursor();
+            pages++;
+        } while (page.hasMore());
+        assertEquals(3, pages);
+        assertEquals(sent, seen);
+    }
+
+    @Test
+    public void testRemoveAndClearUpdateIndex() {
+        ChatApp1.Message a = send("+111", "a");
+        send("+111", "b");
+        store.removeFirstByHash(a.getMessageHash());
+        assertEquals(1, index.count("+111"));
+        assertEquals("b", index.page("+111", MessagePage.START, 10).getMessages().get(0).getMessageText());
+        store.clear();
+        assertEquals(0, index.count("+111"));
+        assertTrue(index.page("+111", MessagePage.START, 10).isEmpty());
+    }
+
+    @Test
+    public void testAddIndexBackfillsExistingMessages() {
+        MessageStore other = new MessageStore();
+        other.add(new ChatApp1.Message("1", "me", "+333", "early", 0));
+        RecipientIndex late = new RecipientIndex();
+        other.addIndex(late);
+        assertEquals(1, late.count("+333"));
+    }
+
+    @Test
+    public void testForEachStreamsAllPages() {
+        for (int i = 0; i < 600; i++) send("+444", "m" + i);
+        int[] n = {0};
+        index.forEach("+444", m -> n[0]++);
+        assertEquals(600, n[0]);
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.chatapp;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class ReportEngineTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private MessageStore store;
+    private ReportEngine engine;
+
+    @Before
+    public void setUp() {
+        store = new MessageStore();
+        engine = new ReportEngine(store);
+    }
+
+    private void sendMany(int n) {
+        for (int i = 0; i < n; i++) {
+            store.add(new ChatApp1.Message("ID" + i, "S" + i, "+27" + i, "message number " + i, i));
+        }
+    }
+
+    @Test
+    public void testWriteStreamsEveryLine() throws IOException {
+        sendMany(1000);
+        StringWriter out = new StringWriter();
+        assertEquals(1000, engine.write(ReportEngine.Report.SENDER_RECIPIENT, out));
+        String[] lines = out.toString().split("\n");
+        assertEquals(1000, lines.length);
+        assertEquals("Sender: S0 | Recipient: +270", lines[0]);
+        assertEquals("Sender: S999 | Recipient: +27999", lines[999]);
+    }
+
+    @Test
+    public void testExportToFile() throws IOException {
+        sendMany(3);
+        String file = tmp.getRoot() + "/report.txt";
+        assertEquals(3, engine.export(ReportEngine.Report.ALL_SENT, file));
+        List<String> lines = Files.readAllLines(Paths.get(file));
+        assertEquals(3, lines.size());
+        assertTrue(lines.get(2).contains("MessageID: ID2"));
+    }
+
+    @Test
+    public void testPageAfterHash() {
+        sendMany(10);
+        String hash = store.get(3).getMessageHash();
+        MessagePage page = engine.pageAfterHash(hash, 4);
+        assertEquals(4, page.getMessages().size());
+        assertEquals("ID4", page.getMessages().get(0).getMessageID());
+        assertTrue(page.hasMore());
+        MessagePage rest = engine.page(page.getCursor(), 100);
+        assertEquals("ID8", rest.getMessages().get(0).getMessageID());
+        assertFalse(rest.hasMore());
+        assertTrue(engine.pageAfterHash("NOPE", 4).isEmpty());
+    }
+
+    @Test
+    public void testEmptyTextWhenNoMessages() {
+        assertEquals("No sent messages to report.", engine.toString(ReportEngine.Report.ALL_SENT));
+    }
+}
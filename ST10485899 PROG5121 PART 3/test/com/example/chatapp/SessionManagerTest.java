@@ -0,0 +1,90 @@
+package com.example.chatapp;
+
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class SessionManagerTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+
+    // 10s idle, 60s maximum, 1s ticks, driven by the test's clock
+    private SessionManager manager(int maxSessions) {
+        return new SessionManager(10_000, 60_000, maxSessions, 1000, now::get);
+    }
+
+    @Test
+    public void testOpenLookUpAndLogout() {
+        SessionManager sessions = manager(10);
+        String a = sessions.open("kyl_1");
+        String b = sessions.open("kyl_1");
+        assertNotEquals(a, b);
+        assertTrue(a.length() >= 43); // 32 random bytes
+        assertEquals("kyl_1", sessions.usernameFor(a));
+        assertNull(sessions.usernameFor("made-up"));
+        assertNull(sessions.usernameFor(null));
+
+        assertTrue(sessions.invalidate(a));
+        assertFalse(sessions.invalidate(a));
+        assertNull(sessions.usernameFor(a));
+        assertEquals("kyl_1", sessions.usernameFor(b));
+        assertEquals(1, sessions.size());
+    }
+
+    @Test
+    public void testIdleAndAbsoluteExpiry() {
+        SessionManager sessions = manager(10);
+        String busy = sessions.open("busy");
+        String idle = sessions.open("idle");
+        for (int i = 0; i < 5; i++) {
+            now.addAndGet(9_000);
+            assertEquals("busy", sessions.usernameFor(busy)); // each use pushes the idle deadline on
+        }
+        assertNull(sessions.usernameFor(idle)); // refused at lookup, before any sweep
+
+        now.addAndGet(9_000); // 54s old
+        assertEquals("busy", sessions.usernameFor(busy));
+        now.addAndGet(6_000); // 60s old: too old however busy
+        assertNull(sessions.usernameFor(busy));
+        assertEquals(0, sessions.size());
+    }
+
+    @Test
+    public void testSweeperEvictsAndBoundsSessions() {
+        SessionManager sessions = manager(1000);
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) tokens.add(sessions.open("u_" + i));
+        try {
+            sessions.open("one_more");
+            fail("expected the cap to refuse the session");
+        } catch (IllegalStateException expected) {
+            // full
+        }
+        sessions.sweep();
+        assertEquals(1000, sessions.size());
+
+        now.addAndGet(5_000);
+        for (int i = 0; i < 500; i++) assertNotNull(sessions.usernameFor(tokens.get(i))); // keep half alive
+        now.addAndGet(6_000);
+        sessions.sweep(); // the idle half are due and dropped; the used half are re-filed
+        assertEquals(500, sessions.size());
+        assertNotNull(sessions.open("one_more"));
+
+        now.addAndGet(20 * 60_000); // far past every deadline, and more than one turn of the wheel
+        sessions.sweep();
+        assertEquals(0, sessions.size());
+    }
+
+    @Test
+    public void testExpiredSessionsDoNotCountAgainstTheCap() {
+        SessionManager sessions = manager(3);
+        for (int i = 0; i < 3; i++) sessions.open("u_" + i);
+        now.addAndGet(11_000); // all idle past their deadline, none swept yet
+        assertEquals(3, sessions.size());
+        assertNotNull(sessions.open("u_3"));
+        assertEquals(1, sessions.size());
+    }
+}
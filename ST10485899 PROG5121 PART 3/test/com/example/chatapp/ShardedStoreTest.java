@@ -0,0 +1,150 @@
+package com.example.chatapp;
+
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class ShardedStoreTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private final GroupCommitWriter.FlushPolicy policy = new GroupCommitWriter.FlushPolicy(256, 0, false);
+    private final List<GroupCommitWriter> writers = new ArrayList<>();
+    private final List<ShardedStore> stores = new ArrayList<>();
+    private ShardedStore sharded;
+    private final List<ChatApp1.Message> sent = new ArrayList<>();
+
+    @Before
+    public void setup() {
+        sharded = open(4);
+        for (int i = 0; i < 200; i++) {
+            String text = "message " + i + (i == 57 ? " which is by far the longest one of them all" : "");
+            send(new ChatApp1.Message(String.format("%010d", i), "S", "+2783" + (i % 20), text, i));
+        }
+    }
+
+    @After
+    public void cleanup() {
+        for (ShardedStore store : stores) store.close();
+        for (GroupCommitWriter writer : writers) writer.close();
+    }
+
+    private ShardedStore open(int shards) {
+        GroupCommitWriter writer = new GroupCommitWriter(policy);
+        writers.add(writer);
+        ShardedStore store = new ShardedStore(shards, tmp.getRoot() + "/messages.json",
+                tmp.getRoot() + "/messages.seg", writer);
+        stores.add(store);
+        return store;
+    }
+
+    // what ChatApp1 does for a send: store it, then append it to its shard's log
+    private void send(ChatApp1.Message m) {
+        sharded.add(m);
+        ShardedStore.Shard shard = sharded.shardOf(m);
+        shard.getWriter().submit(shard.getLog(), sharded.toRecord(m));
+        sent.add(m);
+    }
+
+    private static ChatApp1.Message fromRecord(Map<String,String> r) {
+        return new ChatApp1.Message(r.get("MessageID"), r.get("Sender"), r.get("Recipient"), r.get("Message"), 0,
+                r.get("MessageHash"));
+    }
+
+    private static String report(ShardedStore store) throws IOException {
+        StringWriter out = new StringWriter();
+        new ReportEngine(store).write(ReportEngine.Report.ALL_SENT, out);
+        return out.toString();
+    }
+
+    @Test
+    public void testMessagesSpreadByRecipient() {
+        int used = 0;
+        for (int i = 0; i < sharded.shardCount(); i++) {
+            MessageStore store = sharded.shard(i).getStore();
+            if (!store.isEmpty()) used++;
+            for (ChatApp1.Message m : store) assertSame(sharded.shard(i), sharded.shardFor(m.getRecipient()));
+        }
+        assertTrue(used > 1);
+        assertEquals(200, sharded.size());
+        assertEquals(10, sharded.shardFor("+27833").getRecipients().page("+27833", MessagePage.START, 100)
+                .getMessages().size());
+    }
+
+    @Test
+    public void testFanOutQueriesMergeInSendOrder() throws IOException {
+        assertEquals(sent, new ArrayList<>(sharded));
+        for (int i = 0; i < sent.size(); i += 37) assertSame(sent.get(i), sharded.get(i));
+        StringWriter expected = new StringWriter();
+        MessageStore single = new MessageStore();
+        single.addAll(sent);
+        new ReportEngine(single).write(ReportEngine.Report.ALL_SENT, expected);
+        assertEquals(expected.toString(), report(sharded));
+
+        assertSame(sent.get(57), sharded.longest());
+        List<ChatApp1.Message> top = sharded.topK(3);
+        assertSame(sent.get(57), top.get(0));
+        assertSame(sent.get(100), top.get(1)); // "message 100" etc: longest texts, earliest first
+        assertSame(sent.get(101), top.get(2));
+        assertSame(sent.get(42), sharded.findById(String.format("%010d", 42)));
+    }
+
+    @Test
+    public void testDeleteAndReloadFromShardFiles() throws IOException {
+        ChatApp1.Message longest = sent.get(57);
+        assertSame(longest, sharded.removeFirstByHash(longest.getMessageHash()));
+        ShardedStore.Shard shard = sharded.shardOf(longest);
+        shard.getWriter().submit(shard.getLog(), MessageLog.tombstone(longest.getMessageHash()));
+        assertNull(sharded.removeFirstByHash("NOPE"));
+        sharded.flush();
+
+        ShardedStore reopened = open(4);
+        reopened.load(ShardedStoreTest::fromRecord);
+        assertEquals(199, reopened.size());
+        assertEquals(report(sharded), report(reopened));
+        assertNull(reopened.findById(String.format("%010d", 57)));
+        assertEquals("message 100", reopened.longest().getMessageText());
+    }
+
+    @Test
+    public void testLoadMovesALegacyLogIntoTheShards() throws IOException {
+        // one messages.json without Seq fields, as written before the store was sharded
+        List<Map<String,String>> legacy = new ArrayList<>();
+        for (ChatApp1.Message m : sent) legacy.add(ChatApp1.toRecord(m));
+        String messages = tmp.newFolder("legacy") + "/messages.json";
+        new MessageLog(messages).rewrite(legacy, false);
+
+        GroupCommitWriter writer = new GroupCommitWriter(policy);
+        writers.add(writer);
+        ShardedStore migrated = new ShardedStore(4, messages, messages.replace(".json", ".seg"), writer);
+        stores.add(migrated);
+        migrated.load(ShardedStoreTest::fromRecord);
+        migrated.flush();
+        assertEquals(report(sharded), report(migrated));
+        assertTrue(Files.exists(Paths.get(ShardedStore.fileOf(messages, 3))));
+
+        // the shard files now hold everything, in the same order
+        GroupCommitWriter again = new GroupCommitWriter(policy);
+        writers.add(again);
+        ShardedStore reopened = new ShardedStore(4, messages, messages.replace(".json", ".seg"), again);
+        stores.add(reopened);
+        reopened.load(ShardedStoreTest::fromRecord);
+        assertEquals(report(sharded), report(reopened));
+
+        // and going back to one shard folds the other files into messages.json
+        GroupCommitWriter single = new GroupCommitWriter(policy);
+        writers.add(single);
+        ShardedStore folded = new ShardedStore(1, messages, messages.replace(".json", ".seg"), single);
+        stores.add(folded);
+        folded.load(ShardedStoreTest::fromRecord);
+        folded.flush();
+        assertEquals(report(sharded), report(folded));
+        assertFalse(Files.exists(Paths.get(ShardedStore.fileOf(messages, 1))));
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.chatapp;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class TextIndexTest {
+
+    private MessageStore store;
+    private TextIndex index;
+
+    @Before
+    public void setUp() {
+        store = new MessageStore();
+        index = new TextIndex();
+        store.addIndex(index);
+    }
+
+    private ChatApp1.Message send(String text) {
+        ChatApp1.Message m = new ChatApp1.Message("ID" + store.size(), "S", "+27", text, store.size());
+        store.add(m);
+        return m;
+    }
+
+    private static List<String> texts(TextIndex.Result r) {
+        List<String> out = new ArrayList<>();
+        for (ChatApp1.Message m : r.getHits()) out.add(m.getMessageText());
+        return out;
+    }
+
+    @Test
+    public void testTermsUseHashTokenization() {
+        send("Lunch, on Friday?");
+        assertEquals(1, index.documentFrequency("lunch"));
+        assertEquals(1, index.documentFrequency("FRIDAY"));
+        assertEquals(Collections.singletonList("Lunch, on Friday?"), texts(index.search("friday", 0, 10)));
+    }
+
+    @Test
+    public void testAndOrPrefix() {
+        send("meeting at noon");
+        send("lunch at noon");
+        send("dinner tonight");
+        send("meet me later");
+        assertEquals(Collections.singletonList("lunch at noon"), texts(index.search("lunch noon", 0, 10)));
+        assertEquals(2, index.search("lunch OR dinner", 0, 10).getTotal());
+        assertEquals(2, index.search("meet*", 0, 10).getTotal());
+        assertEquals(0, index.search("lunch dinner", 0, 10).getTotal());
+        assertEquals(0, index.search("", 0, 10).getTotal());
+    }
+
+    @Test
+    public void testRankingAndPaging() {
+        send("noon");
+        send("rare word noon");
+        send("noon noon noon");
+        for (int i = 0; i < 10; i++) send("filler noon " + i);
+        // "rare" is rarer than "noon", so a message with both outranks messages with only noon
+        assertEquals("rare word noon", texts(index.search("rare OR noon", 0, 1)).get(0));
+        assertEquals("noon noon noon", texts(index.search("noon", 0, 1)).get(0));
+        TextIndex.Result page = index.search("noon", 5, 5);
+        assertEquals(13, page.getTotal());
+        assertEquals(5, page.getHits().size());
+        assertEquals(3, index.search("noon", 10, 5).getHits().size());
+    }
+
+    @Test
+    public void testPrefixInsideAndOrMatchesEachMessageOnce() {
+        send("meeting at noon");
+        send("meet at noon, meeting after");
+        send("lunch at noon");
+        send("meetings tomorrow");
+        for (int i = 0; i < 20; i++) send("filler " + i + (i % 3 == 0 ? " noon" : ""));
+        assertEquals(2, index.search("meet* noon", 0, 10).getTotal());
+        // in both groups: counted once, scored by both
+        TextIndex.Result r = index.search("meet* noon OR lunch OR meet*", 0, 10);
+        assertEquals(4, r.getTotal());
+        assertEquals("meet at noon, meeting after", r.getHits().get(0).getMessageText());
+        assertEquals(3, index.search("meet*", 0, 10).getTotal());
+        assertTrue(index.search("meet*", 3, 10).getHits().isEmpty());
+        assertEquals(3, index.search("meet*", 0, Integer.MAX_VALUE).getHits().size());
+    }
+
+    @Test
+    public void testDeleteIsIncremental() {
+        ChatApp1.Message a = send("hello world");
+        send("hello again");
+        store.removeFirstByHash(a.getMessageHash());
+        assertEquals(1, index.documentFrequency("hello"));
+        assertEquals(0, index.documentFrequency("world"));
+        store.clear();
+        assertEquals(0, index.search("hello", 0, 10).getTotal());
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.chatapp;
+
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+import javax.imageio.ImageIO;
+import javax.swing.ImageIcon;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.file.*;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.*;
+
+public class ThumbnailServiceTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private File image(String name, int width, int height) throws IOException {
+        BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = img.createGraphics();
+        g.setColor(Color.BLUE);
+        g.fillRect(0, 0, width, height);
+        g.dispose();
+        File file = new File(tmp.getRoot(), name);
+        ImageIO.write(img, "png", file);
+        return file;
+    }
+
+    private static BufferedImage pixels(ImageIcon icon) {
+        return (BufferedImage) icon.getImage();
+    }
+
+    @Test(timeout = 30000)
+    public void testScaledCachedInMemoryAndOnDisk() throws Exception {
+        File photo = image("photo.png", 3000, 1500);
+        File cacheDir = new File(tmp.getRoot(), "thumbs");
+        ThumbnailService thumbs = new ThumbnailService(cacheDir.getPath(), 8, 2);
+
+        ImageIcon icon = thumbs.thumbnail(photo.getPath()).get();
+        assertEquals(ThumbnailService.SIZE, icon.getIconWidth());
+        assertEquals(ThumbnailService.SIZE, icon.getIconHeight());
+        assertEquals(0, pixels(icon).getRGB(60, 10) >>> 24);      // letterbox: 120 x 60 picture, centred
+        assertEquals(Color.BLUE.getRGB(), pixels(icon).getRGB(60, 60));
+        String[] onDisk = cacheDir.list();
+        assertEquals(1, onDisk.length);
+        assertTrue(onDisk[0].matches("[0-9a-f]{64}\\.png"));
+
+        assertSame(icon, thumbs.thumbnail(photo.getPath()).get()); // from memory
+        File copy = tmp.newFile("copy.png");
+        Files.copy(photo.toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        assertSame(icon, thumbs.thumbnail(copy.getPath()).get());  // same content, same thumbnail
+        assertEquals(1, thumbs.cached());
+        thumbs.close();
+
+        // a fresh service finds the thumbnail on disk instead of decoding the photo again
+        ThumbnailService restarted = new ThumbnailService(cacheDir.getPath(), 8, 1);
+        File cached = new File(cacheDir, onDisk[0]);
+        long modified = cached.lastModified();
+        ImageIcon again = restarted.thumbnail(photo.getPath()).get();
+        assertEquals(Color.BLUE.getRGB(), pixels(again).getRGB(60, 60));
+        assertEquals(modified, cached.lastModified()); // read, not rewritten
+        restarted.close();
+    }
+
+    @Test(timeout = 30000)
+    public void testSmallImageKeptAndBadFilesFail() throws Exception {
+        ThumbnailService thumbs = new ThumbnailService(new File(tmp.getRoot(), "thumbs").getPath(), 2, 1);
+        ImageIcon small = thumbs.thumbnail(image("small.png", 40, 20).getPath()).get();
+        assertEquals(ThumbnailService.SIZE, small.getIconWidth());
+        assertEquals(0, pixels(small).getRGB(10, 60) >>> 24);      // not blown up: 40 x 20 in the middle
+        assertEquals(Color.BLUE.getRGB(), pixels(small).getRGB(60, 60));
+
+        File text = tmp.newFile("notes.png");
+        Files.write(text.toPath(), "not an image".getBytes());
+        for (String path : new String[]{text.getPath(), new File(tmp.getRoot(), "missing.png").getPath()}) {
+            try {
+                thumbs.thumbnail(path).get();
+                fail("expected " + path + " to fail");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IOException);
+            }
+        }
+        thumbs.close();
+    }
+}
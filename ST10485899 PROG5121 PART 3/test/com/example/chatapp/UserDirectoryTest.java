@@ -0,0 +1,173 @@
+package com.example.chatapp;
+
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class UserDirectoryTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static final int ITERATIONS = 1000; // the real default makes 500 registrations take minutes
+
+    private String file;
+
+    @Before
+    public void setup() {
+        file = new File(tmp.getRoot(), "users.jsonl").getPath();
+    }
+
+    private static ChatApp1.User user(int i) {
+        return new ChatApp1.User("User " + i, "F", "u_" + i, "Password" + i, String.format("+2783%07d", i), "");
+    }
+
+    @Test
+    public void testRegisterAndLookUp() throws IOException {
+        UserDirectory users = new UserDirectory(file, false, ITERATIONS);
+        assertTrue(users.register(user(1)));
+        assertTrue(users.register(user(2)));
+        assertFalse(users.register(new ChatApp1.User("Other", "M", "u_1", "x", "+27830000009", "")));
+
+        assertEquals("User 1", users.findByUsername("u_1").getFullname());
+        assertEquals("u_2", users.findByPhone("+27 83 000 0002").getUsername());
+        assertNull(users.findByUsername("nobody"));
+        assertNull(users.findByPhone("+27830000009")); // the rejected registration left nothing behind
+        assertEquals(2, users.size());
+        users.close();
+    }
+
+    @Test
+    public void testReopenWithAndWithoutIndexSnapshot() throws IOException {
+        UserDirectory users = new UserDirectory(file, false, ITERATIONS);
+        for (int i = 0; i < 500; i++) users.register(user(i));
+        users.close(); // writes the snapshot
+
+        UserDirectory reopened = new UserDirectory(file, false, ITERATIONS);
+        reopened.register(user(500)); // appended after the snapshot
+        assertEquals(501, reopened.size());
+        assertTrue(reopened.checkPassword("u_250", "Password250"));
+        assertFalse(reopened.checkPassword("u_250", "Password251"));
+        reopened.close();
+
+        Files.delete(Paths.get(file + ".idx"));
+        UserDirectory rescanned = new UserDirectory(file, false, ITERATIONS);
+        assertEquals(501, rescanned.size());
+        assertEquals("u_500", rescanned.findByPhone("+27830000500").getUsername());
+        rescanned.close();
+    }
+
+    @Test
+    public void testSnapshotOfADifferentFileIsIgnored() throws IOException {
+        UserDirectory users = new UserDirectory(file, false, ITERATIONS);
+        for (int i = 0; i < 5; i++) users.register(user(i));
+        users.close();
+
+        // replaced in place (same file, likely the same inode) by a longer file with other users
+        UserDirectory other = new UserDirectory(file + ".other", false, ITERATIONS);
+        for (int i = 10; i < 20; i++) other.register(user(i));
+        other.close();
+        Files.write(Paths.get(file), Files.readAllBytes(Paths.get(file + ".other")), StandardOpenOption.TRUNCATE_EXISTING);
+
+        UserDirectory reopened = new UserDirectory(file, false, ITERATIONS);
+        assertEquals(10, reopened.size());
+        assertNull(reopened.findByUsername("u_1"));
+        assertTrue(reopened.checkPassword("u_12", "Password12"));
+        reopened.close();
+    }
+
+    @Test
+    public void testLookupsDuringCloseSeeEveryUser() throws Exception {
+        UserDirectory users = new UserDirectory(file, false, ITERATIONS);
+        for (int i = 0; i < 50; i++) users.register(user(i));
+        List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+        Thread[] readers = new Thread[4];
+        for (int t = 0; t < readers.length; t++) {
+            readers[t] = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 2000; i++) {
+                        if (users.findByUsername("u_" + (i % 50)) == null) throw new AssertionError("lost u_" + (i % 50));
+                    }
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            });
+            readers[t].start();
+        }
+        for (int i = 0; i < 20; i++) users.close(); // each lookup after a close opens the file again
+        for (Thread t : readers) t.join();
+        users.close();
+        assertEquals(Collections.emptyList(), failures);
+    }
+
+    @Test
+    public void testTornLastLineIsDropped() throws IOException {
+        UserDirectory users = new UserDirectory(file, false, ITERATIONS);
+        users.register(user(1));
+        users.close();
+        Files.delete(Paths.get(file + ".idx"));
+        Files.write(Paths.get(file), "{\"Username\": \"u_2\", \"Pass".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        UserDirectory reopened = new UserDirectory(file, false, ITERATIONS);
+        assertEquals(1, reopened.size());
+        assertTrue(reopened.register(user(2)));
+        assertEquals("User 2", reopened.findByUsername("u_2").getFullname());
+        reopened.close();
+    }
+
+    @Test
+    public void testPasswordsAreNeverWritten() throws IOException {
+        UserDirectory users = new UserDirectory(file, false, ITERATIONS);
+        for (int i = 0; i < 20; i++) users.register(user(i));
+        assertNull(users.findByUsername("u_3").getPassword());
+        assertTrue(users.checkPassword("u_3", "Password3"));
+        assertFalse(users.checkPassword("u_3", "password3"));
+        assertFalse(users.checkPassword("nobody", "Password3"));
+        users.close();
+
+        String stored = Files.readString(Paths.get(file)) + new String(Files.readAllBytes(Paths.get(file + ".idx")), StandardCharsets.ISO_8859_1);
+        for (int i = 0; i < 20; i++) assertFalse(stored.contains("Password" + i));
+        assertFalse(stored.contains("\"Password\""));
+    }
+
+    @Test
+    public void testPlainTextFileIsHashedWhenOpened() throws IOException {
+        // as written before hashing, including a replaced registration further up the file
+        Files.write(Paths.get(file), Arrays.asList(
+                "{\"Username\": \"u_1\", \"Password\": \"OldSecret1\", \"FullName\": \"User 1\", \"Phone\": \"+27830000001\"}",
+                "{\"Username\": \"u_2\", \"Password\": \"Password2\", \"FullName\": \"User 2\", \"Phone\": \"+27830000002\"}",
+                "{\"Username\": \"u_1\", \"Password\": \"Password1\", \"FullName\": \"User 1\", \"Phone\": \"+27830000001\"}"),
+                StandardCharsets.UTF_8);
+
+        UserDirectory users = new UserDirectory(file, false, ITERATIONS);
+        assertTrue(users.checkPassword("u_1", "Password1"));
+        assertFalse(users.checkPassword("u_1", "OldSecret1"));
+        assertEquals("u_2", users.findByPhone("+27830000002").getUsername());
+        String stored = Files.readString(Paths.get(file));
+        for (String password : new String[]{"OldSecret1", "Password1", "Password2"}) assertFalse(stored.contains(password));
+
+        assertTrue(users.register(user(3))); // appends after the rewritten file
+        users.close();
+        UserDirectory reopened = new UserDirectory(file, false, ITERATIONS);
+        assertEquals(3, reopened.size());
+        assertTrue(reopened.checkPassword("u_2", "Password2"));
+        assertTrue(reopened.checkPassword("u_3", "Password3"));
+        reopened.close();
+    }
+
+    @Test
+    public void testInMemoryLogin() {
+        login l = new login(UserDirectory.inMemory());
+        assertEquals("Registration successful.", l.registerUser("kyl_1", "Ch&&sec@ke99!", "+27838968976"));
+        assertEquals("This username is already taken. Please choose a different one.",
+                l.registerUser("kyl_1", "Ch&&sec@ke99!", "+27838968976"));
+        assertTrue(l.loginUser("kyl_1", "Ch&&sec@ke99!"));
+        assertFalse(new login().loginUser("kyl_1", "Ch&&sec@ke99!"));
+    }
+}
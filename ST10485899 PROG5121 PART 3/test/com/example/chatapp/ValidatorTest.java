@@ -0,0 +1,53 @@
+package com.example.chatapp;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class ValidatorTest {
+
+    @Test
+    public void testPhoneScannersMatchTheOldPatterns() {
+        String[] inputs = {"+27838968976", "+2783896897", "+278389689761", "0838968976", "+27 838968976",
+                "+27838968a76", "+1234567890", "+123456789012", "+12345678", "+", "", "+27838968976\n",
+                "+2783896897٣", "+27838968976​"};
+        for (String s : inputs) {
+            assertEquals(s, s.matches("^\\+27\\d{9}$"), Validator.isSaCellphone(s));
+            boolean old = s.startsWith("+") && s.length() >= 10 && s.length() <= 13 && s.substring(1).matches("\\d+");
+            assertEquals(s, old, Validator.isInternationalNumber(s));
+        }
+        assertFalse(Validator.isSaCellphone(null));
+        assertFalse(Validator.isInternationalNumber(null));
+    }
+
+    @Test
+    public void testUsernameAndPasswords() {
+        assertTrue(Validator.isUsername("kyl_1"));
+        assertFalse(Validator.isUsername("kyle!!!!!!!"));
+        assertFalse(Validator.isUsername("kyle1"));
+        assertTrue(Validator.isComplexPassword("Ch&&sec@ke99!"));
+        assertFalse(Validator.isComplexPassword("password"));
+        assertFalse(Validator.isComplexPassword("Pass1!"));
+        assertTrue(Validator.isLongPassword("Password1"));
+        assertFalse(Validator.isLongPassword("Password"));
+    }
+
+    @Test
+    public void testValidateAllReportsEveryProblemWithoutThrowing() {
+        String longText = new String(new char[251]).replace('\0', 'x');
+        List<ChatApp1.Message> batch = Arrays.asList(
+                new ChatApp1.Message("0012345678", "S", "+27718693002", "Hi", 0),
+                new ChatApp1.Message("00123456789", "S", "0718693002", longText, 1),
+                null);
+
+        List<Validator.Result> results = Validator.validateAll(batch);
+
+        assertEquals(3, results.size());
+        assertTrue(results.get(0).isValid());
+        assertEquals(1, results.get(1).getIndex());
+        assertEquals(3, results.get(1).getProblems().size());
+        assertFalse(results.get(2).isValid());
+    }
+}